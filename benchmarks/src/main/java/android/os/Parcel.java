@@ -0,0 +1,39 @@
+package android.os;
+
+import java.util.ArrayList;
+
+/**
+ * A Parcel for the benchmarks , the real one is native and is only there on a device.
+ *
+ * It keeps the values in a list , so a benchmark that parcels an event measures what the event does ,
+ * eg. decoding its data to a String , and not what the Android Parcel does with the values.
+ */
+public final class Parcel {
+
+    private final ArrayList<Object> values = new ArrayList<>();
+    private int position;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void writeString(String value) {
+        values.add(value);
+    }
+
+    public String readString() {
+        return (String) values.get(position++);
+    }
+
+    public void setDataPosition(int position) {
+        this.position = position;
+    }
+
+    public void recycle() {
+        values.clear();
+        position = 0;
+    }
+}
@@ -0,0 +1,18 @@
+package android.os;
+
+/**
+ * The part of the Android interface that {@link gr.spiritinlife.andsse.ParcelableEvent ParcelableEvent} implements , so it loads on a plain JVM
+ */
+public interface Parcelable {
+
+    int describeContents();
+
+    void writeToParcel(Parcel dest, int flags);
+
+    interface Creator<T> {
+
+        T createFromParcel(Parcel source);
+
+        T[] newArray(int size);
+    }
+}
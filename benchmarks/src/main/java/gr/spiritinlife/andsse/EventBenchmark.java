@@ -0,0 +1,98 @@
+package gr.spiritinlife.andsse;
+
+import android.os.Parcel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building an event from the bytes the parser hands over , reading it and parceling it. The scores are per event
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBenchmark {
+
+    @Param({"16", "256", "4096"})
+    int dataSize;
+
+    private byte[] data;
+    private Parcel parcel;
+
+    @Setup
+    public void setUp() {
+        // the data of the first event of a one event stream
+        String body = new String(SyntheticStream.build(1, dataSize, 1), SSEParser.UTF_8);
+        int start = body.indexOf("data: ") + "data: ".length();
+        data = body.substring(start, body.indexOf('\n', start)).getBytes(SSEParser.UTF_8);
+        parcel = Parcel.obtain();
+    }
+
+    private AndEvent build() {
+        AndEvent event = AndEvent.obtain();
+        event.setEventName("quote");
+        event.setEventData(data, 0, data.length);
+        event.setId("42");
+        return event;
+    }
+
+    /**
+     * What the stream does for every event whose listeners do not read the data , it should not allocate
+     */
+    @Benchmark
+    public int pooled() {
+        AndEvent event = build();
+        int length = event.getDataLength();
+        event.recycle();
+        return length;
+    }
+
+    /**
+     * The same with a listener that reads the data as a String
+     */
+    @Benchmark
+    public String pooledDecoded() {
+        AndEvent event = build();
+        String decoded = event.getData();
+        event.recycle();
+        return decoded;
+    }
+
+    /**
+     * An event that is not pooled , like the ones before pooling
+     */
+    @Benchmark
+    public String unpooled() {
+        AndEvent event = new AndEvent();
+        event.setEventName("quote");
+        event.setEventData(data, 0, data.length);
+        event.setId("42");
+        return event.getData();
+    }
+
+    /**
+     * Writing an event to a Parcel and reading it back. The Parcel of the benchmarks only keeps the values ,
+     * so this is what the event costs , not the native Parcel
+     */
+    @Benchmark
+    public ParcelableEvent parcel() {
+        AndEvent event = build();
+        parcel.recycle();
+        new ParcelableEvent(event).writeToParcel(parcel, 0);
+        event.recycle();
+        parcel.setDataPosition(0);
+        return ParcelableEvent.CREATOR.createFromParcel(parcel);
+    }
+}
@@ -0,0 +1,90 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses a synthetic stream the way the transports feed it , in reads of 8KB. The scores are per event.
+ * The same events are parsed as text and as binary frames , and the size of both bodies is printed when the benchmark
+ * starts , so that what the framing saves in time and in bytes on the wire can be read side by side
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    static final int EVENTS = 1000;
+    private static final int READ_SIZE = 8192;
+
+    @Param({"16", "256", "4096"})
+    int dataSize;
+
+    @Param({"1", "8"})
+    int dataLines;
+
+    private byte[] stream;
+    private byte[] frames;
+    private SSEParser parser;
+    private FrameParser frameParser;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        this.stream = SyntheticStream.build(EVENTS, dataSize, dataLines);
+        this.frames = SyntheticStream.buildFrames(EVENTS, dataSize, dataLines);
+        this.blackhole = blackhole;
+        System.out.println("text " + stream.length / EVENTS + " bytes per event , frames " + frames.length / EVENTS + " bytes per event");
+
+        SSEParser.Listener listener = new SSEParser.Listener() {
+            @Override
+            public void onEvent(String eventName, byte[] data, int dataLength, String lastEventId) {
+                ParserBenchmark.this.blackhole.consume(dataLength);
+                ParserBenchmark.this.blackhole.consume(lastEventId);
+            }
+
+            @Override
+            public void onRetry(long reconnectionTime) {
+            }
+        };
+        this.parser = new SSEParser(listener);
+        this.frameParser = new FrameParser(listener);
+    }
+
+    /**
+     * The parser alone , what it costs to find the events in the bytes
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void parse() {
+        parser.reset();
+        for (int offset = 0; offset < stream.length; offset += READ_SIZE)
+            parser.feed(stream, offset, Math.min(READ_SIZE, stream.length - offset));
+    }
+
+    /**
+     * The same events in binary frames
+     */
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void parseFrames() throws IOException {
+        frameParser.reset();
+        for (int offset = 0; offset < frames.length; offset += READ_SIZE)
+            frameParser.feed(frames, offset, Math.min(READ_SIZE, frames.length - offset));
+    }
+}
@@ -0,0 +1,105 @@
+package gr.spiritinlife.andsse;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Bytes in , listeners called , on one thread : the parser builds pooled events , they go through the dispatch
+ * {@link EventQueue queue} , are routed through the {@link ListenerRegistry registry} and recycled ,
+ * like {@link EventStream EventStream} and {@link AndSSEEventSource AndSSEEventSource} do without the threads in between.
+ * The scores are per event , so the inverse is the throughput of one core
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final int READ_SIZE = 8192;
+
+    @Param({"16", "256", "4096"})
+    int dataSize;
+
+    /**
+     * Whether the listener reads the data as a String , or only its bytes
+     */
+    @Param({"false", "true"})
+    boolean decode;
+
+    private byte[] stream;
+    private SSEParser parser;
+    private EventQueue queue;
+    private final ListenerRegistry registry = new ListenerRegistry();
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        stream = SyntheticStream.build(ParserBenchmark.EVENTS, dataSize, 1);
+        queue = new EventQueue(1024, OverflowPolicy.FAIL);
+
+        IEventCallback listener = new IEventCallback() {
+            @Override
+            public void onEvent(AndEvent event) {
+                if (decode)
+                    blackhole.consume(event.getData());
+                else
+                    blackhole.consume(event.getRawData());
+            }
+        };
+        registry.add(AndEvent.ON_MESSAGE, listener);
+        registry.add("quote", listener);
+
+        parser = new SSEParser(new SSEParser.Listener() {
+            @Override
+            public void onEvent(String eventName, byte[] data, int dataLength, String lastEventId) {
+                AndEvent event = AndEvent.obtain();
+                if (eventName != null)
+                    event.setEventName(eventName);
+                event.setEventData(data, 0, dataLength);
+                event.setId(lastEventId);
+                if (!queue.offer(event))
+                    throw new IllegalStateException("The queue of the benchmark is too small");
+            }
+
+            @Override
+            public void onRetry(long reconnectionTime) {
+            }
+        });
+    }
+
+    private void drain() {
+        AndEvent event;
+        while ((event = queue.poll()) != null) {
+            try {
+                for (IEventCallback callback : registry.get(event.getEventName()))
+                    callback.onEvent(event);
+            } finally {
+                event.recycle();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ParserBenchmark.EVENTS)
+    public void pipeline() {
+        parser.reset();
+        for (int offset = 0; offset < stream.length; offset += READ_SIZE) {
+            parser.feed(stream, offset, Math.min(READ_SIZE, stream.length - offset));
+            // the main thread keeps up , it drains after every read
+            drain();
+        }
+    }
+}
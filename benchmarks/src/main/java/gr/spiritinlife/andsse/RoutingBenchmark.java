@@ -0,0 +1,94 @@
+package gr.spiritinlife.andsse;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Finding and calling the listeners of an event , what {@link AndSSEEventSource AndSSEEventSource} does for every event
+ * on the main thread. The scores are per event
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+    /**
+     * How many event names have listeners
+     */
+    @Param({"1", "32", "1024"})
+    int names;
+
+    private final ListenerRegistry registry = new ListenerRegistry();
+    private AndEvent exact;
+    private AndEvent wildcard;
+    private AndEvent unknown;
+
+    @Setup
+    public void setUp(final Blackhole blackhole) {
+        IEventCallback callback = new IEventCallback() {
+            @Override
+            public void onEvent(AndEvent event) {
+                blackhole.consume(event);
+            }
+        };
+        for (int i = 0; i < names; i++)
+            registry.add("topic" + i + ".update", callback);
+        registry.add("orders.*", callback);
+        registry.add("*", callback);
+
+        exact = event("topic0.update");
+        wildcard = event("orders.created");
+        unknown = event("nobody.listens");
+    }
+
+    private static AndEvent event(String name) {
+        AndEvent event = new AndEvent();
+        event.setEventName(name);
+        return event;
+    }
+
+    private static int route(ListenerRegistry registry, AndEvent event) {
+        IEventCallback[] callbacks = registry.get(event.getEventName());
+        for (IEventCallback callback : callbacks)
+            callback.onEvent(event);
+        return callbacks.length;
+    }
+
+    /**
+     * A name with a listener of its own , plus the catch all
+     */
+    @Benchmark
+    public int exactName() {
+        return route(registry, exact);
+    }
+
+    /**
+     * A name that only a prefix listener matches
+     */
+    @Benchmark
+    public int wildcardName() {
+        return route(registry, wildcard);
+    }
+
+    /**
+     * A name that only the catch all matches
+     */
+    @Benchmark
+    public int unknownName() {
+        return route(registry, unknown);
+    }
+}
@@ -0,0 +1,91 @@
+package gr.spiritinlife.andsse;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/**
+ * Builds the body of an event stream for the benchmarks , the same bytes for the same arguments.
+ *
+ * Events have an id , every third one a name , and their data is split in lines.
+ * The data is printable ASCII with some Greek in it , so that decoding it is not only the ASCII fast path.
+ * The same events can be built as text/event-stream or as {@link FrameParser binary frames}.
+ */
+final class SyntheticStream {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789 {}\":,\u03B1\u03B2\u03B3";
+
+    private SyntheticStream() {
+    }
+
+    /**
+     * @param events how many events
+     * @param dataSize about how many characters of data every event has
+     * @param dataLines in how many data lines the data of every event is split
+     * @return byte[] the UTF-8 body
+     */
+    static byte[] build(int events, int dataSize, int dataLines) {
+        Random random = new Random(events * 31 + dataSize * 7 + dataLines);
+        StringBuilder body = new StringBuilder();
+
+        for (int i = 0; i < events; i++) {
+            body.append("id: ").append(i).append('\n');
+            if (i % 3 == 0)
+                body.append("event: quote\n");
+            for (String line : dataLines(random, dataSize, dataLines))
+                body.append("data: ").append(line).append('\n');
+            body.append('\n');
+        }
+
+        return body.toString().getBytes(SSEParser.UTF_8);
+    }
+
+    /**
+     * The events of {@link #build(int, int, int) build} with the same arguments , in binary frames
+     * @param events how many events
+     * @param dataSize about how many characters of data every event has
+     * @param dataLines in how many lines the data of every event is split , they are joined with LF like the text format does
+     * @return byte[] the body
+     */
+    static byte[] buildFrames(int events, int dataSize, int dataLines) {
+        Random random = new Random(events * 31 + dataSize * 7 + dataLines);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        for (int i = 0; i < events; i++) {
+            body.write(FrameParser.EVENT);
+            writeField(body, i % 3 == 0 ? "quote" : "", 0);
+            writeField(body, String.valueOf(i), 1);
+            StringBuilder data = new StringBuilder();
+            for (String line : dataLines(random, dataSize, dataLines)) {
+                if (data.length() > 0)
+                    data.append('\n');
+                data.append(line);
+            }
+            writeField(body, data.toString(), 0);
+        }
+
+        return body.toByteArray();
+    }
+
+    private static String[] dataLines(Random random, int dataSize, int dataLines) {
+        int lineSize = Math.max(1, dataSize / dataLines);
+        String[] lines = new String[dataLines];
+        for (int line = 0; line < dataLines; line++) {
+            StringBuilder chars = new StringBuilder(lineSize);
+            for (int c = 0; c < lineSize; c++)
+                chars.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            lines[line] = chars.toString();
+        }
+        return lines;
+    }
+
+    private static void writeField(ByteArrayOutputStream body, String value, int extra) {
+        byte[] bytes = value.getBytes(SSEParser.UTF_8);
+        long length = bytes.length + extra;
+        while ((length & ~0x7FL) != 0) {
+            body.write((int) (length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        body.write((int) length);
+        body.write(bytes, 0, bytes.length);
+    }
+}
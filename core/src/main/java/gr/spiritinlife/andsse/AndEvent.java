@@ -0,0 +1,270 @@
+package gr.spiritinlife.andsse;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * An event received from the server.
+ *
+ * Events are pooled , like Android's Messages . The library {@link #obtain() obtains} them while parsing
+ * and {@link #recycle() recycles} them after every listener has been called , so an event must not be used after the callback returns.
+ * A listener that wants to keep an event must either {@link #retain() retain} it and {@link #recycle() recycle} it when done ,
+ * or keep a {@link #copy() copy} of it.
+ *
+ * The data is kept as the UTF-8 bytes that came from the server. It is decoded to a String the first time {@link #getData() getData}
+ * is called , listeners that hand the payload to a byte based parser or write it to disk can read the {@link #getRawData() raw bytes}
+ * and never pay for the decoding.
+ */
+public class AndEvent {
+
+    private static final String DEFAULT_EVENT =  "ssemessage";
+    public static final String ON_MESSAGE = DEFAULT_EVENT;
+
+    private static final Object sPoolSync = new Object();
+    private static AndEvent sPool;
+    private static int sPoolSize = 0;
+    private static final int MAX_POOL_SIZE = 128;
+
+    /**
+     * Raw buffers bigger than this are not kept when the event goes back to the pool
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final AtomicIntegerFieldUpdater<AndEvent> REF_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(AndEvent.class, "refCount");
+
+    String name;
+    String id;
+
+    /**
+     * True if the event had no id field and its id is the last event id of an event before it
+     */
+    boolean idInherited;
+
+    /**
+     * The data as the server sent it. The buffer belongs to this event and is reused when it comes back from the pool ,
+     * only the first {@link #rawLength} bytes are the data
+     */
+    private byte[] raw = EMPTY;
+    private int rawLength;
+
+    /**
+     * The decoded data , null until someone asks for it. When the data was set as a String , {@link #raw} is not valid
+     * until someone asks for it
+     */
+    private String data;
+    private boolean rawValid = true;
+
+    /**
+     * The object the {@link PayloadDecoder PayloadDecoder} of this event made from its data , null if there is none
+     */
+    private Object payload;
+
+    /**
+     * The {@link System#nanoTime() time} the event was parsed on the transport thread , 0 if it was not
+     */
+    long parsedAt;
+
+    /**
+     * The next event in the pool
+     */
+    private AndEvent next;
+
+    /**
+     * How many owners this event has. It goes back to the pool when the last one recycles it
+     */
+    private volatile int refCount = 1;
+
+
+    /**
+     * Return a new AndEvent instance from the global pool. Allows us to avoid allocating new objects in many cases.
+     * @return AndEvent
+     */
+    public static AndEvent obtain() {
+        synchronized (sPoolSync) {
+            if (sPool != null) {
+                AndEvent event = sPool;
+                sPool = event.next;
+                event.next = null;
+                sPoolSize--;
+                event.refCount = 1;
+                return event;
+            }
+        }
+        return new AndEvent();
+    }
+
+
+    public AndEvent() {
+        this.name = ON_MESSAGE;
+    }
+
+    /**
+     * Sets the data as it is , whitespace included
+     * @param _data String
+     */
+    public void setEventData( String _data) {
+        this.data = _data == null ? "" : _data;
+        this.rawLength = 0;
+        this.rawValid = false;
+    }
+
+    /**
+     * Sets the data from its UTF-8 bytes. The bytes are copied , the String is decoded only if {@link #getData() getData} is called
+     * @param buffer the bytes
+     * @param offset where the data starts
+     * @param length how many bytes the data has
+     */
+    public void setEventData(byte[] buffer, int offset, int length) {
+        if (raw.length < length)
+            raw = new byte[length];
+        System.arraycopy(buffer, offset, raw, 0, length);
+        this.rawLength = length;
+        this.rawValid = true;
+        this.data = null;
+    }
+
+    public void setEventName( String eventName ) {
+        this.name = eventName;
+    }
+
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+
+    /**
+     * @return String the data , decoded from UTF-8 on the first call
+     */
+    public String getData() {
+        String decoded = data;
+        if (decoded == null) {
+            decoded = rawLength == 0 ? "" : new String(raw, 0, rawLength, SSEParser.UTF_8);
+            data = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * @return Object what the {@link PayloadDecoder PayloadDecoder} registered for this event's name made of its data ,
+     *         null if no decoder is registered or decoding failed
+     */
+    public Object getPayload() {
+        return payload;
+    }
+
+    void setPayload(Object payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * The data as the UTF-8 bytes the server sent , without decoding them.
+     * The buffer is only valid while the event is , {@link #retain() retain} the event or copy the bytes to keep them
+     * @return ByteBuffer a read only view of the data , positioned at its start
+     */
+    public ByteBuffer getRawData() {
+        ensureRaw();
+        return ByteBuffer.wrap(raw, 0, rawLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return int the length of the data in UTF-8 bytes
+     */
+    public int getDataLength() {
+        ensureRaw();
+        return rawLength;
+    }
+
+    public String getEventName() {
+        return name;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return boolean true if the server sent the id with this event , false if the event had no id field
+     *         and {@link #getId() getId} is the last event id of an event before it
+     */
+    public boolean hasOwnId() {
+        return !idInherited;
+    }
+
+
+    /**
+     * Keeps this event alive after the callback returns.
+     * Every call must be matched by a call to {@link #recycle() recycle} when the event is not needed anymore
+     * @return AndEvent this event
+     */
+    public AndEvent retain() {
+        for (;;) {
+            int count = refCount;
+            if (count <= 0)
+                throw new IllegalStateException("This event cannot be retained because it has been recycled.");
+            if (REF_COUNT.compareAndSet(this, count, count + 1))
+                return this;
+        }
+    }
+
+    /**
+     * Gives up one ownership of this event. When the last owner recycles it , it is returned to the global pool
+     * and must not be touched anymore
+     */
+    public void recycle() {
+        int count = REF_COUNT.decrementAndGet(this);
+        if (count > 0)
+            return;
+        if (count < 0)
+            throw new IllegalStateException("This event cannot be recycled because it has already been recycled.");
+
+        name = ON_MESSAGE;
+        id = null;
+        idInherited = false;
+        data = null;
+        payload = null;
+        parsedAt = 0;
+        rawLength = 0;
+        rawValid = true;
+        if (raw.length > MAX_RETAINED_BUFFER)
+            raw = EMPTY;
+
+        synchronized (sPoolSync) {
+            if (sPoolSize < MAX_POOL_SIZE) {
+                next = sPool;
+                sPool = this;
+                sPoolSize++;
+            }
+        }
+    }
+
+    /**
+     * @return AndEvent a new event with the same name , data and id , that is not owned by the library
+     */
+    public AndEvent copy() {
+        AndEvent copy = new AndEvent();
+        copy.name = name;
+        copy.id = id;
+        copy.idInherited = idInherited;
+        if (rawValid)
+            copy.setEventData(raw, 0, rawLength);
+        copy.data = data;
+        copy.rawValid = rawValid;
+        copy.payload = payload;
+        return copy;
+    }
+
+    /**
+     * Encodes the data that was set as a String , the first time the bytes are needed
+     */
+    private synchronized void ensureRaw() {
+        if (rawValid)
+            return;
+        byte[] encoded = data.getBytes(SSEParser.UTF_8);
+        raw = encoded;
+        rawLength = encoded.length;
+        rawValid = true;
+    }
+}
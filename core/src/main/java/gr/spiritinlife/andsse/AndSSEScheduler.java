@@ -0,0 +1,54 @@
+package gr.spiritinlife.andsse;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single timer thread of the library , shared by all event sources.
+ * It is used to wait for reconnections and to push metrics , its tasks only hand work to the thread that should do it.
+ */
+final class AndSSEScheduler {
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "AndSSE_scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private AndSSEScheduler() {
+    }
+
+    /**
+     * Runs the task on the scheduler thread after the delay
+     * @param task Runnable , it must be quick
+     * @param delayMs long
+     * @return ScheduledFuture that can be given to {@link #cancel(ScheduledFuture) cancel}
+     */
+    static ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        return EXECUTOR.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the task on the scheduler thread every period , the first time after one period
+     * @param task Runnable , it must be quick
+     * @param periodMs long
+     * @return ScheduledFuture that can be given to {@link #cancel(ScheduledFuture) cancel}
+     */
+    static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMs) {
+        return EXECUTOR.scheduleAtFixedRate(task, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels a scheduled task and removes it from the queue , so cancelled tasks do not pile up
+     * @param future ScheduledFuture , may be null
+     */
+    static void cancel(ScheduledFuture<?> future) {
+        if (future != null && future.cancel(false))
+            EXECUTOR.purge();
+    }
+}
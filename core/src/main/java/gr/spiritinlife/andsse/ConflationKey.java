@@ -0,0 +1,39 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * Says which events of a {@link SSEEventSource#setConflation(String, ConflationKey) conflated} event name replace each other.
+ *
+ * Events with equal keys that arrive before the main thread gets to them collapse into the newest one.
+ * The key is taken on the transport thread after the event is {@link PayloadDecoder decoded} , so it may come from the payload ,
+ * eg. the symbol of a price tick. Keys are compared with equals , across all the conflated event names of a source.
+ */
+public interface ConflationKey {
+
+    /**
+     * Only the newest event of the name waits for the main thread
+     */
+    ConflationKey EVENT_NAME = new ConflationKey() {
+        @Override
+        public Object keyOf(AndEvent event) {
+            return event.getEventName();
+        }
+    };
+
+    /**
+     * Only the newest event of each id waits for the main thread. Events without an id field of their own are not conflated ,
+     * the id they carry is the one of an event before them
+     */
+    ConflationKey ID = new ConflationKey() {
+        @Override
+        public Object keyOf(AndEvent event) {
+            String id = event.getId();
+            return id == null || id.isEmpty() || !event.hasOwnId() ? null : id;
+        }
+    };
+
+    /**
+     * @param event the event , with its payload if the name has a decoder
+     * @return Object the key , null to deliver the event without conflating it
+     */
+    Object keyOf(AndEvent event);
+}
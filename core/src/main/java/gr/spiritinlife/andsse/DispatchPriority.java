@@ -0,0 +1,28 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * The lane the events of a name wait in for the main thread.
+ * See {@link SSEEventSource#setPriority(String, DispatchPriority) setPriority}
+ *
+ * The main thread takes the events of a higher lane first. So that a flood of them does not hold the lower lanes for ever ,
+ * after {@link EventStream#STARVATION_LIMIT a few} in a row a waiting event of a lower lane goes next.
+ * Events of the same lane keep their order.
+ */
+public enum DispatchPriority {
+
+    /**
+     * Events that must not wait behind the others , eg. a revoked session.
+     * With {@link SSEEventSource#setBatching(int, long) batching} they are also delivered without waiting for the window
+     */
+    HIGH,
+
+    /**
+     * Every event name that has no priority set
+     */
+    NORMAL,
+
+    /**
+     * Events that can wait , eg. telemetry
+     */
+    LOW
+}
@@ -0,0 +1,182 @@
+package gr.spiritinlife.andsse;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The equivalent urls of one stream , how fast each of them answered and whether it failed lately.
+ *
+ * Every connection measures its endpoint : the time until the response headers arrived and until the first byte of the body.
+ * The event source connects to the healthy endpoint that was fastest so far. Endpoints that were never measured
+ * are tried before the measured ones , in the order they were given , so a failover also learns how fast they are.
+ * An endpoint whose connection failed is unhealthy for a while , longer every time it fails again , until a connection to it opens.
+ *
+ * The event loop selects and reports failures , the transport thread records the timings.
+ * They all change the endpoints under the selector's lock , the fields are volatile so that they can be read without it.
+ */
+final class EndpointSelector {
+
+    /**
+     * How long an endpoint is unhealthy after its first failure , it doubles with every failure that follows
+     */
+    static final long FAILURE_PENALTY = 1000;
+    static final long MAX_FAILURE_PENALTY = 60000;
+
+    /**
+     * One url of the stream and what we learned about it
+     */
+    static final class Endpoint {
+        final URL url;
+
+        /**
+         * Moving averages of the connect time and the time to first byte in ns , -1 until measured
+         */
+        private volatile long connectTime = -1;
+        private volatile long firstByteTime = -1;
+
+        private volatile int failures = 0;
+
+        /**
+         * Until when the endpoint is unhealthy , in ms of {@link System#nanoTime() nanoTime}
+         */
+        private volatile long unhealthyUntil = 0;
+
+        Endpoint(URL url) {
+            this.url = url;
+        }
+
+        /**
+         * @return long the connect time plus the time to first byte in ns , 0 if it was never measured
+         */
+        private long score() {
+            return Math.max(0, connectTime) + Math.max(0, firstByteTime);
+        }
+
+        long getConnectTime() {
+            return connectTime;
+        }
+
+        long getFirstByteTime() {
+            return firstByteTime;
+        }
+
+        int getFailures() {
+            return failures;
+        }
+
+        @Override
+        public String toString() {
+            return url.toString();
+        }
+    }
+
+
+    private final List<Endpoint> endpoints;
+
+    /**
+     * The endpoint of the last connection
+     */
+    private volatile Endpoint current;
+
+
+    EndpointSelector(List<URL> urls) {
+        if (urls.isEmpty())
+            throw new IllegalArgumentException("No endpoints");
+        List<Endpoint> endpoints = new ArrayList<>(urls.size());
+        for (URL url : urls)
+            endpoints.add(new Endpoint(url));
+        this.endpoints = Collections.unmodifiableList(endpoints);
+        this.current = endpoints.get(0);
+    }
+
+
+    /**
+     * Chooses the endpoint of the next connection , the fastest healthy one ,
+     * or if none is healthy the one that stops being unhealthy first
+     * @return Endpoint
+     */
+    synchronized Endpoint select() {
+        long now = now();
+        Endpoint best = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.unhealthyUntil > now)
+                continue;
+            if (best == null || endpoint.score() < best.score())
+                best = endpoint;
+        }
+        if (best == null) {
+            for (Endpoint endpoint : endpoints) {
+                if (best == null || endpoint.unhealthyUntil < best.unhealthyUntil)
+                    best = endpoint;
+            }
+        }
+        current = best;
+        return best;
+    }
+
+    /**
+     * Marks the endpoint of the last connection unhealthy
+     * @return boolean true if another endpoint is healthy , so the event source can fail over to it right away
+     */
+    synchronized boolean onFailure() {
+        Endpoint failed = current;
+        long now = now();
+        long penalty = FAILURE_PENALTY << Math.min(failed.failures, 16);
+        failed.failures++;
+        failed.unhealthyUntil = now + Math.min(penalty, MAX_FAILURE_PENALTY);
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint != failed && endpoint.unhealthyUntil <= now)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The connection to the endpoint opened , it is healthy again
+     */
+    synchronized void onOpen(Endpoint endpoint) {
+        endpoint.failures = 0;
+        endpoint.unhealthyUntil = 0;
+    }
+
+    /**
+     * Called on the transport thread when the response headers arrived
+     * @param nanos since the transport was asked to connect
+     */
+    synchronized void recordConnect(Endpoint endpoint, long nanos) {
+        endpoint.connectTime = average(endpoint.connectTime, nanos);
+    }
+
+    /**
+     * Called on the transport thread when the first bytes of the body arrived
+     * @param nanos since the transport was asked to connect
+     */
+    synchronized void recordFirstByte(Endpoint endpoint, long nanos) {
+        endpoint.firstByteTime = average(endpoint.firstByteTime, nanos);
+    }
+
+    /**
+     * @return Endpoint the endpoint of the last connection
+     */
+    Endpoint getCurrent() {
+        return current;
+    }
+
+    List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * A moving average that gives the newest measurement a quarter of the weight
+     */
+    private static long average(long average, long nanos) {
+        return average < 0 ? nanos : average - (average >> 2) + (nanos >> 2);
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+}
@@ -0,0 +1,88 @@
+package gr.spiritinlife.andsse;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the newest waiting event of every {@link ConflationKey key} for the main thread.
+ *
+ * The transport thread puts events , the main thread drains them. An event that replaces a waiting one with the same key
+ * keeps the place of the first one , so the keys are delivered in the order they first arrived.
+ * The lock is held only to put an event or to swap the map , the main thread hands the events over without it.
+ */
+final class EventConflater {
+
+    /**
+     * The events waiting , by key
+     */
+    private LinkedHashMap<Object, AndEvent> pending = new LinkedHashMap<>();
+
+    /**
+     * The events being handed over , the two maps are swapped so that a drain does not allocate
+     */
+    private LinkedHashMap<Object, AndEvent> draining = new LinkedHashMap<>();
+
+    /**
+     * The events that were replaced by a newer one , only the producer counts them
+     */
+    private volatile long conflated;
+
+
+    /**
+     * Adds an event , on the producer thread
+     * @param key the key of the event , not null
+     * @param event {@link AndEvent AndEvent} , it belongs to the conflater from now on
+     * @return boolean true if no event of the key was waiting
+     */
+    boolean put(Object key, AndEvent event) {
+        AndEvent replaced;
+        synchronized (this) {
+            replaced = pending.put(key, event);
+        }
+        if (replaced == null)
+            return true;
+
+        conflated++;
+        replaced.recycle();
+        return false;
+    }
+
+    /**
+     * Hands every waiting event to the consumer , on the consumer thread
+     * @param consumer gets every event and must recycle it
+     * @return int how many events were handed over
+     */
+    int drain(IEventCallback consumer) {
+        LinkedHashMap<Object, AndEvent> events;
+        synchronized (this) {
+            if (pending.isEmpty())
+                return 0;
+            events = pending;
+            pending = draining;
+            draining = events;
+        }
+
+        int count = events.size();
+        try {
+            for (AndEvent event : events.values()) {
+                consumer.onEvent(event);
+            }
+        } finally {
+            events.clear();
+        }
+        return count;
+    }
+
+    /**
+     * @return int how many keys have an event waiting
+     */
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * @return long how many events were replaced by a newer one with the same key
+     */
+    long getConflated() {
+        return conflated;
+    }
+}
@@ -0,0 +1,119 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * Remembers the ids of the last events of a stream , so that the events a server sends again when the stream resumes
+ * are recognised and skipped.
+ *
+ * The ids are kept as 64 bit hashes in a ring , the oldest one is forgotten when a new one comes , and in an open addressing
+ * table that finds them in constant time. Both are allocated once , so the memory does not grow however long the stream runs ,
+ * 24 to 40 bytes per id : 8 in the ring and 16 to 32 in the table , which has 2 to 4 slots per id.
+ * Two different ids with the same hash are taken for one , with a chance of about one in 2^64 / capacity per event.
+ *
+ * It is used by the transport thread only.
+ */
+final class EventDeduplicator {
+
+    /**
+     * The hashes in the order they came , {@link #next next} is the oldest once the ring is full
+     */
+    private final long[] ring;
+    private int next = 0;
+    private int size = 0;
+
+    /**
+     * The same hashes , by linear probing. 0 is an empty slot , no hash is 0
+     */
+    private final long[] table;
+    private final int mask;
+
+
+    /**
+     * @param capacity how many of the latest ids are remembered
+     */
+    EventDeduplicator(int capacity) {
+        if (capacity < 1 || capacity > 1 << 28)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        ring = new long[capacity];
+        // at most half full , so that probes stay short
+        int tableSize = Integer.highestOneBit(capacity) << 2;
+        table = new long[tableSize];
+        mask = tableSize - 1;
+    }
+
+
+    /**
+     * @param id String the id of the event , not empty
+     * @return boolean true if the id is one of the latest , otherwise it is remembered
+     */
+    boolean isDuplicate(String id) {
+        long hash = hash(id);
+        int slot = home(hash);
+        while (table[slot] != 0) {
+            if (table[slot] == hash)
+                return true;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = hash;
+
+        if (size == ring.length)
+            remove(ring[next]);
+        else
+            size++;
+        ring[next] = hash;
+        next = next + 1 == ring.length ? 0 : next + 1;
+        return false;
+    }
+
+    /**
+     * @return int how many ids are remembered
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes a hash from the table and moves the ones that follow it back , so that no probe stops short at the hole
+     */
+    private void remove(long hash) {
+        int hole = home(hash);
+        while (table[hole] != hash)
+            hole = (hole + 1) & mask;
+
+        int slot = hole;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long moved = table[slot];
+            if (moved == 0)
+                break;
+            int home = home(moved);
+            // the hash stays where it is if its home is between the hole and its slot
+            boolean between = hole <= slot ? hole < home && home <= slot : hole < home || home <= slot;
+            if (!between) {
+                table[hole] = moved;
+                hole = slot;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    private int home(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * FNV-1a over the chars of the id , finished with the mixer of MurmurHash3 so that the low bits are usable
+     */
+    static long hash(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,327 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The data of one big event , read while it arrives.
+ * See {@link SSEEventSource#addStreamingListener(String, Executor, int, Callback) addStreamingListener}.
+ *
+ * The transport thread writes the data into a buffer of a fixed size and the listener reads it on its executor.
+ * When the buffer is full the transport thread waits for the listener , so an event of any size takes no more memory
+ * than the buffer , and the listener gets the first bytes while the rest are still on the wire.
+ * A transport whose thread serves other streams too , like the {@link SelectorTransport SelectorTransport} , never waits :
+ * if the listener falls a whole buffer behind , the rest of the event is dropped and the listener gets an error.
+ * Closing the stream before the end skips the rest of the event , closing the connection aborts it.
+ * The two threads wait on a lock rather than a monitor , so a virtual thread that waits gives its carrier back.
+ */
+public final class EventInputStream extends InputStream {
+
+    /**
+     * Gets the data of the events of a name as they start , on the executor it was added with
+     */
+    public interface Callback {
+
+        /**
+         * Called when the data of an event starts. Read it to the end , or close it , before returning ,
+         * the stream is closed when this returns
+         * @param data {@link EventInputStream EventInputStream} , UTF-8 , the data lines joined with LF
+         */
+        void onEvent(EventInputStream data) throws IOException;
+    }
+
+
+    private final String eventName;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Signalled when there is something to read , and when there is room to write
+     */
+    private final Condition readable = lock.newCondition();
+    private final Condition writable = lock.newCondition();
+
+    /**
+     * What {@link #read() read} reads the byte into
+     */
+    private final byte[] single = new byte[1];
+
+    /**
+     * The bytes written and not read yet , a ring
+     */
+    private final byte[] buffer;
+    private int readIndex = 0;
+    private int count = 0;
+
+    /**
+     * False if the transport thread must not wait for the reader when the buffer is full
+     */
+    private final boolean mayWait;
+
+    private boolean finished = false;
+    private boolean aborted = false;
+    private boolean overflowed = false;
+    private boolean closed = false;
+    private String id;
+
+
+    EventInputStream(String eventName, int bufferSize, boolean mayWait) {
+        this.eventName = eventName;
+        this.buffer = new byte[bufferSize];
+        this.mayWait = mayWait;
+    }
+
+
+    /**
+     * @return String the name of the event , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without one
+     */
+    public String getEventName() {
+        return eventName;
+    }
+
+    /**
+     * @return String the id of the event , empty if none , null until the whole event arrived
+     */
+    public String getId() {
+        lock.lock();
+        try {
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        lock.lock();
+        try {
+            try {
+                while (count == 0 && !finished && !aborted && !closed)
+                    readable.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (closed)
+                throw new IOException("The stream is closed");
+            if (count == 0) {
+                if (overflowed)
+                    throw new IOException("The reader fell behind the " + eventName + " event , the rest of it was dropped");
+                if (aborted)
+                    throw new IOException("The connection was lost before the end of the " + eventName + " event");
+                return -1;
+            }
+
+            int read = Math.min(len, count);
+            int first = Math.min(read, buffer.length - readIndex);
+            System.arraycopy(buffer, readIndex, b, off, first);
+            System.arraycopy(buffer, 0, b, off + first, read - first);
+            readIndex = (readIndex + read) % buffer.length;
+            count -= read;
+            writable.signal();
+            return read;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int available() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Skips the rest of the event , the transport thread does not wait for it any more
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            count = 0;
+            readable.signalAll();
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    //---------------------------------------//---------------------------------------//
+    //                                 transport thread                                //
+
+    /**
+     * Copies the bytes into the buffer , waiting for the reader whenever it is full ,
+     * or dropping the rest of the event if the transport thread may not wait
+     */
+    void write(byte[] data, int offset, int length) {
+        lock.lock();
+        try {
+            while (length > 0) {
+                if (count == buffer.length && !mayWait && !closed && !aborted) {
+                    overflowed = true;
+                    abort();
+                }
+                try {
+                    while (count == buffer.length && !closed && !aborted)
+                        writable.await();
+                } catch (InterruptedException e) {
+                    // the transport is shutting down , the reader gets what was written and then an error
+                    Thread.currentThread().interrupt();
+                    abort();
+                    return;
+                }
+                if (closed || aborted)
+                    return;
+
+                int writeIndex = (readIndex + count) % buffer.length;
+                int chunk = Math.min(length, Math.min(buffer.length - count, buffer.length - writeIndex));
+                System.arraycopy(data, offset, buffer, writeIndex, chunk);
+                count += chunk;
+                offset += chunk;
+                length -= chunk;
+                readable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void finish(String id) {
+        lock.lock();
+        try {
+            this.id = id;
+            finished = true;
+            readable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives up the event , on any thread. A writer that waits for the reader returns , and the rest of the event is dropped
+     */
+    void abort() {
+        lock.lock();
+        try {
+            if (finished)
+                return;
+            aborted = true;
+            readable.signalAll();
+            writable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //---------------------------------------//---------------------------------------//
+
+
+    /**
+     * The {@link StreamingEventCallback StreamingEventCallback} that hands every event of its name to a {@link Callback Callback}
+     * on an executor , through an EventInputStream
+     */
+    static final class Listener implements StreamingEventCallback {
+
+        private static final Logger LOG = Logger.getLogger("AndSSE");
+
+        private final Executor executor;
+        private final int bufferSize;
+        private final boolean mayWait;
+        private final Callback callback;
+
+        /**
+         * The event being written , null between events. Volatile as the event loop {@link #abort() aborts} it
+         */
+        private volatile EventInputStream current;
+
+
+        /**
+         * @param executor Executor , not {@link SSEExecutors#DIRECT DIRECT} as the transport thread can not read what it writes ,
+         *                 and not {@link SSEExecutors#BACKGROUND BACKGROUND} as the library's own work must not wait behind a slow reader
+         * @param mayWait false if the transport thread serves other streams too and must not wait for the reader
+         */
+        Listener(Executor executor, int bufferSize, boolean mayWait, Callback callback) {
+            if (executor == null || executor == SSEExecutors.DIRECT)
+                throw new IllegalArgumentException("The data must be read on another thread than the transport's");
+            if (executor == SSEExecutors.BACKGROUND)
+                throw new IllegalArgumentException("The data must be read on an executor of its own , eg. SSEExecutors.STREAMING");
+            if (bufferSize <= 0)
+                throw new IllegalArgumentException("Invalid buffer size " + bufferSize);
+            this.executor = executor;
+            this.bufferSize = bufferSize;
+            this.mayWait = mayWait;
+            this.callback = callback;
+        }
+
+
+        /**
+         * Aborts the event being written , on any thread , so that the transport thread does not wait for its reader
+         */
+        void abort() {
+            EventInputStream data = current;
+            if (data != null)
+                data.abort();
+        }
+
+        @Override
+        public void onEventStart(String eventName) {
+            final EventInputStream data = new EventInputStream(eventName, bufferSize, mayWait);
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            callback.onEvent(data);
+                        } catch (Exception e) {
+                            LOG.log(Level.SEVERE, "A streaming listener of " + data.getEventName() + " failed", e);
+                        } finally {
+                            data.close();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // nobody will read it , the event is skipped
+                LOG.log(Level.WARNING, "The executor of a streaming listener rejected an event", e);
+                data.close();
+            }
+            current = data;
+        }
+
+        @Override
+        public void onEventData(byte[] data, int offset, int length) {
+            current.write(data, offset, length);
+        }
+
+        @Override
+        public void onEventEnd(String id) {
+            current.finish(id);
+            current = null;
+        }
+
+        @Override
+        public void onEventAborted() {
+            current.abort();
+            current = null;
+        }
+    }
+}
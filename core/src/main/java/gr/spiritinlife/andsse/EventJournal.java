@@ -0,0 +1,483 @@
+package gr.spiritinlife.andsse;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An append only journal of the events of a stream , kept in memory mapped segment files.
+ *
+ * {@link SSEEventSource#setJournal(EventJournal) Given to an event source} , it records every event as it is parsed ,
+ * and when the app starts again the last event id is restored from it , so the server resumes the stream instead of replaying its backlog.
+ * Consumers that come online late can {@link #replay(String, IEventCallback) replay} the journal without asking the server.
+ *
+ * Appending an event is a copy into the mapped segment , the parse loop never waits for the disk.
+ * A segment is rotated when it is full or older than the maximum age , the next one is prepared on a background thread
+ * before it is needed , and only the newest segments are kept.
+ *
+ * A record is made visible by writing its length last , so a record that was being written when the process died is never read back.
+ * The journal is guarded by a lock rather than a monitor , so a virtual thread that waits for it gives its carrier back.
+ */
+public final class EventJournal implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger("AndSSE");
+
+    private static final String SUFFIX = ".journal";
+    private static final int MAGIC = 0x41535345; // ASSE
+    private static final int VERSION = 1;
+
+    /**
+     * magic , version , created at
+     */
+    private static final int HEADER_SIZE = 16;
+    private static final int CREATED_AT_OFFSET = 8;
+
+    /**
+     * length , timestamp , name length , id length , data length
+     */
+    private static final int RECORD_OVERHEAD = 4 + 8 + 2 + 2 + 4;
+
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    public static final long DEFAULT_MAX_SEGMENT_AGE = 24 * 60 * 60 * 1000L;
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+
+
+    /**
+     * A segment file and its mapping
+     */
+    private static final class Segment {
+        final File file;
+        final MappedByteBuffer buffer;
+        long createdAt;
+
+        /**
+         * Where the next record goes , only the bytes before it are read by {@link #replay(String, IEventCallback) replay}
+         */
+        volatile int committed = HEADER_SIZE;
+
+        Segment(File file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maxSegmentAge;
+    private final int maxSegments;
+
+    /**
+     * The segments , oldest first. The last one is written
+     */
+    private final ArrayList<Segment> segments = new ArrayList<>();
+
+    /**
+     * Guards everything below and the segments
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The next segment , mapped on a background thread before the current one is full
+     */
+    private FutureTask<Segment> spare;
+    private long nextSequence;
+
+    private String lastEventId = "";
+    private boolean closed = false;
+
+    /**
+     * Most streams use a handful of event names , so we keep the bytes of the last one
+     */
+    private String cachedName;
+    private byte[] cachedNameBytes;
+
+
+    /**
+     * Opens the journal in the directory with the default sizes
+     * @param directory File , eg. a directory in Context.getFilesDir() on Android
+     */
+    public static EventJournal open(File directory) throws IOException {
+        return new EventJournal(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENT_AGE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Opens the journal in the directory , creating it if needed , and restores the last event id
+     * @param directory File , one journal per directory
+     * @param segmentSize the size of a segment file in bytes , events bigger than that are not journaled
+     * @param maxSegmentAgeMs a segment older than this is rotated even if it is not full
+     * @param maxSegments how many segments are kept , the oldest are deleted
+     */
+    public EventJournal(File directory, int segmentSize, long maxSegmentAgeMs, int maxSegments) throws IOException {
+        if (segmentSize <= HEADER_SIZE + RECORD_OVERHEAD || maxSegmentAgeMs <= 0 || maxSegments < 1)
+            throw new IllegalArgumentException("Invalid journal configuration");
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegmentAge = maxSegmentAgeMs;
+        this.maxSegments = maxSegments;
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+
+        load();
+        if (segments.isEmpty() || isStale(current(), System.currentTimeMillis()))
+            activate(map(nextSequence++));
+        prepareSpare();
+    }
+
+
+    /**
+     * @return String the id of the last event in the journal , empty if there is none
+     */
+    public String getLastEventId() {
+        lock.lock();
+        try {
+            return lastEventId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Delivers the journaled events to the callback , on the calling thread and oldest first.
+     * Every event is recycled when the callback returns , like the events of the stream
+     * @param afterEventId only the events after the last one that had this id are delivered ,
+     *                     all of them if it is null or not in the journal
+     * @param callback {@link IEventCallback IEventCallback}
+     * @return int how many events were delivered
+     */
+    public int replay(String afterEventId, IEventCallback callback) {
+        ArrayList<Segment> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(segments);
+        } finally {
+            lock.unlock();
+        }
+
+        // find where to start , the last record with that id
+        int startSegment = 0;
+        int startPosition = HEADER_SIZE;
+        if (afterEventId != null) {
+            for (int s = 0; s < snapshot.size(); s++) {
+                Segment segment = snapshot.get(s);
+                ByteBuffer buffer = segment.buffer.duplicate();
+                int end = segment.committed;
+                int position = HEADER_SIZE;
+                while (position < end) {
+                    int next = position + 4 + buffer.getInt(position);
+                    if (afterEventId.equals(readId(buffer, position))) {
+                        startSegment = s;
+                        startPosition = next;
+                    }
+                    position = next;
+                }
+            }
+        }
+
+        int count = 0;
+        for (int s = startSegment; s < snapshot.size(); s++) {
+            Segment segment = snapshot.get(s);
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int end = segment.committed;
+            int position = s == startSegment ? startPosition : HEADER_SIZE;
+            while (position < end) {
+                int length = buffer.getInt(position);
+                AndEvent event = readEvent(buffer, position);
+                try {
+                    callback.onEvent(event);
+                } finally {
+                    event.recycle();
+                }
+                count++;
+                position += 4 + length;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Flushes the current segment to disk. Events appended after this are ignored
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+            closed = true;
+            current().buffer.force();
+            if (spare != null)
+                spare.cancel(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Appends the event. Called on the transport thread right after the event is parsed
+     * @param event {@link AndEvent AndEvent}
+     */
+    void append(AndEvent event) {
+        lock.lock();
+        try {
+            if (closed)
+                return;
+
+            String name = event.getEventName();
+            if (!name.equals(cachedName)) {
+                cachedName = name;
+                cachedNameBytes = name.getBytes(SSEParser.UTF_8);
+            }
+            String id = event.getId() == null ? "" : event.getId();
+            byte[] idBytes = id.isEmpty() ? null : id.getBytes(SSEParser.UTF_8);
+            ByteBuffer data = event.getRawData();
+
+            int idLength = idBytes == null ? 0 : idBytes.length;
+            int size = RECORD_OVERHEAD + cachedNameBytes.length + idLength + data.remaining();
+            if (HEADER_SIZE + size > segmentSize || cachedNameBytes.length > Short.MAX_VALUE || idLength > Short.MAX_VALUE) {
+                LOG.warning("A " + name + " event of " + data.remaining() + " bytes is too big for the journal");
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            Segment segment = current();
+            if (segment.committed + size > segmentSize || isStale(segment, now)) {
+                segment = rotate();
+                if (segment == null)
+                    return;
+            }
+
+            MappedByteBuffer buffer = segment.buffer;
+            int start = segment.committed;
+            buffer.position(start + 4);
+            buffer.putLong(now);
+            buffer.putShort((short) cachedNameBytes.length);
+            buffer.putShort((short) idLength);
+            buffer.putInt(data.remaining());
+            buffer.put(cachedNameBytes);
+            if (idBytes != null)
+                buffer.put(idBytes);
+            buffer.put(data);
+            // the length goes last , it makes the record visible
+            buffer.putInt(start, size - 4);
+
+            segment.committed = start + size;
+            lastEventId = id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private Segment current() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private boolean isStale(Segment segment, long now) {
+        return segment.createdAt > 0 && now - segment.createdAt > maxSegmentAge;
+    }
+
+    /**
+     * Moves to the spare segment and hands the previous one and the old segments to a background thread
+     * @return Segment the new current segment , null if it could not be mapped
+     */
+    private Segment rotate() {
+        Segment next;
+        try {
+            // normally the spare is ready. If the background thread did not get to it yet we map it here ,
+            // if it is being mapped we wait for it , that is still better than losing the event
+            spare.run();
+            next = spare.get();
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Could not rotate the journal", e);
+            prepareSpare();
+            return null;
+        }
+
+        final Segment previous = current();
+        activate(next);
+
+        final ArrayList<Segment> expired = new ArrayList<>();
+        while (segments.size() > maxSegments)
+            expired.add(segments.remove(0));
+
+        SSEExecutors.BACKGROUND.execute(new Runnable() {
+            @Override
+            public void run() {
+                previous.buffer.force();
+                for (Segment segment : expired) {
+                    if (!segment.file.delete())
+                        LOG.warning("Could not delete " + segment.file);
+                }
+            }
+        });
+
+        prepareSpare();
+        return next;
+    }
+
+    private void activate(Segment segment) {
+        segment.createdAt = System.currentTimeMillis();
+        segment.buffer.putLong(CREATED_AT_OFFSET, segment.createdAt);
+        segments.add(segment);
+    }
+
+    private void prepareSpare() {
+        final long sequence = nextSequence++;
+        FutureTask<Segment> task = new FutureTask<>(new Callable<Segment>() {
+            @Override
+            public Segment call() throws IOException {
+                return map(sequence);
+            }
+        });
+        spare = task;
+        SSEExecutors.BACKGROUND.execute(task);
+    }
+
+    /**
+     * Creates the segment file of the sequence and maps it
+     */
+    private Segment map(long sequence) throws IOException {
+        File file = new File(directory, String.format(Locale.US, "%019d", sequence) + SUFFIX);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(segmentSize);
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            return new Segment(file, buffer);
+        } finally {
+            // the mapping stays valid after the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps the segments that are on disk , finds where the last one ends and restores the last event id
+     */
+    private void load() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null)
+            files = new File[0];
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!fileName.endsWith(SUFFIX))
+                continue;
+            long sequence;
+            try {
+                sequence = Long.parseLong(fileName.substring(0, fileName.length() - SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            nextSequence = Math.max(nextSequence, sequence + 1);
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                if (raf.length() != segmentSize || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                    // not ours , or written with another segment size
+                    continue;
+                }
+                Segment segment = new Segment(file, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+                segment.createdAt = segment.buffer.getLong(CREATED_AT_OFFSET);
+                if (segment.createdAt == 0) {
+                    // a spare that was never used
+                    if (!file.delete())
+                        LOG.warning("Could not delete " + file);
+                    continue;
+                }
+                segment.committed = scan(segment.buffer);
+                segments.add(segment);
+            } finally {
+                raf.close();
+            }
+        }
+
+        while (segments.size() > maxSegments) {
+            Segment expired = segments.remove(0);
+            if (!expired.file.delete())
+                LOG.warning("Could not delete " + expired.file);
+        }
+
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Segment segment = segments.get(s);
+            if (segment.committed > HEADER_SIZE) {
+                lastEventId = lastId(segment);
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return int where the last complete record of the segment ends
+     */
+    private int scan(ByteBuffer buffer) {
+        int position = HEADER_SIZE;
+        while (position + RECORD_OVERHEAD <= segmentSize) {
+            int length = buffer.getInt(position);
+            if (length < RECORD_OVERHEAD - 4 || position + 4 + length > segmentSize)
+                break;
+            position += 4 + length;
+        }
+        return position;
+    }
+
+    private String lastId(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        String id = "";
+        int position = HEADER_SIZE;
+        while (position < segment.committed) {
+            id = readId(buffer, position);
+            position += 4 + buffer.getInt(position);
+        }
+        return id;
+    }
+
+    private static String readId(ByteBuffer buffer, int position) {
+        int nameLength = buffer.getShort(position + 12);
+        int idLength = buffer.getShort(position + 14);
+        if (idLength == 0)
+            return "";
+        byte[] id = new byte[idLength];
+        buffer.position(position + RECORD_OVERHEAD + nameLength);
+        buffer.get(id);
+        return new String(id, SSEParser.UTF_8);
+    }
+
+    private static AndEvent readEvent(ByteBuffer buffer, int position) {
+        int nameLength = buffer.getShort(position + 12);
+        int idLength = buffer.getShort(position + 14);
+        int dataLength = buffer.getInt(position + 16);
+
+        byte[] bytes = new byte[nameLength + idLength + dataLength];
+        buffer.position(position + RECORD_OVERHEAD);
+        buffer.get(bytes);
+
+        AndEvent event = AndEvent.obtain();
+        event.setEventName(new String(bytes, 0, nameLength, SSEParser.UTF_8));
+        event.setId(new String(bytes, nameLength, idLength, SSEParser.UTF_8));
+        event.setEventData(bytes, nameLength + idLength, dataLength);
+        return event;
+    }
+}
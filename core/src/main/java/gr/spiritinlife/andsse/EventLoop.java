@@ -0,0 +1,42 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * The thread an event source lives on. Its state changes and its listeners without an executor run there , one message at a time.
+ *
+ * On Android it is the main thread , reached through a Handler. On a plain JVM it is a {@link SerialEventLoop SerialEventLoop}.
+ * The transports and the scheduler only {@link #send(int, long) send} it messages , the {@link EventSource EventSource} constants ,
+ * and the {@link Target Target} handles them on the loop's thread.
+ */
+interface EventLoop {
+
+    /**
+     * Handles the messages of a loop
+     */
+    interface Target {
+
+        /**
+         * @param what one of the {@link EventSource EventSource} constants
+         * @return boolean false if the message is not understood
+         */
+        boolean handle(int what);
+    }
+
+    /**
+     * Sets who handles the messages , before the first one is sent. Messages sent while there is none are ignored
+     * @param target {@link Target Target}
+     */
+    void setTarget(Target target);
+
+    /**
+     * Sends a message to the target , from any thread
+     * @param what one of the {@link EventSource EventSource} constants
+     * @param delayMs how long to wait before handling it
+     */
+    void send(int what, long delayMs);
+
+    /**
+     * Removes the messages that were sent and not handled yet
+     * @param what one of the {@link EventSource EventSource} constants
+     */
+    void remove(int what);
+}
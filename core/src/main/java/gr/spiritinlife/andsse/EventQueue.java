@@ -0,0 +1,152 @@
+package gr.spiritinlife.andsse;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The bounded hand off of events from the transport thread of a stream to the main thread.
+ *
+ * It is a ring buffer with a single producer , the transport thread , and a single consumer , the main thread , and no locks.
+ * The consumer moves the head with a compare and set , so that the producer can also take the oldest event when it
+ * {@link OverflowPolicy#DROP_OLDEST drops it}. Whoever moves the head owns the event that was there.
+ *
+ * When the ring is full the {@link OverflowPolicy OverflowPolicy} decides , every event that is dropped is counted.
+ */
+final class EventQueue {
+
+    /**
+     * How long a blocked producer sleeps before it looks again , in case it missed the consumer's wake up
+     */
+    private static final long PARK_NANOS = 1000 * 1000;
+
+    private final AtomicReferenceArray<AndEvent> slots;
+    private final int mask;
+    private final OverflowPolicy policy;
+
+    /**
+     * The next event to take. The consumer and the producer , when it drops the oldest event , move it
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Where the next event goes , only the producer moves it
+     */
+    private volatile long tail;
+
+    /**
+     * The events that were dropped , only the producer counts them
+     */
+    private volatile long dropped;
+
+    /**
+     * The producer , while it waits for room
+     */
+    private volatile Thread blocked;
+
+
+    /**
+     * @param capacity how many events can wait , rounded up to a power of two
+     * @param policy what to do when they are that many
+     */
+    EventQueue(int capacity, OverflowPolicy policy) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.policy = policy;
+    }
+
+
+    /**
+     * Adds an event , on the producer thread
+     * @param event {@link AndEvent AndEvent} , it belongs to the queue from now on , even if it is dropped
+     * @return boolean false if the queue is full and its policy is {@link OverflowPolicy#FAIL FAIL}
+     */
+    boolean offer(AndEvent event) {
+        long t = tail;
+        while (t - head.get() > mask) {
+            switch (policy) {
+                case BLOCK:
+                    blocked = Thread.currentThread();
+                    // the consumer may have made room before it saw us
+                    if (t - head.get() > mask)
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    blocked = null;
+                    break;
+                case DROP_OLDEST:
+                    long h = head.get();
+                    // the consumer may have made room since we looked , then the oldest slot is stale
+                    if (t - h <= mask)
+                        break;
+                    AndEvent oldest = slots.get((int) h & mask);
+                    if (head.compareAndSet(h, h + 1)) {
+                        dropped++;
+                        oldest.recycle();
+                    }
+                    break;
+                case DROP_NEWEST:
+                    dropped++;
+                    event.recycle();
+                    return true;
+                case FAIL:
+                    dropped++;
+                    event.recycle();
+                    return false;
+            }
+        }
+
+        slots.lazySet((int) t & mask, event);
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Takes the oldest event , on the consumer thread
+     * @return AndEvent the event , it belongs to the caller , null if the queue is empty
+     */
+    AndEvent poll() {
+        for (;;) {
+            long h = head.get();
+            if (h == tail)
+                return null;
+            // the slot is not written again before the head moves past it , so it is safe to read it first.
+            // It is not cleared either , the producer may already be writing the next event in it
+            AndEvent event = slots.get((int) h & mask);
+            if (head.compareAndSet(h, h + 1)) {
+                Thread producer = blocked;
+                if (producer != null)
+                    LockSupport.unpark(producer);
+                return event;
+            }
+        }
+    }
+
+    /**
+     * Drops every waiting event , on the consumer thread
+     */
+    void clear() {
+        AndEvent event;
+        while ((event = poll()) != null)
+            event.recycle();
+    }
+
+    /**
+     * @return int how many events are waiting
+     */
+    int size() {
+        // the head first , the tail is never behind it
+        long h = head.get();
+        return (int) (tail - h);
+    }
+
+    /**
+     * @return long how many events were dropped because the queue was full
+     */
+    long getDropped() {
+        return dropped;
+    }
+}
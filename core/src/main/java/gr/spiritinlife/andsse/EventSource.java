@@ -9,6 +9,12 @@ public interface EventSource {
     public static final short ERROR = 0x4;
     public static final short RESTABLISH = 0x5;
     public static final short LOOOPER_READY = 0x6;
+    public static final short EVENT_BATCH = 0x7;
+    public static final short METRICS = 0x8;
+    public static final short WATCHDOG = 0x9;
+    public static final short ATTACHED = 0xA;
+    public static final short GRACE_ENDED = 0xB;
+    public static final short FAILED = 0xC;
 
 
 //    public void onOpen();
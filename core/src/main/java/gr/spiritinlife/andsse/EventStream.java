@@ -0,0 +1,895 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The state of one server sent events stream , whatever {@link Transport Transport} carries its bytes.
+ *
+ * The transport tells the stream when the connection is {@link #onConnected(String) up} , hands it the {@link #onData(byte[], int, int) bytes}
+ * of the response body and tells it when the connection is {@link #onClosed() gone}.
+ * The stream parses the bytes , calls the listeners that have their own executor and hands everything else to the
+ * {@link EventLoop event loop} of the {@link SSEEventSource event source} it belongs to , the main thread on Android ,
+ * through a bounded {@link EventQueue queue}. The loop is sent one message when the queue stops being empty , and {@link #drain(IEventCallback) drains} it.
+ * Names with a {@link #setPriority(String, DispatchPriority) priority} wait in a queue of their own , drained before the lower ones.
+ * Events of {@link #setConflation(String, ConflationKey) conflated} names bypass the queues , only the newest of each key waits.
+ * Events nobody {@link #setSubscriptions(ListenerRegistry) listens} for are skipped before they are built ,
+ * and so are the ones whose id was {@link #setDeduplication(int) seen} lately.
+ * The data of {@link #setStreamingListener(String, StreamingEventCallback) streamed} names goes to their listener while it arrives ,
+ * those events are never built either.
+ *
+ * A stream is driven by one transport thread at a time.
+ */
+final class EventStream implements SSEParser.Listener {
+
+    private static final Logger LOG = Logger.getLogger("AndSSE");
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /**
+     * How many events the event loop handles in one pass when batching is off , so that it can do other work in between
+     */
+    private static final int DRAIN_LIMIT = 64;
+
+    /**
+     * How many events of higher priority the event loop takes in a row while a lower priority one waits
+     */
+    static final int STARVATION_LIMIT = 16;
+
+    private static final int NORMAL = DispatchPriority.NORMAL.ordinal();
+
+    /**
+     * The URL of the stream , the {@link #connecting(EndpointSelector, EndpointSelector.Endpoint) endpoint} of the next connection
+     */
+    private volatile URL url;
+
+    /**
+     * Times the connections to the endpoints of the stream , null if it has a single url
+     */
+    private volatile EndpointSelector endpoints;
+    private volatile EndpointSelector.Endpoint endpoint;
+
+    /**
+     * When the transport was asked to connect , in nanoTime , and whether the first bytes of the body have arrived since
+     */
+    private volatile long connectStartedAt;
+    private boolean firstByteReceived = true;
+
+    /**
+     * The {@link EventLoop event loop} of the event source that owns this stream
+     */
+    private final EventLoop loop;
+
+    /**
+     * The listeners that are not run on the event loop. They are called on the transport thread right after an event is parsed
+     */
+    private final ListenerRegistry executorListeners;
+
+    /**
+     * The listeners of the event loop , published to the transport thread so that it skips the events neither
+     * they nor the {@link #executorListeners executor listeners} want. Null if every event is dispatched
+     */
+    private volatile ListenerRegistry subscriptions;
+
+    /**
+     * The {@link PayloadDecoder decoders} by event name. The map is replaced , never changed , so the transport thread reads it without locking
+     */
+    private volatile Map<String, PayloadDecoder<?>> decoders = Collections.emptyMap();
+
+    /**
+     * The {@link ConflationKey keys} of the conflated event names , replaced like {@link #decoders decoders}
+     */
+    private volatile Map<String, ConflationKey> conflation = Collections.emptyMap();
+
+    /**
+     * The {@link StreamingEventCallback streaming listeners} by event name , replaced like {@link #decoders decoders}
+     */
+    private volatile Map<String, StreamingEventCallback> streamingListeners = Collections.emptyMap();
+
+    /**
+     * The streaming listener of the event whose data is arriving , null if it is not streamed.
+     * Volatile as the transport {@link #abortStreaming() aborts} it from other threads
+     */
+    private volatile StreamingEventCallback streamingEvent;
+
+    /**
+     * Set when the transport closes the connection , until the next one opens. Events streamed meanwhile are aborted right away
+     */
+    private volatile boolean disconnecting = false;
+
+    /**
+     * Set when the server {@link #onRefused(int) refused} the stream , until the transport reports the close
+     */
+    private volatile boolean refused = false;
+
+    /**
+     * Skips the events whose id was seen lately , null if the stream is not deduplicated
+     */
+    private volatile EventDeduplicator deduplicator;
+
+    /**
+     * Records every event , null if the stream is not journaled
+     */
+    private volatile EventJournal journal;
+
+    /**
+     * The parser of the stream , it also keeps the last event's id
+     */
+    private final SSEParser parser = new SSEParser(this);
+
+    /**
+     * The parser of a stream the server answered in {@link FrameParser binary frames} , it keeps the last event's id while it is used
+     */
+    private final FrameParser frames = new FrameParser(this);
+
+    /**
+     * True if the current connection is in binary frames , false if it is text
+     */
+    private volatile boolean binary = false;
+
+    /**
+     * Takes the data of the events that have a streaming listener away from the parser while it arrives
+     */
+    private final SSEParser.Streamer streamer = new SSEParser.Streamer() {
+        @Override
+        public boolean onEventStart(String eventName) {
+            if (eventName == null)
+                eventName = AndEvent.ON_MESSAGE;
+            StreamingEventCallback callback = streamingListeners.get(eventName);
+            if (callback == null)
+                return false;
+            metrics.eventsReceived.increment();
+            callback.onEventStart(eventName);
+            streamingEvent = callback;
+            // the connection was closed while the event started , the listener must not wait for its reader
+            if (disconnecting)
+                abort(callback);
+            return true;
+        }
+
+        @Override
+        public void onEventData(byte[] data, int offset, int length) {
+            streamingEvent.onEventData(data, offset, length);
+        }
+
+        @Override
+        public void onEventEnd(String lastEventId) {
+            StreamingEventCallback callback = streamingEvent;
+            streamingEvent = null;
+            // like a skipped event , a streamed one is delivered as far as resuming is concerned
+            if (!overflowed)
+                lastQueuedId = lastEventId;
+            callback.onEventEnd(lastEventId);
+            parseStart = System.nanoTime();
+        }
+
+        @Override
+        public void onEventAborted() {
+            StreamingEventCallback callback = streamingEvent;
+            streamingEvent = null;
+            callback.onEventAborted();
+        }
+    };
+
+    /**
+     * Hands the inflated bytes of a compressed response to the parser
+     */
+    private final StreamInflater.Sink parserSink = new StreamInflater.Sink() {
+        @Override
+        public void onData(byte[] buffer, int offset, int length) throws IOException {
+            feedParser(buffer, offset, length);
+        }
+    };
+
+    /**
+     * Inflates the body of the current connection if the server compressed it , null otherwise
+     */
+    private StreamInflater inflater;
+
+    /**
+     * The events waiting for the event loop , a queue per {@link DispatchPriority priority} by its ordinal.
+     * Only the normal one exists until a name is given another priority. The array is replaced , never changed
+     */
+    private volatile EventQueue[] lanes = newLanes(DEFAULT_QUEUE_CAPACITY, OverflowPolicy.BLOCK);
+
+    /**
+     * The size and the policy every queue is created with
+     */
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private OverflowPolicy queuePolicy = OverflowPolicy.BLOCK;
+
+    /**
+     * The {@link DispatchPriority priorities} of the event names that are not normal , replaced like {@link #decoders decoders}
+     */
+    private volatile Map<String, DispatchPriority> priorities = Collections.emptyMap();
+
+    /**
+     * How many events of a higher priority the event loop took in a row while a lower priority one waited ,
+     * and the lower queue that gets the next event when they are too many. Only the event loop touches them
+     */
+    private int starvingStreak = 0;
+    private int starvingLane = NORMAL;
+
+    /**
+     * The newest event of every key of the conflated event names , waiting for the event loop
+     */
+    private final EventConflater conflater = new EventConflater();
+
+    /**
+     * What the stream received , how long parsing and delivering took
+     */
+    private final StreamMetrics metrics = new StreamMetrics(this);
+
+    /**
+     * When the parser started on the current event , the {@link #onData(byte[], int, int) bytes} arrived or the previous event was dispatched
+     */
+    private long parseStart;
+
+    /**
+     * When the stream last heard from the server , in {@link System#nanoTime() nanoTime} , comments and partial events included.
+     * The {@link SSEEventSource#setWatchdog(long, int) watchdog} reads it on the event loop
+     */
+    private volatile long lastReceived = System.nanoTime();
+
+    /**
+     * True while a message that drains the queue is on its way to the event loop
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    /**
+     * True when the queue was full and its policy is {@link OverflowPolicy#FAIL FAIL} ,
+     * every event is dropped until the connection is closed
+     */
+    private boolean overflowed = false;
+
+    /**
+     * The id of the last event that made it into the queue , the stream resumes from it when it overflows
+     */
+    private String lastQueuedId = "";
+
+    /**
+     * How many events make a batch. With 1 and no {@link #batchWindow window} every event is sent on its own
+     */
+    private volatile int maxBatchSize = 1;
+
+    /**
+     * For how many ms after the first event of a batch we keep collecting events
+     */
+    private volatile long batchWindow = 0;
+
+    /**
+     * The reconnection time the server sent in a retry field , -1 until it sends one
+     */
+    private volatile long reconnectionTime = -1;
+
+    /**
+     * Whether we ask the server to compress the stream
+     */
+    private volatile boolean compression = false;
+
+    /**
+     * Whether we tell the server that we accept {@link FrameParser binary frames}
+     */
+    private volatile boolean binaryFraming = false;
+
+
+    EventStream(URL url, EventLoop loop, ListenerRegistry executorListeners) {
+        this.url = url;
+        this.loop = loop;
+        this.executorListeners = executorListeners;
+        parser.setStreamer(streamer);
+        frames.setStreamer(streamer);
+    }
+
+
+    URL getUrl() {
+        return url;
+    }
+
+    /**
+     * @return long the reconnection time the server asked for , -1 if it did not
+     */
+    long getReconnectionTime() {
+        return reconnectionTime;
+    }
+
+    /**
+     * The headers of the request that opens the stream.
+     * It also handles last event id if one exists
+     * @return Map header names to values
+     */
+    Map<String, String> getRequestHeaders() {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Accept", binaryFraming ? FrameParser.MEDIA_TYPE + ", text/event-stream;q=0.5" : "text/event-stream");
+        headers.put("Cache-Control", "no-cache");
+        if (compression)
+            headers.put("Accept-Encoding", StreamInflater.GZIP + ", " + StreamInflater.DEFLATE);
+
+        // set  Last-Event-ID header if needed
+        String lastEventId = getLastEventId();
+        if (!lastEventId.isEmpty())
+            headers.put("Last-Event-ID", lastEventId);
+
+        return headers;
+    }
+
+
+    /**
+     * Called on the event loop right before the transport is asked to connect to an endpoint of the stream ,
+     * so that the connection is timed
+     * @param endpoints {@link EndpointSelector EndpointSelector} the endpoint was selected by
+     * @param endpoint {@link EndpointSelector.Endpoint Endpoint} of the connection
+     */
+    void connecting(EndpointSelector endpoints, EndpointSelector.Endpoint endpoint) {
+        this.url = endpoint.url;
+        this.endpoint = endpoint;
+        this.connectStartedAt = System.nanoTime();
+        this.endpoints = endpoints;
+    }
+
+    /**
+     * Called by the transport when a text/event-stream connection is established
+     * @param contentEncoding the Content-Encoding of the response , null if it has none
+     * @throws IOException if the server compressed the stream in a way we can not decode
+     */
+    void onConnected(String contentEncoding) throws IOException {
+        onConnected(null, contentEncoding);
+    }
+
+    /**
+     * Called by the transport when the connection is established.
+     * Any partial event of a previous connection is discarded , the parser of the response's content type is chosen
+     * and the connection is announced
+     * @param contentType the Content-Type of the response , null if it has none , {@link FrameParser#MEDIA_TYPE MEDIA_TYPE} for binary frames
+     * @param contentEncoding the Content-Encoding of the response , null if it has none
+     * @throws IOException if the server compressed the stream in a way we can not decode
+     */
+    void onConnected(String contentType, String contentEncoding) throws IOException {
+        disconnecting = false;
+        parser.reset();
+        frames.reset();
+        releaseInflater();
+        overflowed = false;
+
+        // the parser of the new connection resumes from the last event id , whichever parser had it
+        String lastEventId = getLastEventId();
+        binary = contentType != null && contentType.trim().toLowerCase(Locale.US).startsWith(FrameParser.MEDIA_TYPE);
+        setLastEventId(lastEventId);
+        lastQueuedId = lastEventId;
+
+        if (contentEncoding != null) {
+            contentEncoding = contentEncoding.trim().toLowerCase(Locale.US);
+            if (StreamInflater.supports(contentEncoding))
+                inflater = new StreamInflater(contentEncoding, parserSink);
+            else if (!contentEncoding.isEmpty() && !"identity".equals(contentEncoding))
+                throw new IOException("Unsupported Content-Encoding " + contentEncoding);
+        }
+
+        lastReceived = System.nanoTime();
+        EndpointSelector endpoints = this.endpoints;
+        if (endpoints != null) {
+            endpoints.recordConnect(endpoint, lastReceived - connectStartedAt);
+            firstByteReceived = false;
+        }
+        loop.send(EventSource.OPEN, 0);
+    }
+
+    /**
+     * Called by the transport with the next bytes of the response body
+     * @throws IOException if the body is compressed and corrupt , or the code that runs on the transport thread failed
+     */
+    void onData(byte[] buffer, int offset, int length) throws IOException {
+        metrics.bytesReceived.add(length);
+        parseStart = System.nanoTime();
+        lastReceived = parseStart;
+        if (!firstByteReceived) {
+            firstByteReceived = true;
+            endpoints.recordFirstByte(endpoint, parseStart - connectStartedAt);
+        }
+        try {
+            if (inflater != null)
+                inflater.feed(buffer, offset, length);
+            else
+                feedParser(buffer, offset, length);
+        } catch (RuntimeException e) {
+            // a decoder , a conflation key or a streaming listener failed , the event it failed on is asked for again
+            setLastEventId(lastQueuedId);
+            throw new IOException("Could not handle the events of " + url, e);
+        }
+
+        if (overflowed) {
+            // the next connection resumes after the last event the event loop will get
+            setLastEventId(lastQueuedId);
+            throw new IOException("The dispatch queue of " + url + " is full");
+        }
+    }
+
+    /**
+     * Called by the transport when the connection is closed or could not be established.
+     * Error in SSE protocol does not always something bad. It essentially means that the connection is CLOSED
+     */
+    void onClosed() {
+        // a streamed event that was cut short is aborted now , not when the next connection opens
+        parser.reset();
+        frames.reset();
+        releaseInflater();
+        boolean refused = this.refused;
+        this.refused = false;
+        loop.send(refused ? EventSource.FAILED : EventSource.ERROR, 0);
+    }
+
+    /**
+     * Called by the transport , before it closes the connection , when the server answered with a status other than 200 OK.
+     * The spec says the client must not reconnect , so the close is reported as {@link EventSource#FAILED FAILED}
+     * @param status the status of the response , eg. 204 No Content
+     */
+    void onRefused(int status) {
+        LOG.warning(url + " responded with " + status + " , not reconnecting");
+        refused = true;
+    }
+
+    /**
+     * Called by the transport , on any thread , before it closes the connection of the stream.
+     * A streaming listener that waits for its reader gives up the event , so the transport thread is free to notice the close
+     */
+    void abortStreaming() {
+        disconnecting = true;
+        abort(streamingEvent);
+    }
+
+    private static void abort(StreamingEventCallback callback) {
+        // only our own listener waits , the others are told when the parser is reset
+        if (callback instanceof EventInputStream.Listener)
+            ((EventInputStream.Listener) callback).abort();
+    }
+
+    /**
+     * @throws IOException if the connection is in binary frames and they are corrupt
+     */
+    private void feedParser(byte[] buffer, int offset, int length) throws IOException {
+        if (binary)
+            frames.feed(buffer, offset, length);
+        else
+            parser.feed(buffer, offset, length);
+    }
+
+    private void releaseInflater() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+
+    /**
+     * Called by the {@link SSEParser parser} when a blank line completes an event , or by the {@link FrameParser frame parser}
+     * when an event frame is complete
+     */
+    @Override
+    public void onEvent(String eventName, byte[] data, int dataLength, String lastEventId) {
+        long parsedAt = System.nanoTime();
+        metrics.parseTime.record(parsedAt - parseStart);
+        metrics.eventsReceived.increment();
+
+        // a server that resumes the stream may send again events we already had
+        EventDeduplicator deduplicator = this.deduplicator;
+        boolean hasEventId = binary ? frames.hasEventId() : parser.hasEventId();
+        if (deduplicator != null && hasEventId && !lastEventId.isEmpty() && deduplicator.isDuplicate(lastEventId)) {
+            metrics.eventsDuplicated.increment();
+            parseStart = System.nanoTime();
+            return;
+        }
+
+        // nobody listens , the event is not built , copied , decoded or sent to the event loop
+        String name = eventName != null ? eventName : AndEvent.ON_MESSAGE;
+        ListenerRegistry subscriptions = this.subscriptions;
+        boolean forEventLoop = subscriptions == null || subscriptions.get(name).length > 0;
+        boolean subscribed = forEventLoop || executorListeners.get(name).length > 0;
+        EventJournal journal = this.journal;
+        if (!subscribed && journal == null) {
+            skip(lastEventId);
+            return;
+        }
+
+        AndEvent event = AndEvent.obtain();
+        event.parsedAt = parsedAt;
+        if (eventName != null)
+            event.setEventName(eventName);
+        // the bytes are copied into the pooled event's own buffer , they are decoded only if a listener asks for a String
+        event.setEventData(data, 0, dataLength);
+        event.setId(lastEventId);
+        event.idInherited = !hasEventId;
+
+        if (journal != null)
+            journal.append(event);
+
+        // the journal records every event , but it is still not delivered
+        if (!subscribed) {
+            event.recycle();
+            skip(lastEventId);
+            return;
+        }
+
+        // the decoder runs once , whatever the number of listeners
+        PayloadDecoder<?> decoder = decoders.get(event.getEventName());
+        if (decoder != null)
+            decode(decoder, event);
+
+        // listeners with their own executor get the event right away , each one retains it if it needs to
+        for (IEventCallback callback : executorListeners.get(event.getEventName())) {
+            callback.onEvent(event);
+        }
+
+        // only listeners with their own executor wanted it , the event loop is not woken up for nothing
+        if (!forEventLoop) {
+            event.recycle();
+            passed(lastEventId);
+            return;
+        }
+
+        dispatchEvent(event);
+        // decoding , journaling and the listeners are not parsing
+        parseStart = System.nanoTime();
+    }
+
+    /**
+     * Called by the {@link SSEParser parser} when the server sends a retry field.
+     * It does not close the connection , it only sets how long to wait the next time the connection is lost
+     */
+    @Override
+    public void onRetry(long reconnectionTime) {
+        this.reconnectionTime = reconnectionTime;
+    }
+
+
+    /**
+     * Counts an event nobody listens for. Skipping it is as good as delivering it ,
+     * so the stream resumes after it if the queue overflows
+     */
+    private void skip(String lastEventId) {
+        metrics.eventsFiltered.increment();
+        passed(lastEventId);
+    }
+
+    /**
+     * An event that does not go through the queue , the stream resumes after it if the queue overflows
+     */
+    private void passed(String lastEventId) {
+        if (!overflowed)
+            lastQueuedId = lastEventId;
+        parseStart = System.nanoTime();
+    }
+
+    private void decode(PayloadDecoder<?> decoder, AndEvent event) {
+        try {
+            event.setPayload(decoder.decode(event));
+        } catch (Exception e) {
+            // the event is still delivered , typed listeners skip it
+            LOG.log(Level.SEVERE, "Could not decode a " + event.getEventName() + " event", e);
+        }
+    }
+
+    /**
+     * Queues the event for the event loop , or hands it to the
+     * conflater if its name is conflated , and makes sure a message that drains them is on its way
+     * @param _event {@link AndEvent AndEvent}
+     */
+    private void dispatchEvent(AndEvent _event) {
+        if (overflowed) {
+            _event.recycle();
+            return;
+        }
+
+        // the event loop may take the event as soon as it is queued , so we keep its id first
+        String id = _event.getId();
+        ConflationKey conflationKey = conflation.get(_event.getEventName());
+        Object key = conflationKey == null ? null : conflationKey.keyOf(_event);
+        if (key != null) {
+            lastQueuedId = id;
+            // a replaced event already has a message on its way
+            if (conflater.put(key, _event))
+                scheduleDrain(waiting(lanes, 0), false);
+            return;
+        }
+
+        DispatchPriority priority = priorities.get(_event.getEventName());
+        // the queue of a priority is created before any name gets it
+        EventQueue[] lanes = this.lanes;
+        EventQueue queue = lanes[priority == null ? NORMAL : priority.ordinal()];
+        if (!queue.offer(_event)) {
+            overflowed = true;
+            return;
+        }
+        lastQueuedId = id;
+        scheduleDrain(waiting(lanes, 0), priority == DispatchPriority.HIGH);
+    }
+
+    /**
+     * Makes sure a message that drains the queue is on its way.
+     * When batching is on , the first event of a batch schedules the message after the window ,
+     * and if the batch fills up , or an urgent event arrives , before that it is sent right away
+     * @param waiting how many events are in the queues
+     * @param urgent true if the event must not wait for the window , its priority is {@link DispatchPriority#HIGH HIGH}
+     */
+    private void scheduleDrain(int waiting, boolean urgent) {
+        if (maxBatchSize > 1 || batchWindow > 0) {
+            if (drainScheduled.compareAndSet(false, true)) {
+                loop.send(EventSource.EVENT_BATCH, urgent ? 0 : batchWindow);
+            } else if (urgent || waiting == maxBatchSize) {
+                loop.remove(EventSource.EVENT_BATCH);
+                loop.send(EventSource.EVENT_BATCH, 0);
+            }
+        } else if (drainScheduled.compareAndSet(false, true)) {
+            loop.send(EventSource.EVENT_BATCH, 0);
+        }
+    }
+
+    /**
+     * Hands the waiting events to the consumer , on the event loop when it gets the {@link EventSource#EVENT_BATCH EVENT_BATCH} message.
+     * A pass hands over at most a batch from the queues , higher priorities first , if more events wait another message is sent.
+     * The conflated events are handed over after them , all of them , one per key
+     * @param consumer gets every event and must recycle it
+     * @return int how many events were handed over
+     */
+    int drain(IEventCallback consumer) {
+        drainScheduled.set(false);
+        EventQueue[] lanes = this.lanes;
+        int limit = maxBatchSize > 1 || batchWindow > 0 ? maxBatchSize : DRAIN_LIMIT;
+
+        int count = 0;
+        AndEvent event;
+        while (count < limit && (event = poll(lanes)) != null) {
+            consumer.onEvent(event);
+            count++;
+        }
+        count += conflater.drain(consumer);
+
+        if ((waiting(lanes, 0) > 0 || conflater.size() > 0) && drainScheduled.compareAndSet(false, true))
+            loop.send(EventSource.EVENT_BATCH, 0);
+        return count;
+    }
+
+    /**
+     * Takes the next event , from the highest priority queue that has one unless lower ones waited too long
+     * @return AndEvent or null if every queue is empty
+     */
+    private AndEvent poll(EventQueue[] lanes) {
+        if (starvingStreak >= STARVATION_LIMIT) {
+            starvingStreak = 0;
+            // the lower queues take turns , so a flood of normal events does not hold the low ones either
+            for (int i = 1; i < lanes.length; i++) {
+                starvingLane = starvingLane % (lanes.length - 1) + 1;
+                EventQueue lane = lanes[starvingLane];
+                AndEvent event = lane == null ? null : lane.poll();
+                if (event != null)
+                    return event;
+            }
+        }
+
+        for (int i = 0; i < lanes.length; i++) {
+            EventQueue lane = lanes[i];
+            AndEvent event = lane == null ? null : lane.poll();
+            if (event != null) {
+                if (waiting(lanes, i + 1) > 0)
+                    starvingStreak++;
+                else
+                    starvingStreak = 0;
+                return event;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return int how many events wait in the queues from the priority with that ordinal down
+     */
+    private static int waiting(EventQueue[] lanes, int from) {
+        int waiting = 0;
+        for (int i = from; i < lanes.length; i++) {
+            if (lanes[i] != null)
+                waiting += lanes[i].size();
+        }
+        return waiting;
+    }
+
+    private static EventQueue[] newLanes(int capacity, OverflowPolicy policy) {
+        EventQueue[] lanes = new EventQueue[DispatchPriority.values().length];
+        lanes[NORMAL] = new EventQueue(capacity, policy);
+        return lanes;
+    }
+
+    /**
+     * Replaces the queues between the transport thread and the event loop. It must be set before the stream connects
+     * @param capacity how many events can wait for the event loop , in every queue
+     * @param policy {@link OverflowPolicy OverflowPolicy}
+     */
+    synchronized void setQueue(int capacity, OverflowPolicy policy) {
+        EventQueue[] next = newLanes(capacity, policy);
+        for (int i = 0; i < next.length; i++) {
+            if (lanes[i] != null && next[i] == null)
+                next[i] = new EventQueue(capacity, policy);
+        }
+        queueCapacity = capacity;
+        queuePolicy = policy;
+        lanes = next;
+    }
+
+    /**
+     * Sets the queue the events of a name wait in , replacing its previous priority
+     * @param eventName String , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without a name
+     * @param priority {@link DispatchPriority DispatchPriority} , null for {@link DispatchPriority#NORMAL NORMAL}
+     */
+    synchronized void setPriority(String eventName, DispatchPriority priority) {
+        if (priority != null && lanes[priority.ordinal()] == null) {
+            EventQueue[] next = lanes.clone();
+            next[priority.ordinal()] = new EventQueue(queueCapacity, queuePolicy);
+            lanes = next;
+        }
+        Map<String, DispatchPriority> next = new HashMap<>(priorities);
+        if (priority == null || priority == DispatchPriority.NORMAL)
+            next.remove(eventName);
+        else
+            next.put(eventName, priority);
+        priorities = next;
+    }
+
+    /**
+     * @return long how many events were dropped because the event loop could not keep up
+     */
+    long getDroppedEvents() {
+        long dropped = 0;
+        for (EventQueue lane : lanes) {
+            if (lane != null)
+                dropped += lane.getDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * @return long how many events were replaced by a newer one before the event loop got them
+     */
+    long getConflatedEvents() {
+        return conflater.getConflated();
+    }
+
+    /**
+     * @return int how many events wait for the event loop , counting one per conflated key
+     */
+    int getQueueDepth() {
+        return waiting(lanes, 0) + conflater.size();
+    }
+
+    /**
+     * @return long when the stream last heard from the server , or was last {@link #resetLastReceived() reset} , in nanoTime
+     */
+    long getLastReceived() {
+        return lastReceived;
+    }
+
+    /**
+     * Starts the silence over , when a connection is opened
+     */
+    void resetLastReceived() {
+        lastReceived = System.nanoTime();
+    }
+
+    StreamMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets how events are batched before they are handed to the event loop
+     * @param maxBatchSize the number of events that fills a batch
+     * @param batchWindow ms to wait for more events after the first one of a batch
+     */
+    void setBatching(int maxBatchSize, long batchWindow) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchWindow = Math.max(0, batchWindow);
+    }
+
+    /**
+     * Sets the decoder of an event name , replacing the previous one
+     * @param eventName String , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without a name
+     * @param decoder {@link PayloadDecoder PayloadDecoder} , null to remove it
+     */
+    synchronized void registerDecoder(String eventName, PayloadDecoder<?> decoder) {
+        Map<String, PayloadDecoder<?>> next = new HashMap<>(decoders);
+        if (decoder == null)
+            next.remove(eventName);
+        else
+            next.put(eventName, decoder);
+        decoders = next;
+    }
+
+    /**
+     * Streams the data of the events of a name to the listener while it arrives , replacing the previous listener of the name.
+     * Those events are not built , journaled or dispatched
+     * @param eventName String , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without a name
+     * @param callback {@link StreamingEventCallback StreamingEventCallback} , null to build the events of the name again
+     */
+    synchronized void setStreamingListener(String eventName, StreamingEventCallback callback) {
+        Map<String, StreamingEventCallback> next = new HashMap<>(streamingListeners);
+        if (callback == null)
+            next.remove(eventName);
+        else
+            next.put(eventName, callback);
+        streamingListeners = next;
+    }
+
+    /**
+     * Conflates the events of a name , replacing its previous key
+     * @param eventName String , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without a name
+     * @param key {@link ConflationKey ConflationKey} , null to deliver every event of the name again
+     */
+    synchronized void setConflation(String eventName, ConflationKey key) {
+        Map<String, ConflationKey> next = new HashMap<>(conflation);
+        if (key == null)
+            next.remove(eventName);
+        else
+            next.put(eventName, key);
+        conflation = next;
+    }
+
+    /**
+     * Skips the events whose id is one of the latest ones , from now on
+     * @param capacity how many of the latest ids are remembered , 0 to stop
+     */
+    void setDeduplication(int capacity) {
+        deduplicator = capacity > 0 ? new EventDeduplicator(capacity) : null;
+    }
+
+    /**
+     * Journals the events of the stream from now on. If the stream has no last event id yet , the journal's is restored
+     * so the next connection resumes from it. It must be set before the stream connects
+     * @param journal {@link EventJournal EventJournal} , null to stop journaling
+     */
+    void setJournal(EventJournal journal) {
+        this.journal = journal;
+        if (journal != null && getLastEventId().isEmpty())
+            setLastEventId(journal.getLastEventId());
+    }
+
+    /**
+     * Skips the events that none of the subscriptions , nor the executor listeners of the stream , match.
+     * The registry is read on the transport thread for every event , so a listener added later gets the events parsed after it
+     * @param subscriptions {@link ListenerRegistry ListenerRegistry} of the event loop's listeners , null to dispatch every event
+     */
+    void setSubscriptions(ListenerRegistry subscriptions) {
+        this.subscriptions = subscriptions;
+    }
+
+    /**
+     * @return String the last event id of the stream , empty if none
+     */
+    String getLastEventId() {
+        return binary ? frames.getLastEventId() : parser.getLastEventId();
+    }
+
+    private void setLastEventId(String lastEventId) {
+        parser.setLastEventId(lastEventId);
+        frames.setLastEventId(lastEventId);
+    }
+
+    /**
+     * @param binaryFraming true to accept {@link FrameParser binary frames} from the next connection on ,
+     *                      the stream is parsed as text if the server answers text/event-stream
+     */
+    void setBinaryFraming(boolean binaryFraming) {
+        this.binaryFraming = binaryFraming;
+    }
+
+    /**
+     * @param compression true to ask the server for a gzip or deflate stream from the next connection on
+     */
+    void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+}
@@ -0,0 +1,115 @@
+package gr.spiritinlife.andsse;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers events to a listener through the {@link Executor Executor} it was added with.
+ *
+ * It is called on the transport thread. Unless the executor is {@link SSEExecutors#DIRECT DIRECT}
+ * the event is {@link AndEvent#retain() retained} and queued , and a single task drains the queue on the executor ,
+ * so the listener never runs concurrently with itself and sees its events in order , even on a thread pool.
+ */
+final class ExecutorListener implements IEventCallback, Runnable {
+
+    private static final Logger LOG = Logger.getLogger("AndSSE");
+
+    final IEventCallback callback;
+    private final Executor executor;
+
+    private final ArrayDeque<AndEvent> queue = new ArrayDeque<>();
+
+    /**
+     * True while a drain task is submitted or running
+     */
+    private boolean scheduled = false;
+
+
+    ExecutorListener(IEventCallback callback, Executor executor) {
+        this.callback = callback;
+        this.executor = executor;
+    }
+
+
+    @Override
+    public void onEvent(AndEvent event) {
+        if (executor == SSEExecutors.DIRECT) {
+            deliver(event);
+            return;
+        }
+
+        event.retain();
+        synchronized (queue) {
+            queue.add(event);
+            if (scheduled)
+                return;
+            scheduled = true;
+        }
+
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            LOG.log(Level.SEVERE, "Executor rejected the listener , dropping its events", e);
+            drop();
+        }
+    }
+
+    /**
+     * Drains the queue on the executor
+     */
+    @Override
+    public void run() {
+        for (;;) {
+            AndEvent event;
+            synchronized (queue) {
+                event = queue.poll();
+                if (event == null) {
+                    scheduled = false;
+                    return;
+                }
+            }
+
+            try {
+                deliver(event);
+            } finally {
+                event.recycle();
+            }
+        }
+    }
+
+    /**
+     * A listener that throws must not stop the stream or the other listeners
+     */
+    private void deliver(AndEvent event) {
+        try {
+            callback.onEvent(event);
+        } catch (RuntimeException e) {
+            LOG.log(Level.SEVERE, "Listener for " + event.getEventName() + " threw", e);
+        }
+    }
+
+    private void drop() {
+        synchronized (queue) {
+            AndEvent event;
+            while ((event = queue.poll()) != null)
+                event.recycle();
+            scheduled = false;
+        }
+    }
+
+    /**
+     * Two ExecutorListeners are equal when they wrap the same callback , so a listener can be removed without its executor
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ExecutorListener && ((ExecutorListener) o).callback == callback;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(callback);
+    }
+}
@@ -0,0 +1,348 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+
+/**
+ * Incremental parser for the binary framing a server may answer with instead of text/event-stream ,
+ * when the request {@link #MEDIA_TYPE accepts} it. It carries the same events , without the field names and the text numbers.
+ *
+ * The body is a sequence of frames , every length is an unsigned LEB128 varint :
+ * +   0x01 event : name length , name in UTF-8 , 0 for the default event name ,
+ *                  id length plus one , 0 if the event has no id , then the id in UTF-8 ,
+ *                  data length , data bytes
+ * +   0x02 retry : the reconnection time in ms
+ * +   0x00 heartbeat : nothing else , it only keeps the connection busy
+ *
+ * An id is the last event id of the stream from its event on , like the id field of the text format , an empty one clears it
+ * and one that contains NULL is ignored.
+ * The parser is fed the bytes in chunks of any size and hands the events to the same {@link SSEParser.Listener listener} ,
+ * and the data of chosen events to the same {@link SSEParser.Streamer streamer} , as an {@link SSEParser SSEParser}.
+ *
+ * Instances are not thread safe , they are meant to be driven by the thread that reads the connection.
+ */
+public final class FrameParser {
+
+    /**
+     * The media type of the framing , in the Accept header of the request and the Content-Type of the response
+     */
+    public static final String MEDIA_TYPE = "application/x-andsse-frames";
+
+    static final int HEARTBEAT = 0x00;
+    static final int EVENT = 0x01;
+    static final int RETRY = 0x02;
+
+    /**
+     * Names and ids longer than this are taken for a corrupt stream
+     */
+    private static final int MAX_FIELD_LENGTH = 64 * 1024;
+
+    /**
+     * Events longer than this are taken for a corrupt stream , unless they are streamed as they are never held whole.
+     * The buffer grows as the data arrives , a length alone allocates nothing
+     */
+    private static final int MAX_DATA_LENGTH = 16 * 1024 * 1024;
+
+    /**
+     * Data buffers bigger than this are released after their event is dispatched , like in the {@link SSEParser SSEParser}
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final int INITIAL_DATA_BUFFER = 1024;
+
+
+    /**
+     * Where we are in the current frame
+     */
+    private static final int TYPE = 0;
+    private static final int NAME_LENGTH = 1;
+    private static final int NAME = 2;
+    private static final int ID_LENGTH = 3;
+    private static final int ID = 4;
+    private static final int DATA_LENGTH = 5;
+    private static final int DATA = 6;
+    private static final int RETRY_TIME = 7;
+
+
+    private final SSEParser.Listener listener;
+
+    private SSEParser.Streamer streamer;
+
+    /**
+     * True while the data of the current event goes to the streamer
+     */
+    private boolean streaming = false;
+
+    private int state = TYPE;
+
+    /**
+     * The varint that is being read , and how many bits of it were read
+     */
+    private long varint;
+    private int shift;
+
+    /**
+     * The name or the id that is being read , and how many bytes of it are still missing
+     */
+    private byte[] value = new byte[128];
+    private int valueLength;
+    private int remaining;
+
+    private byte[] data = new byte[INITIAL_DATA_BUFFER];
+    private int dataLength;
+
+    private String eventName;
+    private boolean hasId = false;
+
+    /**
+     * The id of the frame that is being read , it becomes the last event id only when the frame is dispatched
+     */
+    private String pendingId = "";
+
+    /**
+     * Most streams use a handful of event names , so we keep the last decoded one
+     */
+    private byte[] cachedNameBytes = new byte[0];
+    private String cachedName;
+
+    private String lastEventId = "";
+
+
+    public FrameParser(SSEParser.Listener listener) {
+        this.listener = listener;
+    }
+
+
+    /**
+     * Parses the next chunk of the stream
+     * @param buffer the bytes read from the connection
+     * @param offset where the chunk starts
+     * @param length how many bytes the chunk has
+     * @throws IOException if the bytes are not frames
+     */
+    public void feed(byte[] buffer, int offset, int length) throws IOException {
+        final int end = offset + length;
+        int i = offset;
+
+        while (i < end) {
+            switch (state) {
+                case TYPE: {
+                    int type = buffer[i++] & 0xFF;
+                    if (type == EVENT)
+                        beginVarint(NAME_LENGTH);
+                    else if (type == RETRY)
+                        beginVarint(RETRY_TIME);
+                    else if (type != HEARTBEAT)
+                        throw new IOException("Unknown frame type " + type);
+                    break;
+                }
+
+                case NAME_LENGTH:
+                case ID_LENGTH:
+                case DATA_LENGTH:
+                case RETRY_TIME:
+                    if (readVarint(buffer[i++]))
+                        onVarint();
+                    break;
+
+                case NAME:
+                case ID: {
+                    int chunk = Math.min(remaining, end - i);
+                    System.arraycopy(buffer, i, value, valueLength, chunk);
+                    valueLength += chunk;
+                    remaining -= chunk;
+                    i += chunk;
+                    if (remaining == 0)
+                        onValue();
+                    break;
+                }
+
+                case DATA: {
+                    int chunk = Math.min(remaining, end - i);
+                    if (streaming) {
+                        // straight from the chunk we were fed , the data is never buffered
+                        streamer.onEventData(buffer, i, chunk);
+                    } else {
+                        if (dataLength + chunk > data.length)
+                            data = SSEParser.grow(data, dataLength + chunk);
+                        System.arraycopy(buffer, i, data, dataLength, chunk);
+                        dataLength += chunk;
+                    }
+                    remaining -= chunk;
+                    i += chunk;
+                    if (remaining == 0)
+                        dispatchEvent();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards any partially received frame and prepares the parser for a new stream.
+     * The last event id is kept , as it is needed to resume the stream , the id of the discarded frame is not
+     */
+    public void reset() {
+        if (streaming) {
+            streaming = false;
+            streamer.onEventAborted();
+        }
+        state = TYPE;
+        clearEvent();
+    }
+
+    /**
+     * Sets who takes the data of chosen events while they arrive , see {@link SSEParser#setStreamer(SSEParser.Streamer) setStreamer}
+     * @param streamer {@link SSEParser.Streamer Streamer} , null to hand every event to the listener complete
+     */
+    public void setStreamer(SSEParser.Streamer streamer) {
+        this.streamer = streamer;
+    }
+
+    /**
+     * @return String the last event id , empty if the stream did not send any
+     */
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * Sets the last event id , eg. when the stream resumes one that was received as text
+     * @param lastEventId String
+     */
+    public void setLastEventId(String lastEventId) {
+        this.lastEventId = lastEventId == null ? "" : lastEventId;
+    }
+
+    /**
+     * @return boolean true if the event being dispatched , or streamed , had an id of its own
+     */
+    public boolean hasEventId() {
+        return hasId;
+    }
+
+
+    private void beginVarint(int state) {
+        this.state = state;
+        varint = 0;
+        shift = 0;
+    }
+
+    /**
+     * @return boolean true if the byte was the last one of the varint
+     */
+    private boolean readVarint(byte b) throws IOException {
+        if (shift > 56)
+            throw new IOException("Frame length too long");
+        varint |= (long) (b & 0x7F) << shift;
+        shift += 7;
+        return (b & 0x80) == 0;
+    }
+
+    private void onVarint() throws IOException {
+        switch (state) {
+            case NAME_LENGTH:
+                beginValue(NAME, fieldLength(varint));
+                if (remaining == 0)
+                    onValue();
+                break;
+            case ID_LENGTH:
+                if (varint == 0) {
+                    beginVarint(DATA_LENGTH);
+                } else {
+                    beginValue(ID, fieldLength(varint - 1));
+                    if (remaining == 0)
+                        onValue();
+                }
+                break;
+            case DATA_LENGTH:
+                beginData();
+                break;
+            case RETRY_TIME:
+                state = TYPE;
+                listener.onRetry(varint < 0 ? Long.MAX_VALUE : varint);
+                break;
+        }
+    }
+
+    private static int fieldLength(long length) throws IOException {
+        if (length > MAX_FIELD_LENGTH)
+            throw new IOException("Frame field too long " + length);
+        return (int) length;
+    }
+
+    private void beginValue(int state, int length) {
+        this.state = state;
+        valueLength = 0;
+        remaining = length;
+        if (length > value.length)
+            value = new byte[length];
+    }
+
+    private void onValue() {
+        if (state == NAME) {
+            eventName = valueLength == 0 ? null : decodeEventName();
+            beginVarint(ID_LENGTH);
+        } else {
+            beginVarint(DATA_LENGTH);
+            // ids that contain NULL are ignored , like in the text format
+            for (int i = 0; i < valueLength; i++) {
+                if (value[i] == 0)
+                    return;
+            }
+            pendingId = new String(value, 0, valueLength, SSEParser.UTF_8);
+            hasId = true;
+        }
+    }
+
+    private void beginData() throws IOException {
+        if (varint > Integer.MAX_VALUE)
+            throw new IOException("Frame data too long " + varint);
+        remaining = (int) varint;
+        dataLength = 0;
+        state = DATA;
+
+        if (streamer != null)
+            streaming = streamer.onEventStart(eventName);
+        if (!streaming && remaining > MAX_DATA_LENGTH)
+            throw new IOException("Frame data too long " + varint);
+        if (remaining == 0)
+            dispatchEvent();
+    }
+
+    private String decodeEventName() {
+        boolean same = cachedNameBytes.length == valueLength;
+        for (int i = 0; same && i < valueLength; i++)
+            same = cachedNameBytes[i] == value[i];
+
+        if (!same) {
+            cachedNameBytes = new byte[valueLength];
+            System.arraycopy(value, 0, cachedNameBytes, 0, valueLength);
+            cachedName = new String(value, 0, valueLength, SSEParser.UTF_8);
+        }
+        return cachedName;
+    }
+
+    private void dispatchEvent() {
+        state = TYPE;
+        if (hasId)
+            lastEventId = pendingId;
+        try {
+            if (streaming) {
+                streaming = false;
+                streamer.onEventEnd(lastEventId);
+            } else {
+                listener.onEvent(eventName, data, dataLength, lastEventId);
+            }
+        } finally {
+            clearEvent();
+        }
+    }
+
+    private void clearEvent() {
+        eventName = null;
+        hasId = false;
+        pendingId = "";
+        dataLength = 0;
+        if (data.length > MAX_RETAINED_BUFFER)
+            data = new byte[INITIAL_DATA_BUFFER];
+    }
+}
@@ -0,0 +1,42 @@
+package gr.spiritinlife.andsse;
+
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * Writes the HTTP/1.1 request that opens a stream , for transports that talk to the socket themselves
+ */
+final class HttpRequest {
+
+    private HttpRequest() {
+    }
+
+    /**
+     * @param stream {@link EventStream EventStream} , its url and {@link EventStream#getRequestHeaders() headers} make the request
+     * @return byte[] the request , ready to be written to the socket
+     */
+    static byte[] build(EventStream stream) {
+        URL url = stream.getUrl();
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        int port = port(url);
+
+        StringBuilder request = new StringBuilder();
+        request.append("GET ").append(path).append(" HTTP/1.1\r\n");
+        request.append("Host: ").append(url.getHost());
+        if (port != url.getDefaultPort())
+            request.append(':').append(port);
+        request.append("\r\n");
+        for (Map.Entry<String, String> header : stream.getRequestHeaders().entrySet())
+            request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        request.append("\r\n");
+
+        return request.toString().getBytes(SSEParser.UTF_8);
+    }
+
+    /**
+     * @return int the port of the url , the default one of its protocol if it has none
+     */
+    static int port(URL url) {
+        return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    }
+}
@@ -0,0 +1,256 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental decoder of an HTTP/1.1 response , for transports that talk to the socket themselves.
+ *
+ * It is fed the bytes read from the socket , parses the status line and the headers and hands the body to the
+ * {@link Listener Listener} as it arrives , removing the chunked transfer encoding if the server uses it.
+ * Like the {@link SSEParser SSEParser} , it keeps its state between calls and does not allocate per read.
+ */
+final class HttpResponseDecoder {
+
+    /**
+     * Receives the parts of the response
+     */
+    interface Listener {
+
+        /**
+         * Called once the status line and the headers of a 200 OK are in
+         * @param headers the headers , the names are in lower case
+         * @throws IOException to abort the response
+         */
+        void onHeaders(Map<String, String> headers) throws IOException;
+
+        /**
+         * Called instead of {@link #onHeaders(Map) onHeaders} when the status is not 200 OK , eg. a 204 No Content.
+         * The server does not want the stream , the client must not reconnect. The decoder then fails the response
+         * @param status the status code
+         */
+        void onRefused(int status);
+
+        /**
+         * Called with the next bytes of the body
+         */
+        void onBody(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final int STATUS_LINE = 0;
+    private static final int HEADER_LINE = 1;
+    private static final int BODY = 2;
+    private static final int CHUNK_SIZE = 3;
+    private static final int CHUNK_DATA = 4;
+    private static final int CHUNK_DATA_END = 5;
+    private static final int TRAILER = 6;
+    private static final int DONE = 7;
+
+
+    private final Listener listener;
+
+    private int state = STATUS_LINE;
+
+    /**
+     * The line of the status , header , chunk size or trailer that is being read
+     */
+    private final StringBuilder line = new StringBuilder();
+    private int headerSize;
+
+    private int status;
+    private final Map<String, String> headers = new HashMap<>();
+
+    /**
+     * What is left of the body or of the current chunk , -1 if the body ends when the connection is closed
+     */
+    private long remaining;
+
+    /**
+     * True while skipping the extensions of a chunk size line
+     */
+    private boolean chunkExtension;
+    private boolean hasChunkSize;
+
+
+    HttpResponseDecoder(Listener listener) {
+        this.listener = listener;
+    }
+
+
+    /**
+     * Decodes the next bytes read from the socket
+     * @throws IOException if the response is not valid HTTP or the listener aborts it
+     */
+    void feed(byte[] buffer, int offset, int length) throws IOException {
+        final int end = offset + length;
+        int i = offset;
+
+        while (i < end) {
+            switch (state) {
+                case CHUNK_SIZE:
+                    readChunkSize(buffer[i++]);
+                    break;
+
+                case CHUNK_DATA_END:
+                    // the CRLF after the data of a chunk
+                    if (buffer[i++] == '\n')
+                        startChunk();
+                    break;
+
+                case STATUS_LINE:
+                case HEADER_LINE:
+                case TRAILER: {
+                    byte b = buffer[i++];
+                    if (b == '\n') {
+                        endLine();
+                    } else if (b != '\r') {
+                        if (++headerSize > MAX_HEADER_SIZE)
+                            throw new IOException("Response headers are too large");
+                        line.append((char) (b & 0xff));
+                    }
+                    break;
+                }
+
+                case BODY:
+                case CHUNK_DATA: {
+                    int count = end - i;
+                    if (remaining >= 0 && remaining < count)
+                        count = (int) remaining;
+                    listener.onBody(buffer, i, count);
+                    i += count;
+                    if (remaining >= 0) {
+                        remaining -= count;
+                        if (remaining == 0)
+                            state = state == BODY ? DONE : CHUNK_DATA_END;
+                    }
+                    break;
+                }
+
+                case DONE:
+                    // anything after the end of the body is ignored
+                    return;
+            }
+        }
+    }
+
+    /**
+     * @return boolean true when the whole body has been received
+     */
+    boolean isDone() {
+        return state == DONE;
+    }
+
+    /**
+     * Prepares the decoder for a new response
+     */
+    void reset() {
+        state = STATUS_LINE;
+        line.setLength(0);
+        headerSize = 0;
+        headers.clear();
+        status = 0;
+        remaining = 0;
+    }
+
+
+    private void endLine() throws IOException {
+        String value = line.toString();
+        line.setLength(0);
+
+        // the trailer lines are limited one by one
+        if (state == TRAILER)
+            headerSize = 0;
+
+        switch (state) {
+            case STATUS_LINE:
+                // HTTP/1.1 200 OK
+                String[] parts = value.split(" ", 3);
+                if (parts.length < 2 || !parts[0].startsWith("HTTP/"))
+                    throw new IOException("Not an HTTP response : " + value);
+                try {
+                    status = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid status line : " + value);
+                }
+                state = HEADER_LINE;
+                break;
+
+            case HEADER_LINE:
+                if (value.isEmpty()) {
+                    endHeaders();
+                } else {
+                    int colon = value.indexOf(':');
+                    if (colon > 0)
+                        headers.put(value.substring(0, colon).trim().toLowerCase(Locale.US), value.substring(colon + 1).trim());
+                }
+                break;
+
+            case TRAILER:
+                if (value.isEmpty())
+                    state = DONE;
+                break;
+        }
+    }
+
+    private void endHeaders() throws IOException {
+        headerSize = 0;
+        if (status != 200) {
+            listener.onRefused(status);
+            throw new IOException("Server responded with " + status);
+        }
+        listener.onHeaders(headers);
+
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get("content-length");
+
+        if (transferEncoding != null && transferEncoding.toLowerCase(Locale.US).contains("chunked")) {
+            startChunk();
+        } else if (contentLength != null) {
+            try {
+                remaining = Long.parseLong(contentLength);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid content length : " + contentLength);
+            }
+            state = remaining == 0 ? DONE : BODY;
+        } else {
+            // the body ends when the server closes the connection
+            remaining = -1;
+            state = BODY;
+        }
+    }
+
+    private void startChunk() {
+        state = CHUNK_SIZE;
+        remaining = 0;
+        hasChunkSize = false;
+        chunkExtension = false;
+    }
+
+    /**
+     * Reads the hex size of a chunk a byte at a time , so chunked bodies need no Strings
+     */
+    private void readChunkSize(byte b) throws IOException {
+        if (b == '\n') {
+            if (!hasChunkSize)
+                throw new IOException("Missing chunk size");
+            state = remaining == 0 ? TRAILER : CHUNK_DATA;
+            return;
+        }
+        if (chunkExtension || b == '\r' || b == ' ' || b == '\t')
+            return;
+        if (b == ';') {
+            chunkExtension = true;
+            return;
+        }
+
+        int digit = Character.digit(b, 16);
+        if (digit < 0 || remaining > (Long.MAX_VALUE >> 4))
+            throw new IOException("Invalid chunk size");
+        remaining = (remaining << 4) | digit;
+        hasChunkSize = true;
+    }
+}
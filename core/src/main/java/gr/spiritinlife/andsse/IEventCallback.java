@@ -0,0 +1,11 @@
+package gr.spiritinlife.andsse;
+
+public interface IEventCallback {
+
+    /**
+     * Called when an event this callback listens for arrives.
+     * The event is recycled when this returns , use {@link AndEvent#retain()} or {@link AndEvent#copy()} to keep it
+     * @param event {@link AndEvent AndEvent}
+     */
+    public void onEvent(AndEvent event);
+}
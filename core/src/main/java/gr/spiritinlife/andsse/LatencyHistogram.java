@@ -0,0 +1,109 @@
+package gr.spiritinlife.andsse;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds , with one bucket per power of two.
+ *
+ * Recording is a couple of atomic adds and never allocates , so it can be done for every event.
+ * A percentile is the upper bound of the bucket it falls in , so it is at most twice the real value ,
+ * which is enough to tell 50us from 5ms. The histograms of a {@link StreamMetrics.Snapshot Snapshot} do not change anymore.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Bucket 0 holds 0 , bucket i holds the values from 2^(i-1) to 2^i - 1
+     */
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+
+    LatencyHistogram() {
+    }
+
+
+    /**
+     * @param nanos the duration , negative values count as 0
+     */
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        buckets.getAndIncrement(BUCKETS - Long.numberOfLeadingZeros(nanos));
+        count.getAndIncrement();
+        sum.getAndAdd(nanos);
+
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // someone else raised it , look again
+        }
+    }
+
+    /**
+     * @return LatencyHistogram a copy that is not recorded to
+     */
+    LatencyHistogram snapshot() {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++)
+            copy.buckets.set(i, buckets.get(i));
+        copy.count.set(count.get());
+        copy.sum.set(sum.get());
+        copy.max.set(max.get());
+        return copy;
+    }
+
+
+    /**
+     * @return long how many durations were recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return long the mean duration in ns , 0 if none was recorded
+     */
+    public long getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : sum.get() / count;
+    }
+
+    /**
+     * @return long the longest duration in ns
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100 , eg. 99 for the duration that 99% of the recorded ones do not exceed
+     * @return long the duration in ns , rounded up to the end of its bucket , 0 if none was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            total += buckets.get(i);
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank)
+                return i == 0 ? 0 : Math.min((1L << i) - 1, max.get());
+        }
+        return max.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "count=%d mean=%dus p50=%dus p99=%dus max=%dus",
+                getCount(), getMean() / 1000, getPercentile(50) / 1000, getPercentile(99) / 1000, getMax() / 1000);
+    }
+}
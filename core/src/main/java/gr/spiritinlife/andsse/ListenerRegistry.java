@@ -0,0 +1,235 @@
+package gr.spiritinlife.andsse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Holds the {@link IEventCallback callbacks} registered for each event name.
+ *
+ * An event name can have many callbacks , and a callback can also be registered for a prefix by ending the name with a
+ * {@link #WILDCARD wildcard} , eg. "orders.*" receives "orders.created" and "orders.cancelled" while "*" receives every event.
+ *
+ * The registry is copy on write. Adding or removing a callback builds new immutable {@link Routes routes} ,
+ * while {@link #get(String) get} only reads the current ones , so dispatching takes no lock and allocates nothing.
+ * Exact names are found with one hash lookup , names that only match wildcards with a walk of a prefix trie.
+ * Callbacks are returned in the order they were added.
+ */
+final class ListenerRegistry {
+
+    static final char WILDCARD = '*';
+
+    static final IEventCallback[] NONE = new IEventCallback[0];
+
+    /**
+     * A callback added for an event name or a prefix
+     */
+    private static final class Registration {
+
+        final String name;
+        final boolean isPrefix;
+        final IEventCallback callback;
+
+        Registration(String pattern, IEventCallback callback) {
+            this.isPrefix = pattern.length() > 0 && pattern.charAt(pattern.length() - 1) == WILDCARD;
+            this.name = isPrefix ? pattern.substring(0, pattern.length() - 1) : pattern;
+            this.callback = callback;
+        }
+
+        boolean matches(String eventName) {
+            return isPrefix ? eventName.startsWith(name) : eventName.equals(name);
+        }
+    }
+
+    /**
+     * A node of the prefix trie. Children are kept in two sorted arrays
+     */
+    private static final class Node {
+
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+
+        /**
+         * The callbacks of every prefix that ends here or above , null if no prefix ends here
+         */
+        IEventCallback[] callbacks;
+
+        Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node getOrAddChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            if (index >= 0)
+                return children[index];
+
+            index = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            newKeys[index] = key;
+            newChildren[index] = new Node();
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[index];
+        }
+    }
+
+    /**
+     * An immutable view of the registry , replaced as a whole on every change
+     */
+    private static final class Routes {
+
+        /**
+         * Every name that was registered exactly , with the callbacks of the prefixes that also match it
+         */
+        final HashMap<String, IEventCallback[]> exact;
+
+        /**
+         * The prefixes , null if none is registered
+         */
+        final Node prefixes;
+
+        Routes(HashMap<String, IEventCallback[]> exact, Node prefixes) {
+            this.exact = exact;
+            this.prefixes = prefixes;
+        }
+    }
+
+
+    private final ArrayList<Registration> registrations = new ArrayList<>();
+
+    private volatile Routes routes = new Routes(new HashMap<String, IEventCallback[]>(), null);
+
+
+    /**
+     * @param eventName the name of the event that is dispatched
+     * @return IEventCallback[] the callbacks for this event , never null. The array must not be modified
+     */
+    IEventCallback[] get(String eventName) {
+        final Routes current = routes;
+
+        IEventCallback[] callbacks = current.exact.get(eventName);
+        if (callbacks != null)
+            return callbacks;
+
+        Node node = current.prefixes;
+        if (node == null)
+            return NONE;
+
+        // the deepest prefix that matches has the callbacks of all shorter ones
+        callbacks = node.callbacks != null ? node.callbacks : NONE;
+        for (int i = 0, length = eventName.length(); i < length; i++) {
+            node = node.child(eventName.charAt(i));
+            if (node == null)
+                break;
+            if (node.callbacks != null)
+                callbacks = node.callbacks;
+        }
+        return callbacks;
+    }
+
+    /**
+     * Adds a callback. Adding the same callback for the same name twice has no effect
+     * @param eventName the event name or a prefix ending with {@link #WILDCARD *}
+     * @param callback {@link IEventCallback IEventCallback}
+     */
+    synchronized void add(String eventName, IEventCallback callback) {
+        if (indexOf(eventName, callback) >= 0)
+            return;
+        registrations.add(new Registration(eventName, callback));
+        rebuild();
+    }
+
+    /**
+     * Removes a callback that was added for this name
+     * @param eventName the name or prefix the callback was added with
+     * @param callback {@link IEventCallback IEventCallback}
+     * @return boolean true if the callback was registered
+     */
+    synchronized boolean remove(String eventName, IEventCallback callback) {
+        int index = indexOf(eventName, callback);
+        if (index < 0)
+            return false;
+        registrations.remove(index);
+        rebuild();
+        return true;
+    }
+
+    /**
+     * Removes every callback
+     */
+    synchronized void clear() {
+        registrations.clear();
+        rebuild();
+    }
+
+
+    private int indexOf(String eventName, IEventCallback callback) {
+        Registration registration = new Registration(eventName, callback);
+        for (int i = 0; i < registrations.size(); i++) {
+            Registration r = registrations.get(i);
+            if (r.callback.equals(callback) && r.isPrefix == registration.isPrefix && r.name.equals(registration.name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the routes from the registrations and publishes them
+     */
+    private void rebuild() {
+        HashMap<String, IEventCallback[]> exact = new HashMap<>();
+        Node prefixes = null;
+
+        for (Registration registration : registrations) {
+            if (registration.isPrefix) {
+                if (prefixes == null)
+                    prefixes = new Node();
+                Node node = prefixes;
+                for (int i = 0; i < registration.name.length(); i++)
+                    node = node.getOrAddChild(registration.name.charAt(i));
+                node.callbacks = NONE;
+            } else {
+                exact.put(registration.name, NONE);
+            }
+        }
+
+        for (String name : exact.keySet())
+            exact.put(name, collect(name, false));
+        if (prefixes != null)
+            fillPrefixes(prefixes, new StringBuilder());
+
+        routes = new Routes(exact, prefixes);
+    }
+
+    private void fillPrefixes(Node node, StringBuilder prefix) {
+        if (node.callbacks != null)
+            node.callbacks = collect(prefix.toString(), true);
+        for (int i = 0; i < node.keys.length; i++) {
+            prefix.append(node.keys[i]);
+            fillPrefixes(node.children[i], prefix);
+            prefix.setLength(prefix.length() - 1);
+        }
+    }
+
+    /**
+     * @param name an event name or a prefix
+     * @param prefixesOnly true to collect only the prefixes that match
+     * @return IEventCallback[] the matching callbacks in the order they were added
+     */
+    private IEventCallback[] collect(String name, boolean prefixesOnly) {
+        ArrayList<IEventCallback> callbacks = new ArrayList<>();
+        for (Registration registration : registrations) {
+            if (prefixesOnly && !registration.isPrefix)
+                continue;
+            if (registration.matches(name))
+                callbacks.add(registration.callback);
+        }
+        return callbacks.toArray(new IEventCallback[callbacks.size()]);
+    }
+}
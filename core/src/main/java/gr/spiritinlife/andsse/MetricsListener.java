@@ -0,0 +1,13 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * Gets the {@link StreamMetrics metrics} of an event source every interval , on the main thread.
+ * See {@link SSEEventSource#setMetricsListener(MetricsListener, long) setMetricsListener}
+ */
+public interface MetricsListener {
+
+    /**
+     * @param snapshot {@link StreamMetrics.Snapshot Snapshot} , the rate of events is measured since the previous one
+     */
+    void onMetrics(StreamMetrics.Snapshot snapshot);
+}
@@ -0,0 +1,33 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * What happens when the events come in faster than the main thread handles them and the dispatch queue is full.
+ * See {@link SSEEventSource#setDispatchQueue(int, OverflowPolicy) setDispatchQueue}
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The transport thread waits for room , so the stream is not read and TCP slows the server down.
+     * Nothing is lost. It is the default , but a {@link Transport#isShared() shared} transport like the
+     * {@link SelectorTransport SelectorTransport} does not allow it , as every stream of the transport would wait
+     */
+    BLOCK,
+
+    /**
+     * The oldest waiting event is dropped to make room , the main thread always gets the newest events
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new event is dropped , the main thread gets the events that were already waiting
+     */
+    DROP_NEWEST,
+
+    /**
+     * The connection is closed. The waiting events are still delivered and the event source reconnects , if it is allowed to ,
+     * resuming after the last event that made it into the queue.
+     * Listeners with an executor of their own already got the dropped events , so they may see them again.
+     * It is the default of the streams of a {@link Transport#isShared() shared} transport
+     */
+    FAIL
+}
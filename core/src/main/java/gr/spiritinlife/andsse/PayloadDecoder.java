@@ -0,0 +1,21 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * Turns the data of an event into an object , eg. parses its JSON.
+ *
+ * Decoders are {@link SSEEventSource#registerDecoder(String, PayloadDecoder) registered} per event name and run on the
+ * transport thread right after the event is parsed , before any listener is called. The object is attached to the event ,
+ * so the decoding happens once and off the main thread however many listeners the event has.
+ * A decoder may be called from more than one thread if it is registered to more than one event source.
+ *
+ * @param <T> the type of the decoded object
+ */
+public interface PayloadDecoder<T> {
+
+    /**
+     * @param event the event , its data can be read as {@link AndEvent#getRawData() bytes} or as a {@link AndEvent#getData() String}
+     * @return T the decoded object , null if there is nothing to attach
+     * @throws Exception if the data can not be decoded. The event is still delivered , without an object
+     */
+    T decode(AndEvent event) throws Exception;
+}
@@ -0,0 +1,71 @@
+package gr.spiritinlife.andsse;
+
+import java.util.Random;
+
+/**
+ * Decides how long an {@link SSEEventSource SSEEventSource} waits before it reconnects.
+ *
+ * The wait grows exponentially with every failed attempt up to a ceiling , and a random wait between zero and that value is picked
+ * ( full jitter ) so that clients that lost the same server do not all come back at the same time.
+ * If the server sent a retry field , its reconnection time replaces the initial delay , whatever its size , and it is a floor :
+ * the client never comes back sooner than the server asked , only the exponential growth above it is jittered.
+ * The attempts start over once a connection has stayed open for a while.
+ */
+public final class ReconnectPolicy {
+
+    /**
+     * 1s initial delay , doubled up to 30s , reset after 60s of healthy connection
+     */
+    public static final ReconnectPolicy DEFAULT = new ReconnectPolicy(1000, 30000, 2, 60000);
+
+    private static final Random RANDOM = new Random();
+
+    private final long initialDelay;
+    private final long maxDelay;
+    private final double multiplier;
+    private final long resetAfter;
+
+
+    /**
+     * @param initialDelayMs the wait before the first attempt , when the server did not send a retry field
+     * @param maxDelayMs the ceiling of the wait
+     * @param multiplier how much the wait grows with every attempt , at least 1
+     * @param resetAfterMs how long a connection must stay open for the attempts to start over
+     */
+    public ReconnectPolicy(long initialDelayMs, long maxDelayMs, double multiplier, long resetAfterMs) {
+        if (initialDelayMs < 0 || maxDelayMs < 0 || resetAfterMs < 0 || multiplier < 1)
+            throw new IllegalArgumentException("Invalid reconnect policy");
+        this.initialDelay = initialDelayMs;
+        this.maxDelay = maxDelayMs;
+        this.multiplier = multiplier;
+        this.resetAfter = resetAfterMs;
+    }
+
+
+    /**
+     * @param attempt how many attempts failed since the last healthy connection
+     * @param reconnectionTime the reconnection time the server sent , -1 if it did not send one
+     * @return long how many ms to wait before the next attempt
+     */
+    long getDelay(int attempt, long reconnectionTime) {
+        long base = reconnectionTime >= 0 ? reconnectionTime : initialDelay;
+        // the ceiling never cuts the reconnection time the server asked for
+        long ceiling = Math.max(maxDelay, base);
+        long floor = reconnectionTime >= 0 ? reconnectionTime : 0;
+
+        double exponential = base * Math.pow(multiplier, attempt);
+        long bound = exponential >= ceiling ? ceiling : (long) exponential;
+        if (bound <= floor)
+            return floor;
+
+        return floor + (long) (RANDOM.nextDouble() * (bound - floor));
+    }
+
+    /**
+     * @param openFor how many ms the last connection stayed open
+     * @return boolean true if the connection was healthy long enough to start the attempts over
+     */
+    boolean shouldReset(long openFor) {
+        return openFor >= resetAfter;
+    }
+}
@@ -0,0 +1,866 @@
+package gr.spiritinlife.andsse;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * An event source , whatever the platform.
+ *
+ * It owns the {@link EventStream stream} of one url , the listeners of its events and the reconnections.
+ * The url may have equivalent endpoints , then every connection goes to the fastest healthy one and a lost one fails over.
+ * Its state changes and the listeners that were added without an executor run on its {@link EventLoop event loop} ,
+ * one at a time. On Android that is the main thread and the event source is an {@link AndSSEEventSource AndSSEEventSource} ,
+ * on a plain JVM it is a JvmEventSource.
+ */
+public class SSEEventSource {
+
+    private static final Logger LOG = Logger.getLogger("AndSSE");
+
+    /**
+     * How long the connection outlives the last {@link Subscription consumer} by default , enough for a screen to replace another
+     */
+    public static final long DEFAULT_GRACE_PERIOD = 5000;
+
+    /**
+     * The {@link EventStream stream} that parses the responses and routes the events of this event source
+     */
+    private final EventStream stream;
+
+    /**
+     * The {@link Transport Transport} that handles the http connection of the {@link #stream stream}
+     */
+    private final Transport transport;
+
+    /**
+     * The {@link EventLoop event loop} the transport thread uses to inform this event source about events.
+     * Every event source has its own
+     */
+    private final EventLoop loop;
+
+    /**
+     * Holds all eventListeners defined by the user.
+     * Every event name can have many {@link IEventCallback IEventCallbacks} which define the onEvent function
+     */
+    private final ListenerRegistry eventListeners = new ListenerRegistry();
+
+    /**
+     * Holds the eventListeners that are delivered through their own {@link Executor Executor}.
+     * They are called by the transport thread , see {@link ExecutorListener ExecutorListener}
+     */
+    private final ListenerRegistry executorListeners = new ListenerRegistry();
+
+    /**
+     * Hands the events the event loop takes from the {@link #stream stream's} queue to {@link #onMessage(AndEvent) onMessage}
+     */
+    private final IEventCallback dispatcher = new IEventCallback() {
+        @Override
+        public void onEvent(AndEvent event) {
+            onMessage(event);
+        }
+    };
+
+    /**
+     * The equivalent endpoints of the stream , null if it has a single url
+     */
+    private final EndpointSelector endpoints;
+
+
+    /**
+     * This holds the state of the SSE
+     * Starting from {@link EventSource#CLOSED closed}
+     */
+    short readyState = EventSource.CLOSED;
+
+    /**
+     * This holds the last event id
+     * It will be used when client needs to get the messages from a point and after
+     */
+    String lastEventId = "";
+
+    /**
+     * reconnection time is how much time is used before reconnecting when {@link #onRestablish(int) onRestablish} is called ,
+     * -1 to let the {@link #reconnectPolicy reconnect policy} decide
+     */
+    int reconnectionTime = -1;
+
+    /**
+     * Decides how long to wait before reconnecting when the connection is lost , null to never reconnect
+     */
+    private ReconnectPolicy reconnectPolicy = ReconnectPolicy.DEFAULT;
+
+    /**
+     * How many reconnection attempts were made since the last healthy connection
+     */
+    private int reconnectAttempt = 0;
+
+    /**
+     * When the current connection was opened , in ms , 0 if it is not open
+     */
+    private long openedAt = 0;
+
+    /**
+     * True when the connection is being closed on purpose , so we should not reconnect
+     */
+    private boolean closeRequested = false;
+
+    /**
+     * True when we were asked to {@link #open() open} while the connection was being closed , it opens again once it is
+     */
+    private boolean reopenRequested = false;
+
+    /**
+     * When the connection was lost , in {@link System#nanoTime() nanoTime} , 0 if we are not waiting to reconnect
+     */
+    private long disconnectedAt = 0;
+
+    /**
+     * The reconnection waiting on the {@link AndSSEScheduler scheduler}
+     */
+    private ScheduledFuture<?> pendingReconnect;
+
+    /**
+     * Runs on the scheduler thread and hands the reconnection to the event loop
+     */
+    private final Runnable reconnectTask = new Runnable() {
+        @Override
+        public void run() {
+            loop.send(EventSource.RESTABLISH, 0);
+        }
+    };
+
+    /**
+     * Gets the metrics pushed every interval , null if nobody wants them
+     */
+    private MetricsListener metricsListener;
+
+    /**
+     * The push of the metrics , repeating on the {@link AndSSEScheduler scheduler}
+     */
+    private ScheduledFuture<?> metricsPush;
+
+    /**
+     * Runs on the scheduler thread and hands the push of the metrics to the event loop
+     */
+    private final Runnable metricsTask = new Runnable() {
+        @Override
+        public void run() {
+            loop.send(EventSource.METRICS, 0);
+        }
+    };
+
+    /**
+     * How long the server may stay silent before the connection is taken for dead , in ms , 0 if there is no watchdog
+     */
+    private long silenceLimit = 0;
+
+    /**
+     * The checks of the watchdog , repeating on the {@link AndSSEScheduler scheduler} once per heartbeat interval
+     */
+    private ScheduledFuture<?> watchdog;
+
+    /**
+     * Runs on the scheduler thread and hands the check of the watchdog to the event loop
+     */
+    private final Runnable watchdogTask = new Runnable() {
+        @Override
+        public void run() {
+            loop.send(EventSource.WATCHDOG, 0);
+        }
+    };
+
+    /**
+     * How many {@link Subscription consumers} are attached , they come and go on any thread
+     */
+    private final AtomicInteger attachments = new AtomicInteger();
+
+    /**
+     * How long the connection stays open after the last consumer detached , in ms
+     */
+    private volatile long gracePeriod = DEFAULT_GRACE_PERIOD;
+
+
+
+    /**
+     * @param url URL of the stream
+     * @param loop {@link EventLoop EventLoop} the event source lives on , it becomes the loop's only target
+     * @param transport {@link Transport Transport} that carries the stream
+     */
+    SSEEventSource(URL url, EventLoop loop, Transport transport) {
+        this(url, null, loop, transport);
+    }
+
+    /**
+     * @param urls the equivalent endpoints of the stream , in the order they are tried before they are measured
+     * @param loop {@link EventLoop EventLoop} the event source lives on , it becomes the loop's only target
+     * @param transport {@link Transport Transport} that carries the stream
+     */
+    SSEEventSource(List<URL> urls, EventLoop loop, Transport transport) {
+        this(first(urls), urls.size() > 1 ? new EndpointSelector(urls) : null, loop, transport);
+    }
+
+    private SSEEventSource(URL url, EndpointSelector endpoints, EventLoop loop, Transport transport) {
+        this.endpoints = endpoints;
+        this.loop = loop;
+        this.transport = transport;
+
+        LOG.fine("Connecting " + url);
+
+        stream = new EventStream(url, loop, executorListeners);
+        stream.setSubscriptions(eventListeners);
+        // a transport thread that waits for this loop would stall every other stream it reads ,
+        // instead the stream reconnects and the server resends what did not fit
+        if (transport.isShared())
+            stream.setQueue(EventStream.DEFAULT_QUEUE_CAPACITY, OverflowPolicy.FAIL);
+
+        loop.setTarget(new EventLoop.Target() {
+            @Override
+            public boolean handle(int what) {
+                return SSEEventSource.this.handle(what);
+            }
+        });
+    }
+
+    private static URL first(List<URL> urls) {
+        if (urls.isEmpty())
+            throw new IllegalArgumentException("No endpoints");
+        return urls.get(0);
+    }
+
+    /**
+     * Call this when you want to start the server sent events listening loop
+     */
+    public void start() { open(); }
+
+    /**
+     * @return URL the url of the stream , the endpoint of the current or last connection if it has more than one
+     */
+    public URL getUrl() {
+        return stream.getUrl();
+    }
+
+    /**
+     * Gets the last event's id
+     * @return String
+     */
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+
+
+
+
+    //---------------------------------------//---------------------------------------//
+
+
+    //---------------------------------------//---------------------------------------//
+    //       Methods that handle and route the events from the transport thread        //
+
+
+    /**
+     * The transport and the scheduler send messages when data comes in and want to pass them to the event loop
+     * @param what one of the {@link EventSource EventSource} constants
+     * @return boolean false if not handled , true if handled
+     */
+    final boolean handle(int what) {
+        // here we are on the event loop , we can call the listeners
+        switch ( what ) {
+            case EventSource.EVENT_BATCH :
+                stream.drain(dispatcher);
+                break;
+            case EventSource.ERROR :
+                onError();
+                break;
+            case EventSource.FAILED :
+                onFailed();
+                break;
+            case EventSource.OPEN :
+                onOpen();
+                break;
+            case EventSource.RESTABLISH :
+                reconnect();
+                break;
+            case EventSource.METRICS :
+                MetricsListener listener = metricsListener;
+                if (listener != null)
+                    listener.onMetrics(getMetrics());
+                break;
+            case EventSource.WATCHDOG :
+                checkSilence();
+                break;
+            case EventSource.ATTACHED :
+                // the connection may be closing for an earlier grace period , open() reopens it once it is closed
+                if (attachments.get() > 0)
+                    open();
+                break;
+            case EventSource.GRACE_ENDED :
+                // someone may have attached since , their message found the connection still open
+                if (attachments.get() == 0 && !isClosed())
+                    closeConnection();
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Enables batching of the events that the transport thread hands to the event loop.
+     * When the server sends bursts of events they are delivered in one pass of the loop.
+     * Call with 1 and 0 to deliver the events as soon as they arrive , which is the default.
+     * @param maxBatchSize how many events make a batch
+     * @param batchWindowMs how many ms to wait for more events after the first event of a batch
+     */
+    public void setBatching(int maxBatchSize, long batchWindowMs) {
+        stream.setBatching(maxBatchSize, batchWindowMs);
+    }
+
+
+    /**
+     * Bounds the events that wait for the event loop. When the server sends faster than the loop handles them
+     * and the queue is full , the policy decides what is lost. The default is {@link EventStream#DEFAULT_QUEUE_CAPACITY 1024}
+     * events and {@link OverflowPolicy#BLOCK BLOCK} , or {@link OverflowPolicy#FAIL FAIL} when the transport is
+     * {@link Transport#isShared() shared} : one slow event loop must not stop the streams of the others ,
+     * and a server that resumes from the last event id still loses nothing.
+     * Call it before {@link #start() start}
+     * @param capacity how many events can wait , rounded up to a power of two
+     * @param policy {@link OverflowPolicy OverflowPolicy} , it can not be BLOCK when the transport is shared
+     */
+    public void setDispatchQueue(int capacity, OverflowPolicy policy) {
+        if (policy == OverflowPolicy.BLOCK && transport.isShared())
+            throw new IllegalArgumentException("A shared transport can not wait for one event loop");
+        stream.setQueue(capacity, policy);
+    }
+
+    /**
+     * @return long how many events were dropped because the event loop could not keep up
+     */
+    public long getDroppedEvents() {
+        return stream.getDroppedEvents();
+    }
+
+
+    /**
+     * @return {@link StreamMetrics.Snapshot Snapshot} the metrics of this event source right now.
+     * Its rate of events is measured since the previous snapshot , pushed or not
+     */
+    public StreamMetrics.Snapshot getMetrics() {
+        return stream.getMetrics().snapshot();
+    }
+
+    /**
+     * Pushes the metrics of this event source to the listener every interval , on the event loop
+     * @param listener {@link MetricsListener MetricsListener} , null to stop pushing
+     * @param intervalMs how often
+     */
+    public void setMetricsListener(MetricsListener listener, long intervalMs) {
+        AndSSEScheduler.cancel(metricsPush);
+        metricsPush = null;
+        loop.remove(EventSource.METRICS);
+        metricsListener = listener;
+        if (listener == null)
+            return;
+
+        metricsPush = AndSSEScheduler.scheduleAtFixedRate(metricsTask, intervalMs);
+    }
+
+
+    /**
+     * Watches the connection for silence. A connection whose other end is gone without a word , like one behind a mobile NAT
+     * that forgot it , never fails a read and would wait for ever. When nothing , not even a comment , arrived for
+     * <code>missedHeartbeats</code> heartbeat intervals the connection is aborted , and the event source reconnects
+     * with the {@link #setReconnectPolicy(ReconnectPolicy) reconnect policy} and resumes after the last event.
+     * The server must send something , eg. a ": heartbeat" comment , at least once per interval. Off by default
+     * @param heartbeatIntervalMs how often the server sends something , 0 to stop watching
+     * @param missedHeartbeats how many intervals of silence take the connection for dead , eg. 3
+     */
+    public void setWatchdog(long heartbeatIntervalMs, int missedHeartbeats) {
+        AndSSEScheduler.cancel(watchdog);
+        watchdog = null;
+        loop.remove(EventSource.WATCHDOG);
+        if (heartbeatIntervalMs <= 0 || missedHeartbeats <= 0) {
+            silenceLimit = 0;
+            return;
+        }
+
+        silenceLimit = heartbeatIntervalMs * missedHeartbeats;
+        watchdog = AndSSEScheduler.scheduleAtFixedRate(watchdogTask, heartbeatIntervalMs);
+    }
+
+    /**
+     * Aborts the connection if the server was silent for longer than the watchdog allows
+     */
+    private void checkSilence() {
+        if (silenceLimit == 0 || (readyState != EventSource.OPEN && readyState != EventSource.CONNECTING))
+            return;
+
+        long silence = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stream.getLastReceived());
+        if (silence < silenceLimit)
+            return;
+
+        LOG.warning("No data from " + stream.getUrl() + " for " + silence + "ms , reconnecting");
+        // give the transport a whole limit to report the close before looking again
+        stream.resetLastReceived();
+        // the transport reports the close and onError reconnects , the stream resumes after its last event
+        transport.disconnect(stream);
+    }
+
+
+    /**
+     * Attaches a consumer , eg. a screen in its onStart , and opens the connection if it is closed.
+     * The event source is shared by its consumers , it keeps one connection while any of them is attached and
+     * for the {@link #setGracePeriod(long) grace period} after the last one {@link Subscription#detach() detached} ,
+     * so screens that come and go , or are rotated , do not tear the connection down and replay the events they missed.
+     * Use it instead of {@link #start() start} and the lifecycle calls. It can be called on any thread ,
+     * the connection is opened on the event loop
+     * @return {@link Subscription Subscription} of the consumer , its listeners are removed when it detaches
+     */
+    public Subscription attach() {
+        attachments.incrementAndGet();
+        loop.remove(EventSource.GRACE_ENDED);
+        loop.send(EventSource.ATTACHED, 0);
+        return new Subscription(this);
+    }
+
+    /**
+     * Called by a {@link Subscription Subscription} when it detaches
+     */
+    void detach() {
+        if (attachments.decrementAndGet() == 0)
+            loop.send(EventSource.GRACE_ENDED, gracePeriod);
+    }
+
+    /**
+     * @return int how many consumers are attached
+     */
+    public int getAttachments() {
+        return attachments.get();
+    }
+
+    /**
+     * Sets how long the connection stays open after the last consumer detached. The default is
+     * {@link #DEFAULT_GRACE_PERIOD 5 seconds}
+     * @param gracePeriodMs long , 0 to close as soon as the last consumer leaves
+     */
+    public void setGracePeriod(long gracePeriodMs) {
+        gracePeriod = Math.max(0, gracePeriodMs);
+    }
+
+
+    /**
+     * Skips the events no listener wants on the transport thread , before they are built , decoded or sent to the event loop ,
+     * so a stream that carries many event names costs only what the app listens for. On by default.
+     * Skipped events are counted in the {@link StreamMetrics.Snapshot#getFilteredEvents() metrics} ,
+     * a {@link #setJournal(EventJournal) journal} still records them and the stream resumes after them.
+     * Turn it off if {@link #getLastEventId() getLastEventId} must follow every event , whether anyone listens or not
+     * @param filtering boolean
+     */
+    public void setFiltering(boolean filtering) {
+        stream.setSubscriptions(filtering ? eventListeners : null);
+    }
+
+
+    /**
+     * Skips the events whose id is one of the latest the stream had , eg. the window of events a server sends again
+     * when the stream resumes from the Last-Event-ID. It runs on the transport thread before the event is built ,
+     * with a fixed memory of 24 to 40 bytes per id however long the stream runs. Events without an id field are never skipped ,
+     * nor are {@link #addStreamingListener(String, StreamingEventCallback) streamed} ones. Skipped events are counted in the
+     * {@link StreamMetrics.Snapshot#getDuplicateEvents() metrics}. Off by default
+     * @param capacity how many of the latest ids are remembered , 0 to turn it off
+     */
+    public void setDeduplication(int capacity) {
+        stream.setDeduplication(capacity);
+    }
+
+
+    /**
+     * Asks the server to compress the stream with gzip or deflate , from the next connection on.
+     * The body is inflated as it arrives , so a server that flushes its compressor after every event
+     * gets every event delivered right away. Off by default
+     * @param compression boolean
+     */
+    public void setCompression(boolean compression) {
+        stream.setCompression(compression);
+    }
+
+
+    /**
+     * Tells the server , in the Accept header , that the stream may be sent in {@link FrameParser binary frames} from the next
+     * connection on. Frames carry the name , the id and the data of every event with a length before each ,
+     * so they take fewer bytes than text and are parsed without looking at every byte.
+     * A server that does not know them answers text/event-stream , which is parsed as usual.
+     * The listeners , the ids and the reconnections are the same either way. Off by default
+     * @param binaryFraming boolean
+     */
+    public void setBinaryFraming(boolean binaryFraming) {
+        stream.setBinaryFraming(binaryFraming);
+    }
+
+
+    /**
+     * Sets how the event source reconnects when the connection is lost.
+     * The server's retry field sets the initial wait , whatever its size
+     * @param reconnectPolicy {@link ReconnectPolicy ReconnectPolicy} , or null to close for ever when the connection is lost
+     */
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+
+    /**
+     * Records the events of this event source in the journal , and resumes from the last event the journal holds ,
+     * so a restarted process does not get the server's whole backlog again. Call it before {@link #start() start}
+     * @param journal {@link EventJournal EventJournal} , null to stop journaling
+     */
+    public void setJournal(EventJournal journal) {
+        stream.setJournal(journal);
+        lastEventId = stream.getLastEventId();
+    }
+
+
+    /**
+     * Registers the decoder of an event name. It runs on the transport thread right after the event is parsed ,
+     * and the object it returns is handed to every {@link TypedEventCallback TypedEventCallback} of that event.
+     * Only exact names are matched , {@link AndEvent#ON_MESSAGE ON_MESSAGE} is the name of events without one
+     * @param eventName String
+     * @param decoder {@link PayloadDecoder PayloadDecoder} , null to remove the decoder of the name
+     */
+    public void registerDecoder(String eventName, PayloadDecoder<?> decoder) {
+        stream.registerDecoder(eventName, decoder);
+    }
+
+
+    /**
+     * Conflates the events of a name on their way to the event loop. Events with the same key that arrive before the
+     * loop gets to them collapse into the newest one , so the loop does as much work as it has time for ,
+     * not as much as the server sends. With {@link #setBatching(int, long) batching} that is once per window.
+     * Listeners with their own executor and the journal still get every event
+     * @param eventName String , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without a name
+     * @param key {@link ConflationKey ConflationKey} , eg. {@link ConflationKey#EVENT_NAME EVENT_NAME} , null to stop conflating the name
+     */
+    public void setConflation(String eventName, ConflationKey key) {
+        stream.setConflation(eventName, key);
+    }
+
+    /**
+     * @return long how many events were replaced by a newer one before the event loop got them
+     */
+    public long getConflatedEvents() {
+        return stream.getConflatedEvents();
+    }
+
+
+    /**
+     * Sets the priority of an event name on its way to the event loop. The events of every priority wait in a queue of their own
+     * and the loop takes the higher ones first , so an important event does not wait behind a burst of unimportant ones.
+     * A higher priority takes at most {@link EventStream#STARVATION_LIMIT 16} turns in a row while a lower one waits.
+     * Events of different priorities may be delivered out of order , and so {@link #getLastEventId() getLastEventId}
+     * is not always the newest id. Every queue has the size and the policy of the {@link #setDispatchQueue(int, OverflowPolicy) dispatch queue}
+     * @param eventName String , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without a name , no * patterns
+     * @param priority {@link DispatchPriority DispatchPriority} , null for {@link DispatchPriority#NORMAL NORMAL}
+     */
+    public void setPriority(String eventName, DispatchPriority priority) {
+        stream.setPriority(eventName, priority);
+    }
+
+
+    /**
+     * Streams the data of the events of a name to the listener while it arrives , for events too big to hold in memory at once.
+     * The listener is called on the transport thread , it replaces the previous streaming listener of the name ,
+     * and the events of the name are not delivered to the other listeners nor journaled.
+     * A streamed event needs its event field before its data , events that send it after are delivered as usual
+     * @param eventName String , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without a name , no * patterns
+     * @param callback {@link StreamingEventCallback StreamingEventCallback} , null to stop streaming the name
+     */
+    public void addStreamingListener(String eventName, StreamingEventCallback callback) {
+        stream.setStreamingListener(eventName, callback);
+    }
+
+    /**
+     * Streams the data of the events of a name to the callback , which reads it as an {@link EventInputStream EventInputStream}
+     * on the executor. At most bufferSize bytes of an event are in memory , whatever its size ,
+     * when the buffer is full the transport thread waits for the callback to read , so the stream slows down to its pace.
+     * A transport that serves many streams , like the {@link SelectorTransport SelectorTransport} , does not wait ,
+     * the rest of the event is dropped and the callback's stream fails , so slow readers need a transport of their own.
+     * Otherwise like {@link #addStreamingListener(String, StreamingEventCallback) addStreamingListener}
+     * @param executor {@link Executor Executor} , eg. {@link SSEExecutors#STREAMING STREAMING} ,
+     *                 not {@link SSEExecutors#DIRECT DIRECT} nor {@link SSEExecutors#BACKGROUND BACKGROUND}
+     * @param bufferSize the bytes of an event that can wait for the callback
+     * @param callback {@link EventInputStream.Callback EventInputStream.Callback}
+     */
+    public void addStreamingListener(String eventName, Executor executor, int bufferSize, EventInputStream.Callback callback) {
+        addStreamingListener(eventName, new EventInputStream.Listener(executor, bufferSize, !transport.isShared(), callback));
+    }
+
+    /**
+     * Stops streaming the events of a name , from the next event on they are delivered to the other listeners
+     * @param eventName String
+     */
+    public void removeStreamingListener(String eventName) {
+        stream.setStreamingListener(eventName, null);
+    }
+
+
+    /**
+     * Adds an event listener that runs on the event loop.
+     * Many listeners can be added for the same event. A name that ends with * listens for every event that starts with
+     * the rest of the name , eg. "orders.*" , while "*" listens for all events
+     * @param eventName String
+     * @param callback {@link IEventCallback IEventCallback interface that defines an event method}
+     */
+    public void addEventListener(String eventName,IEventCallback callback){
+        eventListeners.add(eventName, callback);
+    }
+
+    /**
+     * Adds an event listener that runs on the given executor instead of the event loop ,
+     * eg. {@link SSEExecutors#BACKGROUND SSEExecutors.BACKGROUND} for listeners that parse or store the data.
+     * Whatever the executor , the listener receives its events one at a time and in the order they arrived
+     * @param eventName String , it can end with * like in {@link #addEventListener(String, IEventCallback) addEventListener}
+     * @param executor {@link SSEExecutors SSEExecutors} or any other {@link Executor Executor} , null for the event loop
+     * @param callback {@link IEventCallback IEventCallback interface that defines an event method}
+     */
+    public void addEventListener(String eventName,Executor executor,IEventCallback callback){
+        if (executor == null)
+            addEventListener(eventName, callback);
+        else
+            executorListeners.add(eventName, new ExecutorListener(callback, executor));
+    }
+
+    /**
+     * Removes an event listener
+     * @param eventName the same name that was given to {@link #addEventListener(String, IEventCallback) addEventListener}
+     * @param callback {@link IEventCallback IEventCallback}
+     * @return boolean true if the listener was found and removed
+     */
+    public boolean removeEventListener(String eventName,IEventCallback callback){
+        return eventListeners.remove(eventName, callback)
+                | executorListeners.remove(eventName, new ExecutorListener(callback, null));
+    }
+
+
+    /**
+     * Delivers the event to its listeners and gives it back to the pool ,
+     * unless a listener {@link AndEvent#retain() retained} it
+     * @param event {@link AndEvent AndEvent}
+     */
+    private void onMessage(final AndEvent event) {
+        if (event.parsedAt != 0)
+            stream.getMetrics().deliveryLatency.record(System.nanoTime() - event.parsedAt);
+        lastEventId = event.id;
+        final IEventCallback[] callbacks = eventListeners.get(event.getEventName());
+        try {
+            for (IEventCallback cb : callbacks) {
+                cb.onEvent(event);
+            }
+        } finally {
+            event.recycle();
+        }
+    }
+
+
+    /**
+     * This is called by {@link #handle(int) handle} when the
+     * {@link EventSource#OPEN OPEN } is sent by the transport thread
+     */
+    private void onOpen() {
+        LOG.fine("OPENED");
+        readyState = EventSource.OPEN;
+        openedAt = now();
+        if (endpoints != null)
+            endpoints.onOpen(endpoints.getCurrent());
+        if (disconnectedAt != 0) {
+            stream.getMetrics().reconnectTime.record(System.nanoTime() - disconnectedAt);
+            disconnectedAt = 0;
+        }
+    }
+
+    /**
+     * This is called by {@link #handle(int) handle} when the
+     * {@link EventSource#ERROR ERROR } is sent by the transport thread
+     * Attention : IF we closed the connection on purpose , or there is no {@link #reconnectPolicy reconnect policy} , we will CLOSE for ever
+     *             else we will try to reconnect after the wait the policy decides
+     */
+    private void onError() {
+        if ( closeRequested || (reconnectPolicy == null && reconnectionTime < 0) ) {
+            LOG.fine("Closed");
+            readyState = EventSource.CLOSED;
+            openedAt = 0;
+            disconnectedAt = 0;
+            if (reopenRequested) {
+                reopenRequested = false;
+                open();
+            }
+            return;
+        }
+
+        long delay;
+        if (reconnectionTime >= 0) {
+            delay = reconnectionTime;
+            reconnectionTime = -1;
+        } else if (endpoints != null && endpoints.onFailure()) {
+            // another endpoint is healthy , the one that failed does not need to be spared
+            LOG.warning("Lost " + stream.getUrl() + " , failing over");
+            delay = 0;
+        } else {
+            if (openedAt != 0 && reconnectPolicy.shouldReset(now() - openedAt))
+                reconnectAttempt = 0;
+            delay = reconnectPolicy.getDelay(reconnectAttempt++, stream.getReconnectionTime());
+        }
+        openedAt = 0;
+        // the time to reconnect counts from the first failure , not from the last attempt
+        if (disconnectedAt == 0)
+            disconnectedAt = System.nanoTime();
+
+        LOG.fine("Reconnecting in " + delay + "ms");
+        readyState = EventSource.RESTABLISH;
+        AndSSEScheduler.cancel(pendingReconnect);
+        pendingReconnect = AndSSEScheduler.schedule(reconnectTask, delay);
+    }
+
+    /**
+     * This is called by {@link #handle(int) handle} when the
+     * {@link EventSource#FAILED FAILED } is sent by the transport thread , the server refused the stream eg. with a 204 No Content.
+     * The spec says we must not reconnect , we CLOSE for ever unless we are opened again
+     */
+    private void onFailed() {
+        closeRequested = true;
+        onError();
+    }
+
+    /**
+     * This is called by {@link #handle(int) handle} when the
+     * {@link EventSource#RESTABLISH RESTABLISH } is sent by the {@link AndSSEScheduler scheduler}
+     */
+    private void reconnect() {
+        pendingReconnect = null;
+        if (readyState == EventSource.RESTABLISH) {
+            readyState = EventSource.CLOSED;
+            stream.getMetrics().reconnectAttempts.increment();
+            open();
+        }
+    }
+
+    /**
+     * Closes the connection and reconnects after the given time
+     * @param reconnectionMs how many ms to wait before reconnecting
+     */
+    public void onRestablish(int reconnectionMs) {
+        reconnectionTime = reconnectionMs;
+        if (readyState == EventSource.RESTABLISH) {
+            // we are already waiting , wait for the given time instead
+            onError();
+            return;
+        }
+        readyState = EventSource.RESTABLISH;
+        // close stream and everything , onError will schedule the reconnection
+        transport.disconnect(stream);
+    }
+
+    /**
+     * @return long a monotonic time in ms , never 0 as that means not set
+     */
+    private static long now() {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+
+    //---------------------------------------//---------------------------------------//
+
+
+
+    //---------------------------------------//---------------------------------------//
+    //              Helpers methods that use the transport to pass events             //
+
+
+    /**
+     * Tell the transport to open the connection and start the loop.
+     * If the connection is still being closed it opens again as soon as the transport reports it closed
+     */
+    protected void open() {
+        if (closeRequested && readyState != EventSource.CLOSED) {
+            reopenRequested = true;
+        } else if (readyState == EventSource.CLOSED) {
+            closeRequested = false;
+            readyState = EventSource.CONNECTING;
+            LOG.fine("Connecting");
+            // the watchdog counts the silence of the new connection from now
+            stream.resetLastReceived();
+            if (endpoints != null)
+                stream.connecting(endpoints, endpoints.select());
+            transport.connect(stream);
+        }
+    }
+
+    /**
+     * Tell the transport to close the connection , for good. It can be {@link #open() opened} again
+     */
+    protected void closeConnection() {
+        // if all well this will call on error and close the connection
+        LOG.fine("Disconnect");
+        closeRequested = true;
+        reopenRequested = false;
+        AndSSEScheduler.cancel(pendingReconnect);
+        pendingReconnect = null;
+        loop.remove(EventSource.RESTABLISH);
+
+        if (readyState == EventSource.RESTABLISH) {
+            // there is no connection while we wait to reconnect
+            readyState = EventSource.CLOSED;
+        }
+        disconnectedAt = 0;
+        transport.disconnect(stream);
+    }
+
+    /**
+     * Closes the connection , stops the metrics , forgets every listener and {@link Transport#release(EventStream) releases}
+     * the transport , eg. ends the thread of an {@link AndSSE AndSSE}. It can not be opened again
+     */
+    protected void destroy() {
+        closeConnection();
+        transport.release(stream);
+        setMetricsListener(null, 0);
+        setWatchdog(0, 0);
+        eventListeners.clear();
+        executorListeners.clear();
+    }
+    //---------------------------------------//---------------------------------------//
+
+
+    //---------------------------------------//---------------------------------------//
+    //               Helper methods that give back the sate of the SSE                //
+
+
+    /**
+     *
+     * @return boolean returns true if sse's state is closed
+     */
+    public boolean isClosed() {
+        return readyState == EventSource.CLOSED;
+    }
+
+    /**
+     *
+     * @return boolean returns true if sse's state is open
+     */
+    public boolean isOpen() {
+        return readyState == EventSource.OPEN;
+    }
+
+    /**
+     *
+     * @return boolean returns true is sse's state is connecting
+     */
+    public boolean isConnecting() {
+        return readyState == EventSource.CONNECTING;
+    }
+
+    //---------------------------------------//---------------------------------------//
+
+}
@@ -0,0 +1,82 @@
+package gr.spiritinlife.andsse;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link Executor Executors} the library runs its own work on , which can also be given to
+ * {@link SSEEventSource#addEventListener(String, Executor, IEventCallback) addEventListener} to choose where a listener runs.
+ * Any other executor can be used too. Whatever the executor , a listener receives its events one at a time and in order.
+ */
+public final class SSEExecutors {
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int POOL_SIZE = Math.max(2, CPU_COUNT);
+    private static final int KEEP_ALIVE = 30;
+
+    /**
+     * Runs the listener on the transport thread , right after the event is parsed.
+     * The listener must be quick , as the stream is not read while it runs
+     */
+    public static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Runs the listener on a pool of background threads shared by all event sources
+     */
+    public static final Executor BACKGROUND;
+
+    static {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AndSSE_background_" + count.getAndIncrement());
+                thread.setDaemon(true);
+                // on Android this is THREAD_PRIORITY_BACKGROUND
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        };
+
+        ThreadPoolExecutor background = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory);
+        background.allowCoreThreadTimeOut(true);
+        BACKGROUND = background;
+    }
+
+    /**
+     * Runs the readers of {@link EventInputStream streamed events} , every one on a thread of its own.
+     * A reader may take as long as it wants , it holds up neither the other readers nor the work of the library
+     */
+    public static final Executor STREAMING;
+
+    static {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AndSSE_streaming_" + count.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        STREAMING = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), threadFactory);
+    }
+
+    private SSEExecutors() {
+    }
+}
@@ -0,0 +1,512 @@
+package gr.spiritinlife.andsse;
+
+import java.nio.charset.Charset;
+
+/**
+ * Incremental parser for the text/event-stream format.
+ *
+ * The parser is fed the raw bytes of the response as they are read from the connection, in chunks of
+ * any size, and keeps its state between calls. Lines are never materialised as Strings : field values are
+ * copied into reusable byte buffers and decoded from UTF-8 once, when the field is complete.
+ * The data of an event is never decoded here , the listener gets its bytes and decides if it needs a String.
+ * A {@link Streamer Streamer} can take the data of an event as it arrives instead , so that it is never held whole.
+ *
+ * It follows the interpretation rules of the RFC :
+ * +   lines may end with CRLF, LF or CR , even when the CR and the LF arrive in different chunks
+ * +   a leading UTF-8 BOM is stripped
+ * +   only the first colon separates the field name from its value , so values may contain colons
+ * +   a single space after the colon is removed
+ * +   consecutive data lines are joined with a LF
+ * +   the last event id survives between events , ids that contain NULL are ignored
+ * +   retry is honoured only if it consists of ASCII digits
+ *
+ * Instances are not thread safe , they are meant to be driven by the thread that reads the connection.
+ */
+public final class SSEParser {
+
+    /**
+     * Receives what the {@link SSEParser SSEParser} found in the stream
+     */
+    public interface Listener {
+
+        /**
+         * Called when a blank line completes an event that carried at least one data field
+         * @param eventName the value of the last event field or null if none was given
+         * @param data the data lines joined with LF , as UTF-8 bytes. The buffer belongs to the parser and is reused
+         *             after this call returns , copy what you need
+         * @param dataLength how many bytes of the buffer are the data , starting at 0
+         * @param lastEventId the last event id seen in this stream , empty if none
+         */
+        void onEvent(String eventName, byte[] data, int dataLength, String lastEventId);
+
+        /**
+         * Called when a valid retry field is found
+         * @param reconnectionTime the reconnection time in ms
+         */
+        void onRetry(long reconnectionTime);
+    }
+
+    /**
+     * Takes the data of chosen events while they arrive , instead of the {@link Listener Listener} getting them complete
+     */
+    public interface Streamer {
+
+        /**
+         * Called when the first data line of an event starts. Only the event field that came before it is known ,
+         * a server that wants its events streamed sends the event field first
+         * @param eventName the value of the last event field so far or null if none was given
+         * @return boolean true to get the data of this event in chunks , false to let the listener get it complete
+         */
+        boolean onEventStart(String eventName);
+
+        /**
+         * Called with the next bytes of the data , the data lines joined with LF like for {@link Listener#onEvent(String, byte[], int, String) onEvent}.
+         * The buffer belongs to the caller and is reused after this call returns
+         */
+        void onEventData(byte[] data, int offset, int length);
+
+        /**
+         * Called when a blank line completes the event
+         * @param lastEventId the last event id seen in this stream , empty if none
+         */
+        void onEventEnd(String lastEventId);
+
+        /**
+         * Called when the parser is {@link #reset() reset} in the middle of the event , eg. the connection was lost
+         */
+        void onEventAborted();
+    }
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] LF = {'\n'};
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private static final byte[] FIELD_DATA = {'d', 'a', 't', 'a'};
+    private static final byte[] FIELD_EVENT = {'e', 'v', 'e', 'n', 't'};
+    private static final byte[] FIELD_ID = {'i', 'd'};
+    private static final byte[] FIELD_RETRY = {'r', 'e', 't', 'r', 'y'};
+
+
+    /**
+     * The fields we understand. Every other field is ignored as the RFC describes
+     */
+    private static final int FIELD_UNKNOWN = 0;
+    private static final int DATA = 1;
+    private static final int EVENT = 2;
+    private static final int ID = 3;
+    private static final int RETRY = 4;
+
+
+    /**
+     * Where we are in the current line
+     */
+    private static final int LINE_START = 0;
+    private static final int NAME = 1;
+    private static final int VALUE_START = 2;
+    private static final int VALUE = 3;
+    private static final int IGNORE = 4;
+
+
+    /**
+     * Data buffers bigger than this are released after their event is dispatched ,
+     * so one huge event does not pin its memory for the lifetime of the stream
+     */
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    private static final int INITIAL_DATA_BUFFER = 1024;
+    private static final int INITIAL_VALUE_BUFFER = 128;
+
+
+    private final Listener listener;
+
+    /**
+     * Takes the data of the events it chooses , null if every event goes to the listener
+     */
+    private Streamer streamer;
+
+    /**
+     * True while the data of the current event goes to the streamer
+     */
+    private boolean streaming = false;
+
+    private int state = LINE_START;
+
+    /**
+     * How many bytes of the BOM we matched so far , -1 when the start of the stream is behind us
+     */
+    private int bomIndex = 0;
+
+    /**
+     * True when the previous line ended with a CR , so a LF that follows belongs to the same line ending
+     */
+    private boolean skipLf = false;
+
+    /**
+     * The field name of the current line. Names longer than the buffer can only be unknown fields
+     */
+    private final byte[] name = new byte[8];
+    private int nameLength;
+    private int field;
+
+    /**
+     * The value of the current event, id or retry field
+     */
+    private byte[] value = new byte[INITIAL_VALUE_BUFFER];
+    private int valueLength;
+
+    /**
+     * The data buffer of the event that is being built
+     */
+    private byte[] data = new byte[INITIAL_DATA_BUFFER];
+    private int dataLength;
+    private boolean hasData = false;
+
+    /**
+     * The event type buffer of the event that is being built , null means the default event
+     */
+    private String eventName;
+
+    /**
+     * Most streams use a handful of event names , so we keep the last decoded one and reuse it
+     * when the same bytes come in again
+     */
+    private byte[] cachedNameBytes = new byte[0];
+    private String cachedName;
+
+    /**
+     * The last event id of the stream , it is not reset when an event is dispatched
+     */
+    private String lastEventId = "";
+
+    /**
+     * True if the event that is being built has an id field of its own
+     */
+    private boolean hasId = false;
+
+    /**
+     * The id field of the event that is being built , it becomes the last event id only when the event is dispatched
+     * so that a stream resumed after a partial event does not skip it
+     */
+    private String pendingId = "";
+
+
+    public SSEParser(Listener listener) {
+        this.listener = listener;
+    }
+
+
+    /**
+     * Parses the next chunk of the stream
+     * @param buffer the bytes read from the connection
+     * @param offset where the chunk starts
+     * @param length how many bytes the chunk has
+     */
+    public void feed(byte[] buffer, int offset, int length) {
+        final int end = offset + length;
+        int i = offset;
+
+        while (i < end) {
+            byte b = buffer[i];
+
+            if (skipLf) {
+                skipLf = false;
+                if (b == '\n') {
+                    i++;
+                    continue;
+                }
+            }
+
+            if (bomIndex >= 0) {
+                if (b == BOM[bomIndex]) {
+                    i++;
+                    if (++bomIndex == BOM.length)
+                        bomIndex = -1;
+                    continue;
+                }
+                // not a BOM after all , give back what we swallowed
+                int matched = bomIndex;
+                bomIndex = -1;
+                if (matched > 0)
+                    feed(BOM, 0, matched);
+            }
+
+            switch (state) {
+                case LINE_START:
+                    if (b == '\n' || b == '\r') {
+                        // an empty line dispatches the event
+                        dispatchEvent();
+                        skipLf = b == '\r';
+                        i++;
+                    } else if (b == ':') {
+                        // a line that starts with a colon is a comment
+                        state = IGNORE;
+                        i++;
+                    } else {
+                        nameLength = 0;
+                        state = NAME;
+                    }
+                    break;
+
+                case NAME:
+                    if (b == ':') {
+                        field = resolveField();
+                        state = field == FIELD_UNKNOWN ? IGNORE : VALUE_START;
+                        i++;
+                    } else if (b == '\n' || b == '\r') {
+                        // a field without a colon has an empty value
+                        field = resolveField();
+                        if (field != FIELD_UNKNOWN) {
+                            beginValue();
+                            endValue();
+                        }
+                        endLine(b);
+                        i++;
+                    } else {
+                        if (nameLength < name.length)
+                            name[nameLength] = b;
+                        nameLength++;
+                        i++;
+                    }
+                    break;
+
+                case VALUE_START:
+                    beginValue();
+                    state = VALUE;
+                    // if value starts with a space remove it
+                    if (b == ' ')
+                        i++;
+                    break;
+
+                case VALUE: {
+                    int start = i;
+                    while (i < end && buffer[i] != '\n' && buffer[i] != '\r')
+                        i++;
+                    appendValue(buffer, start, i - start);
+                    if (i < end) {
+                        endValue();
+                        endLine(buffer[i]);
+                        i++;
+                    }
+                    break;
+                }
+
+                case IGNORE:
+                    while (i < end && buffer[i] != '\n' && buffer[i] != '\r')
+                        i++;
+                    if (i < end) {
+                        endLine(buffer[i]);
+                        i++;
+                    }
+                    break;
+            }
+        }
+    }
+
+
+    /**
+     * Discards any partially received event and prepares the parser for a new stream.
+     * The last event id is kept , as it is needed to resume the stream , the id of the discarded event is not
+     */
+    public void reset() {
+        if (streaming) {
+            streaming = false;
+            streamer.onEventAborted();
+        }
+        state = LINE_START;
+        bomIndex = 0;
+        skipLf = false;
+        valueLength = 0;
+        clearEvent();
+    }
+
+    /**
+     * Sets who takes the data of chosen events while they arrive. Set it before the parser is fed
+     * @param streamer {@link Streamer Streamer} , null to hand every event to the listener complete
+     */
+    public void setStreamer(Streamer streamer) {
+        this.streamer = streamer;
+    }
+
+    /**
+     * @return String the last event id buffer , empty if the stream did not send any
+     */
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * @return boolean true if the event being dispatched , or streamed , had an id field of its own.
+     * Otherwise the last event id it is given is the one of an event before it
+     */
+    public boolean hasEventId() {
+        return hasId;
+    }
+
+    /**
+     * Sets the last event id buffer , eg. when resuming a stream that was received before
+     * @param lastEventId String
+     */
+    public void setLastEventId(String lastEventId) {
+        this.lastEventId = lastEventId == null ? "" : lastEventId;
+    }
+
+
+    private int resolveField() {
+        if (matchesName(FIELD_DATA))
+            return DATA;
+        if (matchesName(FIELD_EVENT))
+            return EVENT;
+        if (matchesName(FIELD_ID))
+            return ID;
+        if (matchesName(FIELD_RETRY))
+            return RETRY;
+        return FIELD_UNKNOWN;
+    }
+
+    private boolean matchesName(byte[] fieldName) {
+        if (nameLength != fieldName.length)
+            return false;
+        for (int i = 0; i < nameLength; i++) {
+            if (name[i] != fieldName[i])
+                return false;
+        }
+        return true;
+    }
+
+    private void beginValue() {
+        if (field == DATA) {
+            // data lines are joined with a LF
+            if (hasData) {
+                if (streaming)
+                    streamer.onEventData(LF, 0, 1);
+                else
+                    appendData((byte) '\n');
+            } else if (streamer != null) {
+                streaming = streamer.onEventStart(eventName);
+            }
+            hasData = true;
+        } else {
+            valueLength = 0;
+        }
+    }
+
+    private void appendValue(byte[] buffer, int offset, int length) {
+        if (length == 0)
+            return;
+
+        if (field == DATA && streaming) {
+            // straight from the chunk we were fed , the data is never buffered
+            streamer.onEventData(buffer, offset, length);
+        } else if (field == DATA) {
+            ensureDataCapacity(dataLength + length);
+            System.arraycopy(buffer, offset, data, dataLength, length);
+            dataLength += length;
+        } else {
+            if (valueLength + length > value.length)
+                value = grow(value, valueLength + length);
+            System.arraycopy(buffer, offset, value, valueLength, length);
+            valueLength += length;
+        }
+    }
+
+    private void appendData(byte b) {
+        ensureDataCapacity(dataLength + 1);
+        data[dataLength++] = b;
+    }
+
+    private void ensureDataCapacity(int capacity) {
+        if (capacity > data.length)
+            data = grow(data, capacity);
+    }
+
+    private void endValue() {
+        switch (field) {
+            case EVENT:
+                eventName = valueLength == 0 ? null : decodeEventName();
+                break;
+            case ID:
+                // ids that contain NULL are ignored
+                for (int i = 0; i < valueLength; i++) {
+                    if (value[i] == 0)
+                        return;
+                }
+                pendingId = valueLength == 0 ? "" : new String(value, 0, valueLength, UTF_8);
+                hasId = true;
+                break;
+            case RETRY:
+                if (valueLength == 0)
+                    return;
+                long reconnectionTime = 0;
+                for (int i = 0; i < valueLength; i++) {
+                    byte b = value[i];
+                    if (b < '0' || b > '9')
+                        return;
+                    if (reconnectionTime < Long.MAX_VALUE / 10)
+                        reconnectionTime = reconnectionTime * 10 + (b - '0');
+                    else
+                        reconnectionTime = Long.MAX_VALUE;
+                }
+                listener.onRetry(reconnectionTime);
+                break;
+        }
+    }
+
+    private String decodeEventName() {
+        boolean same = cachedNameBytes.length == valueLength;
+        for (int i = 0; same && i < valueLength; i++)
+            same = cachedNameBytes[i] == value[i];
+
+        if (!same) {
+            cachedNameBytes = new byte[valueLength];
+            System.arraycopy(value, 0, cachedNameBytes, 0, valueLength);
+            cachedName = new String(value, 0, valueLength, UTF_8);
+        }
+        return cachedName;
+    }
+
+    private void endLine(byte b) {
+        state = LINE_START;
+        skipLf = b == '\r';
+    }
+
+    private void dispatchEvent() {
+        if (hasId)
+            lastEventId = pendingId;
+        if (streaming) {
+            streaming = false;
+            try {
+                streamer.onEventEnd(lastEventId);
+            } finally {
+                clearEvent();
+            }
+        } else if (hasData) {
+            // the buffer is handed out as it is , so it is cleared only after the listener is done with it
+            try {
+                listener.onEvent(eventName, data, dataLength, lastEventId);
+            } finally {
+                clearEvent();
+            }
+        } else {
+            clearEvent();
+        }
+    }
+
+    private void clearEvent() {
+        hasData = false;
+        hasId = false;
+        pendingId = "";
+        dataLength = 0;
+        eventName = null;
+        if (data.length > MAX_RETAINED_BUFFER)
+            data = new byte[INITIAL_DATA_BUFFER];
+    }
+
+    static byte[] grow(byte[] buffer, int minCapacity) {
+        int capacity = buffer.length * 2;
+        if (capacity < minCapacity)
+            capacity = minCapacity;
+        byte[] grown = new byte[capacity];
+        System.arraycopy(buffer, 0, grown, 0, buffer.length);
+        return grown;
+    }
+}
@@ -0,0 +1,348 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link Transport Transport} that drives the streams of many {@link SSEEventSource event sources}
+ * from a single thread , with non blocking sockets and a {@link Selector Selector}.
+ *
+ * Apps that keep several streams open need one thread for all of them instead of one transport thread each.
+ * Every stream keeps its own parser , listeners and {@link EventLoop event loop} , only the socket work is shared.
+ * All reads go through one direct buffer that belongs to the selector thread.
+ *
+ * It speaks plain HTTP/1.1 ( http urls only , redirects are not followed ).
+ *
+ * eg. <code>new AndSSEEventSource(host, endpoint, port, SelectorTransport.getShared())</code> on Android
+ */
+public final class SelectorTransport implements Transport {
+
+    private static final Logger LOG = Logger.getLogger("AndSSE");
+    private static final int CONNECTION_TIMEOUT = 3000;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private static SelectorTransport sShared;
+
+    /**
+     * @return SelectorTransport the transport shared by the whole app , its thread is started on the first connection
+     */
+    public static synchronized SelectorTransport getShared() {
+        if (sShared == null)
+            sShared = new SelectorTransport();
+        return sShared;
+    }
+
+
+    /**
+     * One connection of a stream. Only the selector thread touches it , apart from the {@link #closed} flag
+     */
+    private final class Connection implements HttpResponseDecoder.Listener {
+
+        final EventStream stream;
+        final HttpResponseDecoder decoder = new HttpResponseDecoder(this);
+
+        SocketChannel channel;
+        ByteBuffer request;
+
+        /**
+         * When the connection must have received its response headers
+         */
+        long deadline;
+        boolean connected = false;
+
+        volatile boolean closed = false;
+
+        /**
+         * Set when a new connection of the stream replaced this one , the stream is not told that this one closed
+         */
+        volatile boolean replaced = false;
+
+        Connection(EventStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void onHeaders(Map<String, String> headers) throws IOException {
+            connected = true;
+            stream.onConnected(headers.get("content-type"), headers.get("content-encoding"));
+        }
+
+        @Override
+        public void onRefused(int status) {
+            stream.onRefused(status);
+        }
+
+        @Override
+        public void onBody(byte[] buffer, int offset, int length) throws IOException {
+            stream.onData(buffer, offset, length);
+        }
+    }
+
+
+    /**
+     * The connection of every stream that is connecting or connected
+     */
+    private final ConcurrentHashMap<EventStream, Connection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Work handed to the selector thread by other threads
+     */
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    /**
+     * On the heap , the parser reads its array without a copy
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    private Selector selector;
+    private Thread thread;
+
+
+    private SelectorTransport() {
+    }
+
+
+    //---------------------------------------//---------------------------------------//
+    //                                    Transport                                    //
+
+    @Override
+    public void connect(final EventStream stream) {
+        // the event loop is the only one that connects a stream , it is marked before it can be seen replaced
+        Connection previous = connections.get(stream);
+        if (previous != null)
+            previous.replaced = true;
+        final Connection connection = new Connection(stream);
+        connections.put(stream, connection);
+        if (previous != null) {
+            stream.abortStreaming();
+            closeLater(previous);
+        }
+
+        final URL url = stream.getUrl();
+        if (!"http".equals(url.getProtocol())) {
+            LOG.severe("SelectorTransport only supports http : " + url);
+            connections.remove(stream, connection);
+            stream.onClosed();
+            return;
+        }
+
+        // resolving the host may block , so it happens on a background thread
+        SSEExecutors.BACKGROUND.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final InetSocketAddress address = new InetSocketAddress(InetAddress.getByName(url.getHost()), HttpRequest.port(url));
+                    submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            open(connection, address);
+                        }
+                    });
+                } catch (IOException e) {
+                    LOG.log(Level.SEVERE, "Could not resolve " + url.getHost(), e);
+                    closeLater(connection);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void disconnect(EventStream stream) {
+        Connection connection = connections.remove(stream);
+        if (connection != null) {
+            stream.abortStreaming();
+            closeLater(connection);
+        }
+    }
+
+    @Override
+    public void release(EventStream stream) {
+        // the thread is shared , there is nothing else to release
+        disconnect(stream);
+    }
+
+    @Override
+    public boolean isShared() {
+        // the selector thread reads every stream , a listener that waited would stop them all
+        return true;
+    }
+
+    //---------------------------------------//---------------------------------------//
+
+
+    private void closeLater(final Connection connection) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                close(connection);
+            }
+        });
+    }
+
+    /**
+     * Hands a task to the selector thread , starting it if needed
+     */
+    private synchronized void submit(Runnable task) {
+        if (thread == null) {
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open a selector", e);
+            }
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    loop();
+                }
+            }, "AndSSE_selector");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+
+    //---------------------------------------//---------------------------------------//
+    //                         Everything below runs on the selector thread             //
+
+    private void loop() {
+        for (;;) {
+            try {
+                selector.select(nextTimeout());
+
+                Runnable task;
+                while ((task = tasks.poll()) != null)
+                    task.run();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+
+                closeTimedOut();
+            } catch (Exception e) {
+                // the loop serves every stream , it must survive whatever happens to one of them
+                LOG.log(Level.SEVERE, "Selector loop", e);
+            }
+        }
+    }
+
+    private void open(Connection connection, InetSocketAddress address) {
+        if (connection.closed)
+            return;
+        try {
+            connection.channel = SocketChannel.open();
+            connection.channel.configureBlocking(false);
+            connection.deadline = System.currentTimeMillis() + CONNECTION_TIMEOUT;
+            connection.request = ByteBuffer.wrap(HttpRequest.build(connection.stream));
+
+            if (connection.channel.connect(address))
+                connection.channel.register(selector, SelectionKey.OP_WRITE, connection);
+            else
+                connection.channel.register(selector, SelectionKey.OP_CONNECT, connection);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Could not connect to " + address, e);
+            close(connection);
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        if (!key.isValid() || connection.closed)
+            return;
+
+        try {
+            if (key.isConnectable()) {
+                if (connection.channel.finishConnect())
+                    key.interestOps(SelectionKey.OP_WRITE);
+            } else if (key.isWritable()) {
+                connection.channel.write(connection.request);
+                if (!connection.request.hasRemaining()) {
+                    connection.request = null;
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                read(connection);
+            }
+        } catch (IOException | RuntimeException e) {
+            // a listener or a decoder that runs on this thread failed too , the stream reconnects instead of staying half read
+            LOG.log(Level.SEVERE, "Connection to " + connection.stream.getUrl() + " failed", e);
+            close(connection);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        readBuffer.clear();
+        int read = connection.channel.read(readBuffer);
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+
+        connection.decoder.feed(readBuffer.array(), 0, read);
+
+        if (connection.decoder.isDone())
+            close(connection);
+    }
+
+    /**
+     * @return long how long the selector may wait before a connection times out , 0 to wait for ever
+     */
+    private long nextTimeout() {
+        long next = Long.MAX_VALUE;
+        for (Connection connection : connections.values()) {
+            if (!connection.connected && connection.channel != null)
+                next = Math.min(next, connection.deadline);
+        }
+        if (next == Long.MAX_VALUE)
+            return 0;
+        return Math.max(1, next - System.currentTimeMillis());
+    }
+
+    private void closeTimedOut() {
+        long now = System.currentTimeMillis();
+        for (Connection connection : connections.values()) {
+            if (!connection.connected && connection.channel != null && now >= connection.deadline) {
+                LOG.severe("Connection to " + connection.stream.getUrl() + " timed out");
+                close(connection);
+            }
+        }
+    }
+
+    /**
+     * Closes the connection and tells its stream , once
+     */
+    private void close(Connection connection) {
+        if (connection.closed)
+            return;
+        connection.closed = true;
+        connections.remove(connection.stream, connection);
+
+        if (connection.channel != null) {
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // this sets the eventsource to CLOSED , unless it already has a new connection
+        if (!connection.replaced)
+            connection.stream.onClosed();
+    }
+}
@@ -0,0 +1,140 @@
+package gr.spiritinlife.andsse;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link EventLoop EventLoop} for a plain JVM , which has no main thread.
+ *
+ * The messages run on the given executor one at a time and in order , like on a Handler's thread ,
+ * but the loop holds no thread of its own while it has nothing to do , so thousands of event sources can share a pool ,
+ * or each use a virtual thread only while it handles a message. Delayed messages wait on the {@link AndSSEScheduler scheduler}.
+ * Other work can be {@link #execute(Runnable) run} on the loop too , in order with the messages , like a Handler's post.
+ */
+final class SerialEventLoop implements EventLoop, Executor {
+
+    private static final Logger LOG = Logger.getLogger("AndSSE");
+
+    /**
+     * More than the {@link EventSource EventSource} constants
+     */
+    private static final int MESSAGES = 16;
+
+    private final class Message implements Runnable {
+        final int what;
+        final int generation;
+
+        Message(int what, int generation) {
+            this.what = what;
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            Target target = SerialEventLoop.this.target;
+            if (target != null && generations.get(what) == generation)
+                target.handle(what);
+        }
+    }
+
+    private final Executor executor;
+    private volatile Target target;
+
+    /**
+     * Moved on by {@link #remove(int) remove} , a message only runs if the generation of its kind did not change since it was sent
+     */
+    private final AtomicIntegerArray generations = new AtomicIntegerArray(MESSAGES);
+
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True while a task that handles the pending messages is on the executor
+     */
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            for (;;) {
+                Runnable task;
+                while ((task = pending.poll()) != null)
+                    runSafely(task);
+
+                running.set(false);
+                // a message may have come in after the last poll , and nobody started a task for it
+                if (pending.isEmpty() || !running.compareAndSet(false, true))
+                    return;
+            }
+        }
+    };
+
+
+    /**
+     * @param executor where the messages run , eg. a pool shared by many loops
+     */
+    SerialEventLoop(Executor executor) {
+        this.executor = executor;
+    }
+
+
+    @Override
+    public void setTarget(Target target) {
+        this.target = target;
+    }
+
+    @Override
+    public void send(int what, long delayMs) {
+        final Message message = new Message(what, generations.get(what));
+        if (delayMs <= 0) {
+            enqueue(message);
+            return;
+        }
+        AndSSEScheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                enqueue(message);
+            }
+        }, delayMs);
+    }
+
+    @Override
+    public void remove(int what) {
+        generations.incrementAndGet(what);
+    }
+
+    /**
+     * Runs the task on the loop , after the messages that were sent before it
+     * @param task Runnable
+     */
+    @Override
+    public void execute(Runnable task) {
+        enqueue(task);
+    }
+
+    private void enqueue(Runnable task) {
+        pending.add(task);
+        if (!running.compareAndSet(false, true))
+            return;
+        try {
+            executor.execute(drain);
+        } catch (RejectedExecutionException e) {
+            // the executor was shut down , the loop drops its messages like a Looper that quit
+            pending.clear();
+            running.set(false);
+        }
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // the loop serves the event source for as long as it lives , one failed task must not stop it
+            LOG.log(Level.SEVERE, "A task of the event loop failed", e);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Incremental decompression of a gzip or deflate response body.
+ *
+ * Unlike an InflaterInputStream it never reads ahead : every chunk that is {@link #feed(byte[], int, int) fed} is inflated
+ * right away and all the output it produces is handed to the {@link Sink Sink} before feed returns.
+ * A server that flushes the compressor after every event ( sync flush ) therefore gets every event parsed as soon as its bytes arrive ,
+ * decompression never waits for a full block.
+ */
+final class StreamInflater {
+
+    /**
+     * Receives the inflated bytes
+     */
+    interface Sink {
+        void onData(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final int OUTPUT_BUFFER_SIZE = 16 * 1024;
+
+    private static final int FTEXT = 1;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    /**
+     * Where we are in the stream
+     */
+    private static final int HEADER = 0;
+    private static final int BODY = 1;
+    private static final int TRAILER = 2;
+    private static final int ZLIB_START = 3;
+    private static final int FINISHED = 4;
+
+    /**
+     * Where we are in a gzip header
+     */
+    private static final int H_ID1 = 0;
+    private static final int H_ID2 = 1;
+    private static final int H_METHOD = 2;
+    private static final int H_FLAGS = 3;
+    private static final int H_FIXED = 4;
+    private static final int H_XLEN = 5;
+    private static final int H_EXTRA = 6;
+    private static final int H_NAME = 7;
+    private static final int H_COMMENT = 8;
+    private static final int H_CRC = 9;
+
+
+    private final boolean gzip;
+    private final Sink sink;
+    private final byte[] output = new byte[OUTPUT_BUFFER_SIZE];
+    private final CRC32 crc = new CRC32();
+    private final byte[] zlibHeader = new byte[2];
+
+    private Inflater inflater;
+    private int state;
+
+    private int headerState;
+    private int flags;
+    private int counter;
+    private int extraLength;
+
+    private long trailer;
+    private long inflatedSize;
+
+
+    /**
+     * @param contentEncoding {@link #GZIP gzip} or {@link #DEFLATE deflate}
+     * @param sink where the inflated bytes go
+     */
+    StreamInflater(String contentEncoding, Sink sink) {
+        this.gzip = GZIP.equals(contentEncoding);
+        this.sink = sink;
+        startMember();
+    }
+
+
+    /**
+     * @param contentEncoding the Content-Encoding of the response
+     * @return boolean true if this class can decode it
+     */
+    static boolean supports(String contentEncoding) {
+        return GZIP.equals(contentEncoding) || DEFLATE.equals(contentEncoding);
+    }
+
+
+    /**
+     * Inflates the next bytes of the body and hands all the output to the sink
+     * @throws IOException if the body is not valid gzip or deflate
+     */
+    void feed(byte[] buffer, int offset, int length) throws IOException {
+        final int end = offset + length;
+        int i = offset;
+
+        while (i < end) {
+            switch (state) {
+                case HEADER:
+                    if (readHeader(buffer[i++]))
+                        state = BODY;
+                    break;
+
+                case ZLIB_START:
+                    // "deflate" should be zlib , but some servers send raw deflate. Wait for both bytes of the zlib header
+                    zlibHeader[counter++] = buffer[i++];
+                    if (counter < 2)
+                        break;
+                    counter = 0;
+                    inflater = new Inflater(!isZlibHeader(zlibHeader[0], zlibHeader[1]));
+                    state = BODY;
+                    if (inflate(zlibHeader, 0, 2) != 0)
+                        throw new IOException("Unexpected data after the deflate stream");
+                    break;
+
+                case BODY:
+                    i = end - inflate(buffer, i, end - i);
+                    break;
+
+                case FINISHED:
+                    throw new IOException("Unexpected data after the deflate stream");
+
+                case TRAILER:
+                    // CRC32 and ISIZE , little endian
+                    trailer |= (long) (buffer[i++] & 0xFF) << (8 * counter);
+                    if (++counter == 8) {
+                        if ((trailer & 0xFFFFFFFFL) != crc.getValue()
+                                || (trailer >>> 32) != (inflatedSize & 0xFFFFFFFFL))
+                            throw new IOException("Corrupt gzip stream");
+                        // another gzip member may follow
+                        startMember();
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Releases the native memory of the inflater
+     */
+    void end() {
+        if (inflater != null)
+            inflater.end();
+    }
+
+
+    /**
+     * @return int how many of the given bytes were not used by the deflate stream
+     */
+    private int inflate(byte[] buffer, int offset, int length) throws IOException {
+        inflater.setInput(buffer, offset, length);
+        try {
+            for (;;) {
+                int inflated = inflater.inflate(output, 0, output.length);
+                if (inflated > 0) {
+                    if (gzip) {
+                        crc.update(output, 0, inflated);
+                        inflatedSize += inflated;
+                    }
+                    sink.onData(output, 0, inflated);
+                } else if (inflater.finished()) {
+                    state = gzip ? TRAILER : FINISHED;
+                    return inflater.getRemaining();
+                } else if (inflater.needsInput()) {
+                    return 0;
+                } else if (inflater.needsDictionary()) {
+                    throw new IOException("Deflate streams with a preset dictionary are not supported");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt " + (gzip ? GZIP : DEFLATE) + " stream", e);
+        }
+    }
+
+    /**
+     * A zlib header is method 8 with a window of at most 32K , and CMF * 256 + FLG is a multiple of 31.
+     * Raw deflate whose first byte looks like a CMF almost never passes the check on the second byte too.
+     */
+    private static boolean isZlibHeader(byte cmf, byte flg) {
+        int header = (cmf & 0xFF) << 8 | (flg & 0xFF);
+        return (cmf & 0x0F) == 8 && (cmf & 0xFF) >> 4 <= 7 && header % 31 == 0;
+    }
+
+    private void startMember() {
+        if (inflater != null)
+            inflater.end();
+        inflater = gzip ? new Inflater(true) : null;
+        state = gzip ? HEADER : ZLIB_START;
+        headerState = H_ID1;
+        counter = 0;
+        trailer = 0;
+        inflatedSize = 0;
+        crc.reset();
+    }
+
+    /**
+     * Reads the gzip header a byte at a time
+     * @return boolean true when the header is complete
+     */
+    private boolean readHeader(byte b) throws IOException {
+        int value = b & 0xFF;
+        switch (headerState) {
+            case H_ID1:
+                if (value != 0x1F)
+                    throw new IOException("Not a gzip stream");
+                headerState = H_ID2;
+                return false;
+            case H_ID2:
+                if (value != 0x8B)
+                    throw new IOException("Not a gzip stream");
+                headerState = H_METHOD;
+                return false;
+            case H_METHOD:
+                if (value != 8)
+                    throw new IOException("Unsupported gzip compression method " + value);
+                headerState = H_FLAGS;
+                return false;
+            case H_FLAGS:
+                flags = value & ~FTEXT;
+                counter = 0;
+                headerState = H_FIXED;
+                return false;
+            case H_FIXED:
+                // MTIME , XFL and OS
+                if (++counter < 6)
+                    return false;
+                counter = 0;
+                extraLength = 0;
+                return nextHeaderField(H_XLEN);
+            case H_XLEN:
+                extraLength |= value << (8 * counter);
+                if (++counter < 2)
+                    return false;
+                counter = 0;
+                return extraLength == 0 ? nextHeaderField(H_NAME) : nextHeaderField(H_EXTRA);
+            case H_EXTRA:
+                if (++counter < extraLength)
+                    return false;
+                counter = 0;
+                return nextHeaderField(H_NAME);
+            case H_NAME:
+                return value == 0 && nextHeaderField(H_COMMENT);
+            case H_COMMENT:
+                return value == 0 && nextHeaderField(H_CRC);
+            case H_CRC:
+                return ++counter == 2 && finishHeader();
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the next optional field of the header that is present
+     * @return boolean true if no optional field is left
+     */
+    private boolean nextHeaderField(int field) {
+        if (field == H_XLEN && (flags & FEXTRA) == 0)
+            field = H_NAME;
+        if (field == H_NAME && (flags & FNAME) == 0)
+            field = H_COMMENT;
+        if (field == H_COMMENT && (flags & FCOMMENT) == 0)
+            field = H_CRC;
+        if (field == H_CRC && (flags & FHCRC) == 0)
+            return finishHeader();
+        headerState = field;
+        counter = 0;
+        return false;
+    }
+
+    private boolean finishHeader() {
+        counter = 0;
+        return true;
+    }
+}
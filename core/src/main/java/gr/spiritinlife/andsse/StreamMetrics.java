@@ -0,0 +1,216 @@
+package gr.spiritinlife.andsse;
+
+import java.util.Locale;
+
+/**
+ * What the pipeline of one event source is doing : what it received , how long parsing and delivering took ,
+ * how full its queue is , what it dropped and how often it reconnected.
+ *
+ * The transport thread and the main thread record into {@link StripedCounter striped counters} and
+ * {@link LatencyHistogram histograms} , which cost a few atomic adds and never allocate.
+ * Read it with {@link SSEEventSource#getMetrics() getMetrics} or have it pushed with
+ * {@link SSEEventSource#setMetricsListener(MetricsListener, long) setMetricsListener}.
+ */
+public final class StreamMetrics {
+
+    /**
+     * The stream whose queue and drops are read when a snapshot is taken
+     */
+    private final EventStream stream;
+
+    /**
+     * Bytes of the response bodies as they came off the wire , before they are inflated
+     */
+    final StripedCounter bytesReceived = new StripedCounter();
+
+    final StripedCounter eventsReceived = new StripedCounter();
+
+    /**
+     * Events skipped on the transport thread because no listener wanted them
+     */
+    final StripedCounter eventsFiltered = new StripedCounter();
+
+    /**
+     * Events skipped on the transport thread because their id was seen lately
+     */
+    final StripedCounter eventsDuplicated = new StripedCounter();
+
+    final StripedCounter reconnectAttempts = new StripedCounter();
+
+    /**
+     * From the moment the bytes that complete an event are handed to the parser , or the previous event was dispatched ,
+     * until the event is parsed
+     */
+    final LatencyHistogram parseTime = new LatencyHistogram();
+
+    /**
+     * From the moment an event is parsed on the transport thread until its main thread listeners are called
+     */
+    final LatencyHistogram deliveryLatency = new LatencyHistogram();
+
+    /**
+     * From the moment a connection is lost until the next one is open
+     */
+    final LatencyHistogram reconnectTime = new LatencyHistogram();
+
+    /**
+     * When the previous snapshot was taken and how many events had been received , for the rate
+     */
+    private long previousSnapshotAt = System.nanoTime();
+    private long previousEvents = 0;
+
+
+    StreamMetrics(EventStream stream) {
+        this.stream = stream;
+    }
+
+
+    /**
+     * Takes a snapshot. The rate of events is measured since the previous snapshot , whoever took it
+     * @return Snapshot
+     */
+    synchronized Snapshot snapshot() {
+        long now = System.nanoTime();
+        long events = eventsReceived.sum();
+        double eventsPerSecond = now == previousSnapshotAt ? 0 : (events - previousEvents) * 1e9 / (now - previousSnapshotAt);
+        previousSnapshotAt = now;
+        previousEvents = events;
+
+        return new Snapshot(bytesReceived.sum(), events, eventsPerSecond,
+                parseTime.snapshot(), deliveryLatency.snapshot(),
+                stream.getQueueDepth(), stream.getDroppedEvents(), stream.getConflatedEvents(), eventsFiltered.sum(), eventsDuplicated.sum(),
+                reconnectAttempts.sum(), reconnectTime.snapshot());
+    }
+
+
+    /**
+     * The metrics of an event source at one moment. It does not change
+     */
+    public static final class Snapshot {
+
+        private final long bytesReceived;
+        private final long eventsReceived;
+        private final double eventsPerSecond;
+        private final LatencyHistogram parseTime;
+        private final LatencyHistogram deliveryLatency;
+        private final int queueDepth;
+        private final long droppedEvents;
+        private final long conflatedEvents;
+        private final long filteredEvents;
+        private final long duplicateEvents;
+        private final long reconnectAttempts;
+        private final LatencyHistogram reconnectTime;
+
+        Snapshot(long bytesReceived, long eventsReceived, double eventsPerSecond,
+                 LatencyHistogram parseTime, LatencyHistogram deliveryLatency,
+                 int queueDepth, long droppedEvents, long conflatedEvents, long filteredEvents, long duplicateEvents,
+                 long reconnectAttempts, LatencyHistogram reconnectTime) {
+            this.bytesReceived = bytesReceived;
+            this.eventsReceived = eventsReceived;
+            this.eventsPerSecond = eventsPerSecond;
+            this.parseTime = parseTime;
+            this.deliveryLatency = deliveryLatency;
+            this.queueDepth = queueDepth;
+            this.droppedEvents = droppedEvents;
+            this.conflatedEvents = conflatedEvents;
+            this.filteredEvents = filteredEvents;
+            this.duplicateEvents = duplicateEvents;
+            this.reconnectAttempts = reconnectAttempts;
+            this.reconnectTime = reconnectTime;
+        }
+
+        /**
+         * @return long the bytes received on the wire , compressed if the stream is compressed
+         */
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        /**
+         * @return long the events parsed , whether they were delivered , dropped , conflated , filtered or duplicates
+         */
+        public long getEventsReceived() {
+            return eventsReceived;
+        }
+
+        /**
+         * @return double the events parsed per second since the previous snapshot
+         */
+        public double getEventsPerSecond() {
+            return eventsPerSecond;
+        }
+
+        /**
+         * @return LatencyHistogram how long the parser took per event
+         */
+        public LatencyHistogram getParseTime() {
+            return parseTime;
+        }
+
+        /**
+         * @return LatencyHistogram how long events took from the transport thread to the main thread listeners
+         */
+        public LatencyHistogram getDeliveryLatency() {
+            return deliveryLatency;
+        }
+
+        /**
+         * @return int how many events were waiting for the main thread
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return long the events the {@link OverflowPolicy OverflowPolicy} dropped
+         */
+        public long getDroppedEvents() {
+            return droppedEvents;
+        }
+
+        /**
+         * @return long the events replaced by a newer one of the same {@link ConflationKey key}
+         */
+        public long getConflatedEvents() {
+            return conflatedEvents;
+        }
+
+        /**
+         * @return long the events skipped before they were built , because no listener wanted their name
+         */
+        public long getFilteredEvents() {
+            return filteredEvents;
+        }
+
+        /**
+         * @return long the events skipped because their id was one of the latest , eg. sent again when the stream resumed
+         */
+        public long getDuplicateEvents() {
+            return duplicateEvents;
+        }
+
+        /**
+         * @return long how many times the event source tried to reconnect
+         */
+        public long getReconnectAttempts() {
+            return reconnectAttempts;
+        }
+
+        /**
+         * @return LatencyHistogram how long it took to be connected again after the connection was lost ,
+         * its count is the number of successful reconnections
+         */
+        public LatencyHistogram getReconnectTime() {
+            return reconnectTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "bytes=%d events=%d (%.1f/s) queue=%d dropped=%d conflated=%d filtered=%d duplicates=%d reconnects=%d%n" +
+                    "parse [%s]%ndelivery [%s]%nreconnect [%s]",
+                    bytesReceived, eventsReceived, eventsPerSecond, queueDepth, droppedEvents, conflatedEvents, filteredEvents, duplicateEvents, reconnectAttempts,
+                    parseTime, deliveryLatency, reconnectTime);
+        }
+    }
+}
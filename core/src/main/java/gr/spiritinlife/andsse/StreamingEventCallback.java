@@ -0,0 +1,35 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * Gets the data of big events while it arrives , instead of an {@link AndEvent AndEvent} once the whole event is in memory.
+ * See {@link SSEEventSource#addStreamingListener(String, StreamingEventCallback) addStreamingListener}.
+ *
+ * It is called on the transport thread , one event at a time , and the time it takes is time the stream is not read.
+ * To read the data on another thread use an {@link EventInputStream EventInputStream} instead.
+ */
+public interface StreamingEventCallback {
+
+    /**
+     * Called when the data of an event starts
+     * @param eventName String , {@link AndEvent#ON_MESSAGE ON_MESSAGE} for events without a name
+     */
+    void onEventStart(String eventName);
+
+    /**
+     * Called with the next bytes of the data , UTF-8 , the data lines joined with LF.
+     * A character may be split between two calls. The buffer is reused when this returns , copy what you need
+     */
+    void onEventData(byte[] data, int offset, int length);
+
+    /**
+     * Called when the event is complete
+     * @param id String the id of the event , empty if none
+     */
+    void onEventEnd(String id);
+
+    /**
+     * Called instead of {@link #onEventEnd(String) onEventEnd} when the connection was lost in the middle of the event.
+     * Whatever was received of it is incomplete , the server may send it again when the stream resumes
+     */
+    void onEventAborted();
+}
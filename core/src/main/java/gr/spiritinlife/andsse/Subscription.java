@@ -0,0 +1,89 @@
+package gr.spiritinlife.andsse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One consumer of a shared {@link SSEEventSource event source} , eg. a screen.
+ *
+ * It is {@link SSEEventSource#attach() attached} when the consumer starts and {@link #detach() detached} when it stops.
+ * Its listeners are the consumer's own and are removed with it , the connection stays open as long as any consumer is
+ * attached and for the {@link SSEEventSource#setGracePeriod(long) grace period} after the last one left ,
+ * so a screen that replaces another , or is rotated , finds the connection still there.
+ */
+public final class Subscription {
+
+    private static final class Listener {
+        final String eventName;
+        final IEventCallback callback;
+
+        Listener(String eventName, IEventCallback callback) {
+            this.eventName = eventName;
+            this.callback = callback;
+        }
+    }
+
+    private final SSEEventSource source;
+    private final List<Listener> listeners = new ArrayList<>();
+    private final AtomicBoolean detached = new AtomicBoolean();
+
+
+    Subscription(SSEEventSource source) {
+        this.source = source;
+    }
+
+
+    /**
+     * Adds a listener of this consumer , see {@link SSEEventSource#addEventListener(String, IEventCallback) addEventListener}
+     * @return Subscription this , so the listeners can be chained
+     */
+    public Subscription addEventListener(String eventName, IEventCallback callback) {
+        return addEventListener(eventName, null, callback);
+    }
+
+    /**
+     * Adds a listener of this consumer that runs on the executor ,
+     * see {@link SSEEventSource#addEventListener(String, Executor, IEventCallback) addEventListener}
+     * @return Subscription this , so the listeners can be chained
+     */
+    public Subscription addEventListener(String eventName, Executor executor, IEventCallback callback) {
+        synchronized (listeners) {
+            if (detached.get())
+                throw new IllegalStateException("The subscription is detached");
+            listeners.add(new Listener(eventName, callback));
+            source.addEventListener(eventName, executor, callback);
+        }
+        return this;
+    }
+
+    /**
+     * Removes the listeners of this consumer and lets the event source close the connection
+     * if nobody else is attached when the grace period ends. Detaching twice does nothing
+     */
+    public void detach() {
+        if (!detached.compareAndSet(false, true))
+            return;
+        synchronized (listeners) {
+            for (Listener listener : listeners)
+                source.removeEventListener(listener.eventName, listener.callback);
+            listeners.clear();
+        }
+        source.detach();
+    }
+
+    /**
+     * @return boolean true if the consumer was detached
+     */
+    public boolean isDetached() {
+        return detached.get();
+    }
+
+    /**
+     * @return SSEEventSource the shared event source
+     */
+    public SSEEventSource getEventSource() {
+        return source;
+    }
+}
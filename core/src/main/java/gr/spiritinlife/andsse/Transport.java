@@ -0,0 +1,37 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * Carries the bytes of {@link EventStream EventStreams}.
+ *
+ * AndSSE on Android is a transport with its own thread for a single stream ,
+ * while the {@link SelectorTransport SelectorTransport} drives many streams from one thread.
+ * The methods are called from the {@link EventLoop event loop} and must not block.
+ */
+interface Transport {
+
+    /**
+     * Opens a connection for the stream. The transport calls {@link EventStream#onConnected(String)} when it is up ,
+     * and {@link EventStream#onClosed()} when it is closed or fails. If the server answers with anything but 200 OK it calls
+     * {@link EventStream#onRefused(int)} before the close , so the event source does not reconnect
+     * @param stream {@link EventStream EventStream}
+     */
+    void connect(EventStream stream);
+
+    /**
+     * Closes the connection of the stream , if it has one.
+     * The transport {@link EventStream#abortStreaming() aborts} the streamed event first , as its thread may be waiting for the reader
+     * @param stream {@link EventStream EventStream}
+     */
+    void disconnect(EventStream stream);
+
+    /**
+     * Closes the connection of the stream and releases whatever the transport keeps for it
+     * @param stream {@link EventStream EventStream}
+     */
+    void release(EventStream stream);
+
+    /**
+     * @return boolean true if the thread of the transport serves other streams too , so it must never wait for a listener
+     */
+    boolean isShared();
+}
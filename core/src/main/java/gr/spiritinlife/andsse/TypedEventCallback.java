@@ -0,0 +1,28 @@
+package gr.spiritinlife.andsse;
+
+/**
+ * An {@link IEventCallback IEventCallback} that receives the object a {@link PayloadDecoder PayloadDecoder} made from the event's data.
+ *
+ * It is added like any other callback , with {@link SSEEventSource#addEventListener(String, IEventCallback) addEventListener}.
+ * Events that have no decoded object , because no decoder is registered for their name or because decoding failed , are skipped.
+ *
+ * @param <T> the type the decoder of the event returns
+ */
+public abstract class TypedEventCallback<T> implements IEventCallback {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final void onEvent(AndEvent event) {
+        Object payload = event.getPayload();
+        if (payload != null)
+            onEvent(event, (T) payload);
+    }
+
+    /**
+     * Called when an event with a decoded object arrives.
+     * The event is recycled when this returns , the object is not touched by the library and can be kept
+     * @param event {@link AndEvent AndEvent}
+     * @param payload the object the decoder made
+     */
+    public abstract void onEvent(AndEvent event, T payload);
+}
@@ -0,0 +1,72 @@
+package gr.spiritinlife.andsse;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import junit.framework.TestCase;
+
+public class AndEventTest extends TestCase {
+
+    private static AndEvent obtain(String data) {
+        byte[] bytes = ("xx" + data).getBytes(SSEParser.UTF_8);
+        AndEvent event = AndEvent.obtain();
+        event.setEventData(bytes, 2, bytes.length - 2);
+        return event;
+    }
+
+    public void testWhitespaceIsKept() {
+        AndEvent event = obtain("  indented\n\ttabbed \n");
+        assertEquals("  indented\n\ttabbed \n", event.getData());
+        event.recycle();
+
+        AndEvent fromString = new AndEvent();
+        fromString.setEventData(" padded ");
+        assertEquals(" padded ", fromString.getData());
+    }
+
+    public void testRawDataIsReadOnlyView() {
+        AndEvent event = obtain("\u03BA\u03CC\u03C3\u03BC\u03B5");
+        ByteBuffer raw = event.getRawData();
+        assertEquals(10, raw.remaining());
+        assertEquals(10, event.getDataLength());
+        assertEquals((byte) 0xCE, raw.get(0));
+        try {
+            raw.put(0, (byte) 0);
+            fail("the raw data must be read only");
+        } catch (ReadOnlyBufferException expected) {
+        }
+        assertEquals("\u03BA\u03CC\u03C3\u03BC\u03B5", event.getData());
+        event.recycle();
+    }
+
+    public void testRawDataOfStringData() {
+        AndEvent event = new AndEvent();
+        event.setEventData("\u20AC");
+        ByteBuffer raw = event.getRawData();
+        byte[] bytes = new byte[raw.remaining()];
+        raw.get(bytes);
+        assertEquals("\u20AC", new String(bytes, SSEParser.UTF_8));
+    }
+
+    public void testPooledEventDoesNotLeakData() {
+        AndEvent event = obtain("a longer payload");
+        event.setId("7");
+        event.recycle();
+
+        AndEvent next = obtain("b");
+        assertEquals("b", next.getData());
+        assertEquals(1, next.getRawData().remaining());
+        assertNull(next.getId());
+        assertEquals(AndEvent.ON_MESSAGE, next.getEventName());
+        next.recycle();
+    }
+
+    public void testCopyOutlivesRecycle() {
+        AndEvent event = obtain("kept");
+        AndEvent copy = event.copy();
+        event.recycle();
+        obtain("overwritten").recycle();
+
+        assertEquals("kept", copy.getData());
+        assertEquals(4, copy.getDataLength());
+    }
+}
@@ -0,0 +1,78 @@
+package gr.spiritinlife.andsse;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import junit.framework.TestCase;
+
+public class DeduplicationTest extends TestCase {
+
+    private StreamFixture fixture;
+    private EventStream stream;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        fixture = new StreamFixture();
+        stream = fixture.stream;
+    }
+
+    public void testReplayedEventsAreSkipped() throws Exception {
+        stream.setDeduplication(16);
+        fixture.feed("id: 1\ndata: a\n\nid: 2\ndata: b\n\nid: 3\ndata: c\n\n");
+        assertEquals("[1|a, 2|b, 3|c]", fixture.drain(StreamFixture.ID_DATA).toString());
+
+        // the server resumes with a window of events we already had
+        stream.onClosed();
+        stream.onConnected(null);
+        fixture.feed("id: 2\ndata: b\n\nid: 3\ndata: c\n\nid: 4\ndata: d\n\n");
+
+        assertEquals("[4|d]", fixture.drain(StreamFixture.ID_DATA).toString());
+        assertEquals(2, stream.getMetrics().snapshot().getDuplicateEvents());
+    }
+
+    public void testEventsWithoutIdAreNeverSkipped() throws Exception {
+        stream.setDeduplication(16);
+        // the second and third events carry the id of the first , but not an id field of their own
+        fixture.feed("id: 1\ndata: a\n\ndata: b\n\ndata: c\n\n");
+
+        assertEquals("[1|a, 1|b, 1|c]", fixture.drain(StreamFixture.ID_DATA).toString());
+    }
+
+    public void testOldestIdsAreForgotten() throws Exception {
+        stream.setDeduplication(2);
+        fixture.feed("id: 1\ndata: a\n\nid: 2\ndata: b\n\nid: 3\ndata: c\n\nid: 1\ndata: a\n\nid: 3\ndata: c\n\n");
+
+        assertEquals("[1|a, 2|b, 3|c, 1|a]", fixture.drain(StreamFixture.ID_DATA).toString());
+    }
+
+    public void testOffByDefault() throws Exception {
+        fixture.feed("id: 1\ndata: a\n\nid: 1\ndata: a\n\n");
+
+        assertEquals("[1|a, 1|a]", fixture.drain(StreamFixture.ID_DATA).toString());
+    }
+
+    /**
+     * The table must agree with a plain set of the latest ids , whatever the collisions and removals
+     */
+    public void testAgreesWithASetOfTheLatestIds() {
+        EventDeduplicator deduplicator = new EventDeduplicator(100);
+        ArrayDeque<String> latest = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            String id = Integer.toString(random.nextInt(300));
+            boolean expected = seen.contains(id);
+            assertEquals("event " + i + " id " + id, expected, deduplicator.isDuplicate(id));
+            if (!expected) {
+                latest.add(id);
+                seen.add(id);
+                if (latest.size() > 100)
+                    seen.remove(latest.poll());
+            }
+        }
+        assertEquals(100, deduplicator.size());
+    }
+}
@@ -0,0 +1,98 @@
+package gr.spiritinlife.andsse;
+
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class DispatchPriorityTest extends TestCase {
+
+    private EventStream stream;
+
+    /**
+     * Remembers the delays of the messages the stream sends , the test drains the stream itself
+     */
+    private static class RecordingLoop implements EventLoop {
+        final List<Long> delays = new ArrayList<>();
+
+        @Override
+        public void setTarget(Target target) {
+        }
+
+        @Override
+        public void send(int what, long delayMs) {
+            delays.add(delayMs);
+        }
+
+        @Override
+        public void remove(int what) {
+        }
+    }
+
+    private RecordingLoop loop;
+    private StreamFixture fixture;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        loop = new RecordingLoop();
+        fixture = new StreamFixture(loop, new ListenerRegistry());
+        stream = fixture.stream;
+    }
+
+    private void feed(String name, int times) throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < times; i++)
+            text.append("event: ").append(name).append("\ndata: ").append(i).append("\n\n");
+        fixture.feed(text.toString());
+    }
+
+    public void testHigherPrioritiesGoFirst() throws Exception {
+        stream.setPriority("session-revoked", DispatchPriority.HIGH);
+        stream.setPriority("telemetry", DispatchPriority.LOW);
+
+        feed("telemetry", 2);
+        feed("quote", 2);
+        feed("session-revoked", 1);
+        feed("telemetry", 1);
+
+        assertEquals("[session-revoked, quote, quote, telemetry, telemetry, telemetry]", fixture.drainAll(StreamFixture.NAME).toString());
+        assertEquals(0, stream.getQueueDepth());
+    }
+
+    public void testLowerPrioritiesAreNotStarved() throws Exception {
+        stream.setPriority("session-revoked", DispatchPriority.HIGH);
+        stream.setPriority("telemetry", DispatchPriority.LOW);
+
+        feed("telemetry", 2);
+        feed("quote", 2);
+        feed("session-revoked", 3 * EventStream.STARVATION_LIMIT);
+
+        List<String> names = fixture.drainAll(StreamFixture.NAME);
+        // after every streak of high events one waiting lower event goes , the lower queues take turns
+        assertEquals("telemetry", names.get(EventStream.STARVATION_LIMIT));
+        assertEquals("quote", names.get(2 * EventStream.STARVATION_LIMIT + 1));
+        assertEquals("telemetry", names.get(3 * EventStream.STARVATION_LIMIT + 2));
+        assertEquals("quote", names.get(names.size() - 1));
+        assertEquals(3 * EventStream.STARVATION_LIMIT + 4, names.size());
+    }
+
+    public void testHighPriorityDoesNotWaitForTheBatchWindow() throws Exception {
+        stream.setBatching(64, 5000);
+        stream.setPriority("session-revoked", DispatchPriority.HIGH);
+
+        feed("quote", 1);
+        feed("session-revoked", 1);
+
+        assertEquals("[5000, 0]", loop.delays.subList(1, loop.delays.size()).toString());
+    }
+
+    public void testPriorityCanBeReset() throws Exception {
+        stream.setPriority("telemetry", DispatchPriority.LOW);
+        stream.setPriority("telemetry", null);
+
+        feed("telemetry", 1);
+        feed("quote", 1);
+
+        assertEquals("[telemetry, quote]", fixture.drainAll(StreamFixture.NAME).toString());
+    }
+}
@@ -0,0 +1,71 @@
+package gr.spiritinlife.andsse;
+
+import junit.framework.TestCase;
+
+public class EventConflaterTest extends TestCase {
+
+    private StreamFixture fixture;
+    private EventStream stream;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        fixture = new StreamFixture();
+        stream = fixture.stream;
+    }
+
+    public void testNewestEventOfTheNameWins() throws Exception {
+        stream.setConflation("mouse", ConflationKey.EVENT_NAME);
+        fixture.feed("event: mouse\ndata: 1,1\n\nevent: mouse\ndata: 2,2\n\nevent: click\ndata: a\n\nevent: mouse\ndata: 3,3\n\n");
+
+        // the queue first , then the newest event of every key
+        assertEquals("[click|a, mouse|3,3]", fixture.drain().toString());
+        assertEquals(2, stream.getConflatedEvents());
+
+        fixture.feed("event: mouse\ndata: 4,4\n\n");
+        assertEquals("[mouse|4,4]", fixture.drain().toString());
+        assertEquals("[]", fixture.drain().toString());
+    }
+
+    public void testKeysKeepTheOrderTheyFirstArrived() throws Exception {
+        stream.setConflation("quote", new ConflationKey() {
+            @Override
+            public Object keyOf(AndEvent event) {
+                String data = event.getData();
+                return data.substring(0, data.indexOf('='));
+            }
+        });
+        fixture.feed("event: quote\ndata: B=1\n\nevent: quote\ndata: A=1\n\nevent: quote\ndata: B=2\n\nevent: quote\ndata: A=2\n\nevent: quote\ndata: C=1\n\n");
+
+        assertEquals("[quote|B=2, quote|A=2, quote|C=1]", fixture.drain().toString());
+        assertEquals(2, stream.getConflatedEvents());
+    }
+
+    public void testIdKeySkipsEventsWithoutId() throws Exception {
+        stream.setConflation(AndEvent.ON_MESSAGE, ConflationKey.ID);
+        fixture.feed("data: no id\n\ndata: no id either\n\nid: 7\ndata: first\n\nid: 7\ndata: second\n\n");
+
+        String m = AndEvent.ON_MESSAGE + "|";
+        assertEquals("[" + m + "no id, " + m + "no id either, " + m + "second]", fixture.drain().toString());
+        assertEquals(1, stream.getConflatedEvents());
+    }
+
+    public void testIdKeySkipsEventsThatInheritTheirId() throws Exception {
+        stream.setConflation(AndEvent.ON_MESSAGE, ConflationKey.ID);
+        fixture.feed("id: 7\ndata: first\n\ndata: after 7\n\ndata: after 7 again\n\n");
+
+        // the last two carry id 7 , but they are different events and they are queued , not conflated
+        String m = AndEvent.ON_MESSAGE + "|";
+        assertEquals("[" + m + "after 7, " + m + "after 7 again, " + m + "first]", fixture.drain().toString());
+        assertEquals(0, stream.getConflatedEvents());
+    }
+
+    public void testConflationCanBeTurnedOff() throws Exception {
+        stream.setConflation("mouse", ConflationKey.EVENT_NAME);
+        stream.setConflation("mouse", null);
+        fixture.feed("event: mouse\ndata: 1\n\nevent: mouse\ndata: 2\n\n");
+
+        assertEquals("[mouse|1, mouse|2]", fixture.drain().toString());
+        assertEquals(0, stream.getConflatedEvents());
+    }
+}
@@ -0,0 +1,113 @@
+package gr.spiritinlife.andsse;
+
+import java.io.File;
+import junit.framework.TestCase;
+
+public class EventFilterTest extends TestCase {
+
+    private StreamFixture fixture;
+    private EventStream stream;
+    private ListenerRegistry subscriptions;
+    private ListenerRegistry executorListeners;
+
+    private static final IEventCallback NOBODY = new IEventCallback() {
+        @Override
+        public void onEvent(AndEvent event) {
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        subscriptions = new ListenerRegistry();
+        executorListeners = new ListenerRegistry();
+        fixture = new StreamFixture(new SerialEventLoop(SSEExecutors.DIRECT), executorListeners);
+        stream = fixture.stream;
+        stream.setSubscriptions(subscriptions);
+    }
+
+    public void testOnlySubscribedNamesAreDispatched() throws Exception {
+        subscriptions.add("quote", NOBODY);
+        fixture.feed("event: quote\ndata: 1\n\nevent: trade\ndata: 2\n\ndata: 3\n\nevent: quote\ndata: 4\n\n");
+
+        assertEquals("[quote|1, quote|4]", fixture.drain().toString());
+        StreamMetrics.Snapshot snapshot = stream.getMetrics().snapshot();
+        assertEquals(4, snapshot.getEventsReceived());
+        assertEquals(2, snapshot.getFilteredEvents());
+    }
+
+    public void testPrefixesAndExecutorListenersSubscribe() throws Exception {
+        final StringBuilder executed = new StringBuilder();
+        subscriptions.add("order.*", NOBODY);
+        executorListeners.add(AndEvent.ON_MESSAGE, new IEventCallback() {
+            @Override
+            public void onEvent(AndEvent event) {
+                executed.append(event.getData());
+            }
+        });
+        fixture.feed("event: order.new\ndata: 1\n\nevent: trade\ndata: 2\n\ndata: 3\n\n");
+
+        assertEquals("[order.new|1]", fixture.drain().toString());
+        assertEquals("3", executed.toString());
+        assertEquals(1, stream.getMetrics().snapshot().getFilteredEvents());
+    }
+
+    public void testEventsOnlyExecutorListenersWantAreNotQueued() throws Exception {
+        final StringBuilder executed = new StringBuilder();
+        executorListeners.add("quote", new IEventCallback() {
+            @Override
+            public void onEvent(AndEvent event) {
+                executed.append(event.getData());
+            }
+        });
+        fixture.feed("id: 1\nevent: quote\ndata: a\n\nid: 2\nevent: quote\ndata: b\n\n");
+
+        assertEquals("ab", executed.toString());
+        assertEquals(0, stream.getQueueDepth());
+        assertEquals("[]", fixture.drain().toString());
+        assertEquals(0, stream.getMetrics().snapshot().getFilteredEvents());
+    }
+
+    public void testNamesSubscribedLaterAreDispatchedFromThenOn() throws Exception {
+        fixture.feed("event: quote\ndata: 1\n\n");
+        assertEquals("[]", fixture.drain().toString());
+
+        subscriptions.add("quote", NOBODY);
+        fixture.feed("event: quote\ndata: 2\n\n");
+        assertEquals("[quote|2]", fixture.drain().toString());
+
+        subscriptions.remove("quote", NOBODY);
+        fixture.feed("event: quote\ndata: 3\n\n");
+        assertEquals("[]", fixture.drain().toString());
+    }
+
+    public void testEverythingIsDispatchedWithoutSubscriptions() throws Exception {
+        stream.setSubscriptions(null);
+        fixture.feed("event: quote\ndata: 1\n\nevent: trade\ndata: 2\n\n");
+
+        assertEquals("[quote|1, trade|2]", fixture.drain().toString());
+        assertEquals(0, stream.getMetrics().snapshot().getFilteredEvents());
+    }
+
+    public void testSkippedEventsAreJournaledAndResumedAfter() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "EventFilterTest_" + System.nanoTime());
+        EventJournal journal = new EventJournal(directory, 64 * 1024, 60000, 4);
+        try {
+            stream.setJournal(journal);
+            subscriptions.add("quote", NOBODY);
+            fixture.feed("id: 1\nevent: quote\ndata: 1\n\nid: 2\nevent: trade\ndata: 2\n\n");
+
+            assertEquals("[quote|1]", fixture.drain().toString());
+            assertEquals("2", journal.getLastEventId());
+            assertEquals("2", stream.getRequestHeaders().get("Last-Event-ID"));
+        } finally {
+            journal.close();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files)
+                    file.delete();
+            }
+            directory.delete();
+        }
+    }
+}
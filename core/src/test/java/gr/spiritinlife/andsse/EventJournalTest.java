@@ -0,0 +1,183 @@
+package gr.spiritinlife.andsse;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class EventJournalTest extends TestCase {
+
+    private File directory;
+
+    /**
+     * Collects replayed events as "name|data|id" strings
+     */
+    private static class Recorder implements IEventCallback {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onEvent(AndEvent event) {
+            events.add(event.getEventName() + "|" + event.getData() + "|" + event.getId());
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = new File(System.getProperty("java.io.tmpdir"), "EventJournalTest_" + System.nanoTime());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files)
+                file.delete();
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    private static void append(EventJournal journal, String name, String data, String id) {
+        AndEvent event = AndEvent.obtain();
+        event.setEventName(name);
+        byte[] bytes = data.getBytes(SSEParser.UTF_8);
+        event.setEventData(bytes, 0, bytes.length);
+        event.setId(id);
+        journal.append(event);
+        event.recycle();
+    }
+
+    private int segmentFiles() {
+        int count = 0;
+        for (String name : directory.list()) {
+            if (name.endsWith(".journal"))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Waits for the background thread to prepare the spare and delete old segments
+     */
+    private int segmentFilesAfterRotation(int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && segmentFiles() != expected; i++)
+            Thread.sleep(10);
+        return segmentFiles();
+    }
+
+    public void testLastEventIdSurvivesReopen() throws Exception {
+        EventJournal journal = new EventJournal(directory, 64 * 1024, 60000, 4);
+        assertEquals("", journal.getLastEventId());
+        append(journal, "tick", "1", "a");
+        append(journal, "tick", "2", "b");
+        assertEquals("b", journal.getLastEventId());
+        journal.close();
+
+        EventJournal reopened = new EventJournal(directory, 64 * 1024, 60000, 4);
+        assertEquals("b", reopened.getLastEventId());
+        append(reopened, "tick", "3", "c");
+
+        Recorder recorder = new Recorder();
+        assertEquals(3, reopened.replay(null, recorder));
+        assertEquals("tick|1|a", recorder.events.get(0));
+        assertEquals("tick|3|c", recorder.events.get(2));
+        reopened.close();
+    }
+
+    public void testReplayAfterId() throws Exception {
+        EventJournal journal = new EventJournal(directory, 64 * 1024, 60000, 4);
+        append(journal, AndEvent.ON_MESSAGE, "  spaced  ", "1");
+        append(journal, "quote", "{\"p\":2}", "2");
+        append(journal, "quote", "no id of its own", "2");
+        append(journal, "quote", "\u03BA\u03CC\u03C3\u03BC\u03B5", "3");
+
+        // the event without an id of its own still carries the last id , so replay starts after it
+        Recorder recorder = new Recorder();
+        assertEquals(1, journal.replay("2", recorder));
+        assertEquals("quote|\u03BA\u03CC\u03C3\u03BC\u03B5|3", recorder.events.get(0));
+
+        recorder = new Recorder();
+        assertEquals(3, journal.replay("1", recorder));
+        assertEquals("quote|{\"p\":2}|2", recorder.events.get(0));
+
+        recorder = new Recorder();
+        assertEquals(4, journal.replay("unknown", recorder));
+        assertEquals(AndEvent.ON_MESSAGE + "|  spaced  |1", recorder.events.get(0));
+
+        assertEquals(0, journal.replay("3", new Recorder()));
+        journal.close();
+    }
+
+    public void testRotationBySizeKeepsNewestSegments() throws Exception {
+        // room for a handful of events per segment
+        EventJournal journal = new EventJournal(directory, 256, 60000, 2);
+        for (int i = 0; i < 40; i++)
+            append(journal, "tick", "event number " + i, String.valueOf(i));
+
+        // two segments kept , plus the spare
+        assertEquals(3, segmentFilesAfterRotation(3));
+
+        Recorder recorder = new Recorder();
+        int replayed = journal.replay(null, recorder);
+        assertTrue(replayed > 0 && replayed < 40);
+        assertEquals("tick|event number 39|39", recorder.events.get(replayed - 1));
+        journal.close();
+
+        EventJournal reopened = new EventJournal(directory, 256, 60000, 2);
+        assertEquals("39", reopened.getLastEventId());
+        reopened.close();
+    }
+
+    public void testRotationByAge() throws Exception {
+        EventJournal journal = new EventJournal(directory, 64 * 1024, 50, 4);
+        append(journal, "tick", "old", "1");
+        Thread.sleep(100);
+        append(journal, "tick", "new", "2");
+
+        // the old segment , the new one and the spare
+        assertEquals(3, segmentFilesAfterRotation(3));
+        Recorder recorder = new Recorder();
+        assertEquals(2, journal.replay(null, recorder));
+        journal.close();
+    }
+
+    public void testTornRecordIsNotReadBack() throws Exception {
+        EventJournal journal = new EventJournal(directory, 64 * 1024, 60000, 4);
+        append(journal, "tick", "whole", "1");
+        journal.close();
+
+        // a record whose body was written but whose length was not , like a process that died in the middle of append
+        File segment = null;
+        for (File file : directory.listFiles()) {
+            if (segment == null || file.getName().compareTo(segment.getName()) < 0)
+                segment = file;
+        }
+        RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+        // the segment header , then the first record : 20 bytes of overhead , "tick" , "1" and "whole"
+        raf.seek(16 + 20 + 4 + 1 + 5 + 4);
+        raf.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        raf.close();
+
+        EventJournal reopened = new EventJournal(directory, 64 * 1024, 60000, 4);
+        assertEquals("1", reopened.getLastEventId());
+        Recorder recorder = new Recorder();
+        assertEquals(1, reopened.replay(null, recorder));
+        reopened.close();
+    }
+
+    public void testEventTooBigForSegmentIsSkipped() throws Exception {
+        EventJournal journal = new EventJournal(directory, 256, 60000, 2);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 300; i++)
+            big.append('x');
+        append(journal, "tick", big.toString(), "1");
+        append(journal, "tick", "small", "2");
+
+        Recorder recorder = new Recorder();
+        assertEquals(1, journal.replay(null, recorder));
+        assertEquals("2", journal.getLastEventId());
+        journal.close();
+    }
+}
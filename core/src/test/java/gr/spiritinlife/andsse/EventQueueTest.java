@@ -0,0 +1,151 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class EventQueueTest extends TestCase {
+
+    private static AndEvent event(int i) {
+        AndEvent event = AndEvent.obtain();
+        event.setId(String.valueOf(i));
+        return event;
+    }
+
+    private static List<String> drainIds(EventQueue queue) {
+        List<String> ids = new ArrayList<>();
+        AndEvent event;
+        while ((event = queue.poll()) != null) {
+            ids.add(event.getId());
+            event.recycle();
+        }
+        return ids;
+    }
+
+    public void testCapacityIsRoundedToPowerOfTwo() {
+        EventQueue queue = new EventQueue(3, OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 10; i++)
+            queue.offer(event(i));
+        assertEquals(4, queue.size());
+        assertEquals(6, queue.getDropped());
+    }
+
+    public void testDropNewestKeepsWaitingEvents() {
+        EventQueue queue = new EventQueue(4, OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 6; i++)
+            assertTrue(queue.offer(event(i)));
+        assertEquals("[0, 1, 2, 3]", drainIds(queue).toString());
+        assertEquals(2, queue.getDropped());
+    }
+
+    public void testDropOldestKeepsNewestEvents() {
+        EventQueue queue = new EventQueue(4, OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 6; i++)
+            assertTrue(queue.offer(event(i)));
+        assertEquals("[2, 3, 4, 5]", drainIds(queue).toString());
+        assertEquals(2, queue.getDropped());
+    }
+
+    public void testFailRejects() {
+        EventQueue queue = new EventQueue(2, OverflowPolicy.FAIL);
+        assertTrue(queue.offer(event(0)));
+        assertTrue(queue.offer(event(1)));
+        assertFalse(queue.offer(event(2)));
+        assertEquals(1, queue.getDropped());
+        assertEquals("[0, 1]", drainIds(queue).toString());
+    }
+
+    public void testClearRecyclesEvents() {
+        EventQueue queue = new EventQueue(4, OverflowPolicy.BLOCK);
+        queue.offer(event(0));
+        queue.offer(event(1));
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertNull(queue.poll());
+    }
+
+    /**
+     * A fast producer and a slow consumer on two threads : nothing is lost or reordered with BLOCK ,
+     * the newest events survive with DROP_OLDEST , and the queue never holds more than its capacity
+     */
+    public void testSlowConsumer() throws Exception {
+        for (final OverflowPolicy policy : new OverflowPolicy[]{OverflowPolicy.BLOCK, OverflowPolicy.DROP_OLDEST, OverflowPolicy.DROP_NEWEST}) {
+            final int events = 20000;
+            final EventQueue queue = new EventQueue(64, policy);
+            final int[] maxSize = {0};
+
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < events; i++) {
+                        queue.offer(event(i));
+                        maxSize[0] = Math.max(maxSize[0], queue.size());
+                    }
+                }
+            });
+            producer.start();
+
+            List<Integer> received = new ArrayList<>();
+            for (;;) {
+                AndEvent event = queue.poll();
+                if (event == null) {
+                    if (!producer.isAlive() && queue.size() == 0)
+                        break;
+                    Thread.yield();
+                    continue;
+                }
+                int id = Integer.parseInt(event.getId());
+                event.recycle();
+                received.add(id);
+                // the consumer is slower than the producer
+                if (received.size() % 100 == 0)
+                    Thread.sleep(1);
+            }
+            producer.join();
+
+            for (int i = 1; i < received.size(); i++)
+                assertTrue(policy + " reordered events", received.get(i) > received.get(i - 1));
+            assertTrue(maxSize[0] <= 64);
+            assertEquals(policy.toString(), events, received.size() + queue.getDropped());
+
+            if (policy == OverflowPolicy.BLOCK)
+                assertEquals(0, queue.getDropped());
+            else
+                assertTrue(queue.getDropped() > 0);
+            if (policy == OverflowPolicy.DROP_OLDEST)
+                assertEquals(events - 1, (int) received.get(received.size() - 1));
+        }
+    }
+
+    /**
+     * With FAIL the stream closes the connection and resumes after the last event that was queued
+     */
+    public void testFailClosesStreamAndResumesAfterLastQueuedEvent() throws Exception {
+        // nobody drains the queue , like a main thread that is stuck
+        EventStream stream = new EventStream(new URL("http://127.0.0.1/events"), new SerialEventLoop(SSEExecutors.DIRECT), new ListenerRegistry());
+        stream.setQueue(2, OverflowPolicy.FAIL);
+        stream.onConnected(null);
+
+        byte[] bytes = "id: 1\ndata: a\n\nid: 2\ndata: b\n\nid: 3\ndata: c\n\nid: 4\ndata: d\n\n".getBytes(SSEParser.UTF_8);
+        try {
+            stream.onData(bytes, 0, bytes.length);
+            fail("a full queue must fail the stream");
+        } catch (IOException expected) {
+        }
+
+        assertEquals(1, stream.getDroppedEvents());
+        assertEquals("2", stream.getRequestHeaders().get("Last-Event-ID"));
+    }
+
+    public void testSharedTransportDoesNotBlock() throws Exception {
+        SSEEventSource source = new SSEEventSource(new URL("http://127.0.0.1/events"), new SerialEventLoop(SSEExecutors.DIRECT), SelectorTransport.getShared());
+        try {
+            source.setDispatchQueue(16, OverflowPolicy.BLOCK);
+            fail("one slow event loop would stop every stream of the transport");
+        } catch (IllegalArgumentException expected) {
+        }
+        source.setDispatchQueue(16, OverflowPolicy.DROP_OLDEST);
+    }
+}
@@ -0,0 +1,144 @@
+package gr.spiritinlife.andsse;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ * Runs an event source against two {@link StandInServer stand-in servers} that serve the same stream
+ */
+public class FailoverTest extends TestCase {
+
+    private static final long TIMEOUT = 10000;
+
+    private ExecutorService loopThread;
+    private StandInServer first;
+    private StandInServer second;
+    private SSEEventSource source;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        loopThread = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (source != null) {
+            loopThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    source.destroy();
+                }
+            });
+        }
+        if (first != null)
+            first.close();
+        if (second != null)
+            second.close();
+        loopThread.shutdown();
+        super.tearDown();
+    }
+
+    private LoadDriver start(StandInServer.Script firstScript, StandInServer.Script secondScript, int expected) throws Exception {
+        first = new StandInServer(firstScript);
+        second = new StandInServer(secondScript);
+        source = new SSEEventSource(Arrays.asList(first.getUrl("/events"), second.getUrl("/events")),
+                new SerialEventLoop(loopThread), SelectorTransport.getShared());
+        // a reconnection to the same server would take longer than the test
+        source.setReconnectPolicy(new ReconnectPolicy(60000, 60000, 1, 60000));
+        LoadDriver driver = new LoadDriver(expected);
+        source.addEventListener("*", driver);
+        return driver;
+    }
+
+    private void startSource() {
+        loopThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.start();
+            }
+        });
+    }
+
+    public void testFailsOverWhenTheServerGoesAway() throws Exception {
+        LoadDriver driver = start(new StandInServer.Script().events(Long.MAX_VALUE).rate(1000),
+                new StandInServer.Script().events(Long.MAX_VALUE).rate(1000), 300);
+        startSource();
+
+        while (first.getEventsSent() < 100)
+            Thread.sleep(5);
+        first.close();
+
+        assertTrue(driver.await(TIMEOUT));
+        // the second server resumed the stream after the last event of the first one
+        assertEquals(0, driver.report().outOfOrder);
+        assertEquals(1, second.getConnections());
+        assertNotNull(second.getLastEventIds().get(0));
+        assertEquals(second.getUrl("/events"), source.getUrl());
+    }
+
+    public void testSilentServerFailsOverOnTheWatchdog() throws Exception {
+        LoadDriver driver = start(new StandInServer.Script().events(5),
+                new StandInServer.Script().events(Long.MAX_VALUE).rate(1000), 50);
+        source.setWatchdog(50, 3);
+        startSource();
+
+        assertTrue(driver.await(TIMEOUT));
+        assertEquals(0, driver.report().outOfOrder);
+        assertEquals("4", second.getLastEventIds().get(0));
+    }
+
+    public void testFastestHealthyEndpointIsSelected() throws Exception {
+        EndpointSelector selector = new EndpointSelector(Arrays.asList(
+                new URL("http://a.local/events"), new URL("http://b.local/events"), new URL("http://c.local/events")));
+        List<EndpointSelector.Endpoint> endpoints = selector.getEndpoints();
+        EndpointSelector.Endpoint a = endpoints.get(0);
+        EndpointSelector.Endpoint b = endpoints.get(1);
+        EndpointSelector.Endpoint c = endpoints.get(2);
+
+        // nothing is measured , the order they were given in
+        assertSame(a, selector.select());
+
+        selector.recordConnect(a, TimeUnit.MILLISECONDS.toNanos(40));
+        selector.recordFirstByte(a, TimeUnit.MILLISECONDS.toNanos(50));
+        selector.recordConnect(b, TimeUnit.MILLISECONDS.toNanos(5));
+        selector.recordFirstByte(b, TimeUnit.MILLISECONDS.toNanos(10));
+        selector.recordConnect(c, TimeUnit.MILLISECONDS.toNanos(20));
+        selector.recordFirstByte(c, TimeUnit.MILLISECONDS.toNanos(30));
+        assertSame(b, selector.select());
+
+        // failures make an endpoint unhealthy , the next fastest is used
+        assertTrue(selector.onFailure());
+        assertSame(c, selector.select());
+        Thread.sleep(5);
+        assertTrue(selector.onFailure());
+        assertSame(a, selector.select());
+        Thread.sleep(5);
+
+        // none is healthy , the one that failed first is tried first
+        assertFalse(selector.onFailure());
+        assertSame(b, selector.select());
+        assertEquals(1, b.getFailures());
+
+        // a connection that opens makes it healthy again
+        selector.onOpen(b);
+        assertEquals(0, b.getFailures());
+        assertSame(b, selector.select());
+    }
+
+    public void testSlowerMeasurementsMoveTheAverage() throws Exception {
+        EndpointSelector selector = new EndpointSelector(Arrays.asList(new URL("http://a.local/events")));
+        EndpointSelector.Endpoint a = selector.getEndpoints().get(0);
+        assertEquals(-1, a.getConnectTime());
+
+        selector.recordConnect(a, 1000);
+        assertEquals(1000, a.getConnectTime());
+        selector.recordConnect(a, 5000);
+        assertEquals(2000, a.getConnectTime());
+    }
+}
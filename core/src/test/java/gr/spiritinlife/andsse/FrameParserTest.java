@@ -0,0 +1,282 @@
+package gr.spiritinlife.andsse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junit.framework.TestCase;
+
+public class FrameParserTest extends TestCase {
+
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * Collects what the parser emits as "name|data|id" strings
+     */
+    private static class Recorder implements SSEParser.Listener {
+
+        final List<String> events = new ArrayList<>();
+        final List<Long> retries = new ArrayList<>();
+
+        @Override
+        public void onEvent(String eventName, byte[] data, int dataLength, String lastEventId) {
+            events.add(eventName + "|" + new String(data, 0, dataLength, SSEParser.UTF_8) + "|" + lastEventId);
+        }
+
+        @Override
+        public void onRetry(long reconnectionTime) {
+            retries.add(reconnectionTime);
+        }
+    }
+
+    private Recorder recorder;
+    private FrameParser parser;
+
+    private ExecutorService loopThread;
+    private StandInServer server;
+    private SSEEventSource source;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        recorder = new Recorder();
+        parser = new FrameParser(recorder);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (source != null) {
+            loopThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    source.destroy();
+                }
+            });
+        }
+        if (server != null)
+            server.close();
+        if (loopThread != null)
+            loopThread.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * @param id null for an event without an id
+     */
+    private static void event(ByteArrayOutputStream frames, String name, String id, String data) {
+        frames.write(FrameParser.EVENT);
+        StandInServer.writeField(frames, (name == null ? "" : name).getBytes(SSEParser.UTF_8), 0);
+        if (id == null)
+            StandInServer.writeVarint(frames, 0);
+        else
+            StandInServer.writeField(frames, id.getBytes(SSEParser.UTF_8), 1);
+        StandInServer.writeField(frames, data.getBytes(SSEParser.UTF_8), 0);
+    }
+
+    private static byte[] sample() {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(FrameParser.HEARTBEAT);
+        event(frames, "mouse", "1", "1,2");
+        frames.write(FrameParser.RETRY);
+        StandInServer.writeVarint(frames, 3000);
+        event(frames, null, null, "caf\u00e9");
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 300; i++)
+            big.append(i % 10);
+        event(frames, "mouse", "2", big.toString());
+        return frames.toByteArray();
+    }
+
+    public void testFramesAreParsedInChunksOfAnySize() throws Exception {
+        byte[] bytes = sample();
+        List<String> expected = null;
+
+        for (int chunk = 1; chunk <= bytes.length; chunk++) {
+            setUp();
+            for (int offset = 0; offset < bytes.length; offset += chunk)
+                parser.feed(bytes, offset, Math.min(chunk, bytes.length - offset));
+
+            assertEquals("chunk " + chunk, 3, recorder.events.size());
+            assertEquals("[3000]", recorder.retries.toString());
+            if (expected == null)
+                expected = recorder.events;
+            else
+                assertEquals("chunk " + chunk, expected, recorder.events);
+        }
+        assertEquals("mouse|1,2|1", expected.get(0));
+        assertEquals("null|caf\u00e9|1", expected.get(1));
+        assertTrue(expected.get(2).endsWith("|2"));
+    }
+
+    public void testIdsFollowTheTextFormat() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        event(frames, null, "7", "a");
+        event(frames, null, null, "b");
+        event(frames, null, "", "c");
+        byte[] bytes = frames.toByteArray();
+        parser.feed(bytes, 0, bytes.length);
+
+        // no id keeps the last one , an empty one clears it
+        assertEquals("[null|a|7, null|b|7, null|c|]", recorder.events.toString());
+        assertEquals("", parser.getLastEventId());
+
+        parser.setLastEventId("42");
+        frames.reset();
+        event(frames, null, null, "d");
+        bytes = frames.toByteArray();
+        parser.feed(bytes, 0, bytes.length);
+        assertEquals("null|d|42", recorder.events.get(3));
+    }
+
+    public void testIdsWithNullAreIgnored() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        event(frames, null, "7", "a");
+        event(frames, null, "8\u00009", "b");
+        byte[] bytes = frames.toByteArray();
+        parser.feed(bytes, 0, bytes.length);
+
+        assertEquals("[null|a|7, null|b|7]", recorder.events.toString());
+        assertFalse(parser.hasEventId());
+    }
+
+    public void testIdOfPartialFrameIsNotResumedFrom() throws Exception {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        event(frames, null, "1", "a");
+        event(frames, null, "2", "bcdef");
+        byte[] bytes = frames.toByteArray();
+        // the connection drops in the middle of the data of the second frame
+        parser.feed(bytes, 0, bytes.length - 2);
+        parser.reset();
+
+        assertEquals("[null|a|1]", recorder.events.toString());
+        assertEquals("1", parser.getLastEventId());
+    }
+
+    public void testDataLengthIsNotTrusted() throws Exception {
+        // a length of 15MB followed by a few bytes , nothing that big may be allocated before the data arrives
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(FrameParser.EVENT);
+        StandInServer.writeVarint(frames, 0);
+        StandInServer.writeVarint(frames, 0);
+        StandInServer.writeVarint(frames, 15 * 1024 * 1024);
+        frames.write('x');
+        byte[] bytes = frames.toByteArray();
+        parser.feed(bytes, 0, bytes.length);
+        assertTrue(recorder.events.isEmpty());
+
+        parser.reset();
+        frames.reset();
+        frames.write(FrameParser.EVENT);
+        StandInServer.writeVarint(frames, 0);
+        StandInServer.writeVarint(frames, 0);
+        StandInServer.writeVarint(frames, 1L << 30);
+        bytes = frames.toByteArray();
+        try {
+            parser.feed(bytes, 0, bytes.length);
+            fail();
+        } catch (IOException expected) {
+            // too long for an event that is held whole
+        }
+    }
+
+    public void testChosenEventsAreStreamed() throws Exception {
+        final StringBuilder streamed = new StringBuilder();
+        parser.setStreamer(new SSEParser.Streamer() {
+            @Override
+            public boolean onEventStart(String eventName) {
+                return "big".equals(eventName);
+            }
+
+            @Override
+            public void onEventData(byte[] bytes, int offset, int length) {
+                streamed.append(new String(bytes, offset, length, SSEParser.UTF_8));
+            }
+
+            @Override
+            public void onEventEnd(String lastEventId) {
+                streamed.append(" end ").append(lastEventId);
+            }
+
+            @Override
+            public void onEventAborted() {
+                streamed.append("aborted");
+            }
+        });
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        event(frames, "big", "1", "abcdef");
+        event(frames, "small", null, "x");
+        byte[] bytes = frames.toByteArray();
+        for (int offset = 0; offset < bytes.length; offset += 4)
+            parser.feed(bytes, offset, Math.min(4, bytes.length - offset));
+
+        assertEquals("[small|x|1]", recorder.events.toString());
+        assertEquals("abcdef end 1", streamed.toString());
+    }
+
+    public void testUnknownFrameTypeIsAnError() {
+        byte[] bytes = {FrameParser.HEARTBEAT, 0x7F};
+        try {
+            parser.feed(bytes, 0, bytes.length);
+            fail();
+        } catch (IOException expected) {
+            // the stream is not frames
+        }
+    }
+
+    public void testStreamNegotiatesTheFraming() throws Exception {
+        StreamFixture fixture = new StreamFixture();
+        EventStream stream = fixture.stream;
+        assertEquals("text/event-stream", stream.getRequestHeaders().get("Accept"));
+        stream.setBinaryFraming(true);
+        assertTrue(stream.getRequestHeaders().get("Accept").startsWith(FrameParser.MEDIA_TYPE));
+
+        stream.onConnected(FrameParser.MEDIA_TYPE, null);
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        event(frames, "tick", "5", "a");
+        fixture.feed(frames.toByteArray());
+        stream.onClosed();
+
+        // the server answered with text , the id of the frames is resumed
+        stream.onConnected("text/event-stream; charset=utf-8", null);
+        fixture.feed("data: b\n\n");
+
+        assertEquals("[tick|a|5, ssemessage|b|5]", fixture.drain(StreamFixture.NAME_DATA_ID).toString());
+    }
+
+    private LoadDriver start(StandInServer.Script script, int expected) throws Exception {
+        loopThread = Executors.newSingleThreadExecutor();
+        server = new StandInServer(script);
+        source = new SSEEventSource(server.getUrl("/events"), new SerialEventLoop(loopThread), SelectorTransport.getShared());
+        source.setBinaryFraming(true);
+        source.setReconnectPolicy(new ReconnectPolicy(10, 10, 1, 10));
+        LoadDriver driver = new LoadDriver(expected);
+        source.addEventListener("*", driver);
+        loopThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.start();
+            }
+        });
+        return driver;
+    }
+
+    public void testFramedStreamResumes() throws Exception {
+        LoadDriver driver = start(new StandInServer.Script().events(Long.MAX_VALUE).rate(2000)
+                .disconnectAfter(100).frames(true), 300);
+
+        assertTrue(driver.await(TIMEOUT));
+        assertEquals(0, driver.report().outOfOrder);
+        assertTrue(server.getConnections() > 1);
+        assertNotNull(server.getLastEventIds().get(1));
+    }
+
+    public void testTextServerIsUnderstood() throws Exception {
+        LoadDriver driver = start(new StandInServer.Script().events(Long.MAX_VALUE).rate(2000), 100);
+
+        assertTrue(driver.await(TIMEOUT));
+        assertEquals(0, driver.report().outOfOrder);
+    }
+}
@@ -0,0 +1,111 @@
+package gr.spiritinlife.andsse;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listens to the events of a {@link StandInServer StandInServer} through an event source and measures them ,
+ * the latency of every event from the moment the server wrote it to the moment the listener got it ,
+ * and the events per second the whole way sustained.
+ *
+ * It is an ordinary listener , added to any {@link SSEEventSource SSEEventSource} , an {@link AndSSEEventSource AndSSEEventSource}
+ * on a device or one on a plain JVM , so what it measures is what an app's listener sees.
+ * It is called on the event loop , one event at a time.
+ */
+final class LoadDriver implements IEventCallback {
+
+    /**
+     * What a run measured
+     */
+    static final class Report {
+        final int events;
+        final int outOfOrder;
+        final double eventsPerSecond;
+        private final long[] latencies;
+
+        Report(int events, int outOfOrder, double eventsPerSecond, long[] latencies) {
+            this.events = events;
+            this.outOfOrder = outOfOrder;
+            this.eventsPerSecond = eventsPerSecond;
+            this.latencies = latencies;
+        }
+
+        /**
+         * @param percentile from 0 to 100
+         * @return long the latency in ns that many percent of the events did not exceed
+         */
+        long getPercentile(double percentile) {
+            if (latencies.length == 0)
+                return 0;
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d events , %.0f events/s , latency p50 %dus p99 %dus p99.9 %dus max %dus , %d out of order",
+                    events, eventsPerSecond, getPercentile(50) / 1000, getPercentile(99) / 1000, getPercentile(99.9) / 1000,
+                    getPercentile(100) / 1000, outOfOrder);
+        }
+    }
+
+
+    private final long[] latencies;
+    private final CountDownLatch done;
+
+    private int count = 0;
+    private int outOfOrder = 0;
+    private long lastSequence = -1;
+    private long firstAt;
+    private long lastAt;
+
+
+    /**
+     * @param expected how many events the run has
+     */
+    LoadDriver(int expected) {
+        latencies = new long[expected];
+        done = new CountDownLatch(expected);
+    }
+
+
+    @Override
+    public void onEvent(AndEvent event) {
+        long now = System.nanoTime();
+        String data = event.getData();
+        int space = data.indexOf(' ');
+        int end = data.indexOf(' ', space + 1);
+        long sequence = Long.parseLong(data.substring(0, space));
+        long sentAt = Long.parseLong(data.substring(space + 1, end < 0 ? data.length() : end));
+
+        if (sequence != lastSequence + 1)
+            outOfOrder++;
+        lastSequence = sequence;
+
+        if (count == 0)
+            firstAt = sentAt;
+        lastAt = now;
+        if (count < latencies.length)
+            latencies[count++] = now - sentAt;
+        done.countDown();
+    }
+
+    /**
+     * @return boolean true if every expected event arrived in time
+     */
+    boolean await(long timeoutMs) throws InterruptedException {
+        return done.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return {@link Report Report} of the events that arrived , call it after {@link #await(long) await}
+     */
+    Report report() {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        double seconds = (lastAt - firstAt) / 1e9;
+        return new Report(count, outOfOrder, seconds > 0 ? count / seconds : 0, sorted);
+    }
+}
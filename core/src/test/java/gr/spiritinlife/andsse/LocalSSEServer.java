@@ -0,0 +1,185 @@
+package gr.spiritinlife.andsse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A server sent events server on localhost for the tests.
+ *
+ * It serves one connection at a time. The test {@link #accept(long) accepts} the client , then {@link #send(String) sends}
+ * the stream a piece at a time. When the client accepts the server's encoding the body is compressed and flushed with a sync flush
+ * after every piece , like a real server that streams compressed events.
+ */
+final class LocalSSEServer implements Closeable {
+
+    /**
+     * Counts the bytes of the body that go on the wire
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        volatile long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+
+    private final ServerSocket serverSocket;
+
+    /**
+     * The encoding we compress with if the client accepts it , null to never compress
+     */
+    private final String encoding;
+
+    private Socket socket;
+    private CountingOutputStream wire;
+    private OutputStream body;
+    private String responseEncoding;
+
+
+    /**
+     * @param encoding "gzip" , "deflate" or null
+     */
+    LocalSSEServer(String encoding) throws IOException {
+        this.encoding = encoding;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+
+    URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), path);
+    }
+
+    /**
+     * Waits for a client , reads its request and sends the response headers
+     * @return Map the request headers , with lower case names
+     */
+    Map<String, String> accept(long timeoutMs) throws IOException {
+        closeConnection();
+        serverSocket.setSoTimeout((int) timeoutMs);
+        socket = serverSocket.accept();
+        socket.setTcpNoDelay(true);
+
+        Map<String, String> headers = readRequest(socket.getInputStream());
+
+        String accepted = headers.get("accept-encoding");
+        responseEncoding = encoding != null && accepted != null && accepted.contains(encoding) ? encoding : null;
+
+        StringBuilder response = new StringBuilder();
+        response.append("HTTP/1.1 200 OK\r\n");
+        response.append("Content-Type: text/event-stream\r\n");
+        response.append("Cache-Control: no-cache\r\n");
+        if (responseEncoding != null)
+            response.append("Content-Encoding: ").append(responseEncoding).append("\r\n");
+        response.append("Connection: close\r\n\r\n");
+
+        OutputStream out = socket.getOutputStream();
+        out.write(response.toString().getBytes(SSEParser.UTF_8));
+        out.flush();
+
+        wire = new CountingOutputStream(out);
+        if ("gzip".equals(responseEncoding))
+            body = new GZIPOutputStream(wire, true);
+        else if ("deflate".equals(responseEncoding))
+            body = new DeflaterOutputStream(wire, true);
+        else
+            body = wire;
+        return headers;
+    }
+
+    /**
+     * @return String the Content-Encoding of the current response , null if it is not compressed
+     */
+    String getResponseEncoding() {
+        return responseEncoding;
+    }
+
+    /**
+     * Writes a piece of the stream and flushes it to the client
+     */
+    void send(String text) throws IOException {
+        body.write(text.getBytes(SSEParser.UTF_8));
+        body.flush();
+    }
+
+    /**
+     * @return long how many bytes of body went on the wire for the current connection
+     */
+    long getBytesOnWire() {
+        return wire == null ? 0 : wire.count;
+    }
+
+    /**
+     * Closes the current connection , the client sees the end of the stream
+     */
+    void closeConnection() throws IOException {
+        if (socket != null) {
+            socket.close();
+            socket = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeConnection();
+        serverSocket.close();
+    }
+
+
+    /**
+     * Reads a request up to the blank line after its headers
+     * @return Map the request headers , with lower case names
+     */
+    static Map<String, String> readRequest(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        boolean requestLine = true;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\r')
+                continue;
+            if (b != '\n') {
+                line.write(b);
+                continue;
+            }
+            String text = new String(line.toByteArray(), SSEParser.UTF_8);
+            line.reset();
+            if (text.isEmpty())
+                break;
+            if (requestLine) {
+                requestLine = false;
+                continue;
+            }
+            int colon = text.indexOf(':');
+            if (colon > 0)
+                headers.put(text.substring(0, colon).trim().toLowerCase(Locale.US), text.substring(colon + 1).trim());
+        }
+        return headers;
+    }
+}
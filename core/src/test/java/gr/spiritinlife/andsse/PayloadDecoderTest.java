@@ -0,0 +1,159 @@
+package gr.spiritinlife.andsse;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+public class PayloadDecoderTest extends TestCase {
+
+    /**
+     * What a quote event decodes to
+     */
+    private static class Quote {
+        final String symbol;
+        final double price;
+
+        Quote(String symbol, double price) {
+            this.symbol = symbol;
+            this.price = price;
+        }
+    }
+
+    private final AtomicInteger decoded = new AtomicInteger();
+    private final List<Thread> decodingThreads = new ArrayList<>();
+
+    private final PayloadDecoder<Quote> quoteDecoder = new PayloadDecoder<Quote>() {
+        @Override
+        public Quote decode(AndEvent event) {
+            decoded.incrementAndGet();
+            decodingThreads.add(Thread.currentThread());
+            String[] parts = event.getData().split(",");
+            return new Quote(parts[0], Double.parseDouble(parts[1]));
+        }
+    };
+
+    private final LinkedBlockingQueue<AndEvent> delivered = new LinkedBlockingQueue<>();
+    private final ListenerRegistry executorListeners = new ListenerRegistry();
+    private ExecutorService uiThread;
+    private EventStream stream;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        uiThread = Executors.newSingleThreadExecutor();
+        SerialEventLoop loop = new SerialEventLoop(uiThread);
+        loop.setTarget(new EventLoop.Target() {
+            @Override
+            public boolean handle(int what) {
+                if (what != EventSource.EVENT_BATCH)
+                    return false;
+                stream.drain(new IEventCallback() {
+                    @Override
+                    public void onEvent(AndEvent event) {
+                        delivered.add(event);
+                    }
+                });
+                return true;
+            }
+        });
+        stream = new EventStream(new URL("http://127.0.0.1/events"), loop, executorListeners);
+        stream.onConnected(null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        uiThread.shutdown();
+        super.tearDown();
+    }
+
+    private void feed(String text) throws Exception {
+        byte[] bytes = text.getBytes(SSEParser.UTF_8);
+        stream.onData(bytes, 0, bytes.length);
+    }
+
+    private AndEvent next() throws InterruptedException {
+        AndEvent event = delivered.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event);
+        return event;
+    }
+
+    public void testDecodedOnceForManyListeners() throws Exception {
+        stream.registerDecoder("quote", quoteDecoder);
+        final List<Quote> quotes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            executorListeners.add("quote", new TypedEventCallback<Quote>() {
+                @Override
+                public void onEvent(AndEvent event, Quote payload) {
+                    quotes.add(payload);
+                }
+            });
+        }
+
+        feed("event: quote\ndata: ANDSSE,12.5\n\n");
+
+        assertEquals(1, decoded.get());
+        assertSame(Thread.currentThread(), decodingThreads.get(0));
+        assertEquals(3, quotes.size());
+        assertSame(quotes.get(0), quotes.get(2));
+        assertEquals("ANDSSE", quotes.get(0).symbol);
+
+        // the main thread gets the same object
+        AndEvent event = next();
+        assertSame(quotes.get(0), event.getPayload());
+        assertEquals(12.5, ((Quote) event.getPayload()).price);
+        event.recycle();
+    }
+
+    public void testFailedDecodingStillDeliversEvent() throws Exception {
+        stream.registerDecoder("quote", quoteDecoder);
+        final AtomicInteger typed = new AtomicInteger();
+        executorListeners.add("quote", new TypedEventCallback<Quote>() {
+            @Override
+            public void onEvent(AndEvent event, Quote payload) {
+                typed.incrementAndGet();
+            }
+        });
+
+        feed("event: quote\ndata: not a quote\n\n");
+
+        assertEquals(0, typed.get());
+        AndEvent event = next();
+        assertNull(event.getPayload());
+        assertEquals("not a quote", event.getData());
+        event.recycle();
+    }
+
+    public void testOnlyRegisteredNamesAreDecoded() throws Exception {
+        stream.registerDecoder("quote", quoteDecoder);
+        feed("event: trade\ndata: ANDSSE,1\n\ndata: ANDSSE,2\n\n");
+        assertEquals(0, decoded.get());
+        next().recycle();
+        next().recycle();
+
+        stream.registerDecoder(AndEvent.ON_MESSAGE, quoteDecoder);
+        stream.registerDecoder("quote", null);
+        feed("event: quote\ndata: ANDSSE,3\n\ndata: ANDSSE,4\n\n");
+        assertEquals(1, decoded.get());
+        assertNull(next().getPayload());
+        assertEquals(4.0, ((Quote) next().getPayload()).price);
+    }
+
+    public void testPayloadDoesNotSurviveRecycle() throws Exception {
+        stream.registerDecoder("quote", quoteDecoder);
+        feed("event: quote\ndata: ANDSSE,1\n\n");
+        AndEvent event = next();
+        AndEvent copy = event.copy();
+        event.recycle();
+
+        AndEvent reused = AndEvent.obtain();
+        assertNull(reused.getPayload());
+        reused.recycle();
+        assertEquals(1.0, ((Quote) copy.getPayload()).price);
+    }
+}
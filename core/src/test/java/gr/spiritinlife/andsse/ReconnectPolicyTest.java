@@ -0,0 +1,37 @@
+package gr.spiritinlife.andsse;
+
+import junit.framework.TestCase;
+
+public class ReconnectPolicyTest extends TestCase {
+
+    private final ReconnectPolicy policy = new ReconnectPolicy(1000, 30000, 2, 60000);
+
+    public void testWaitIsJitteredUpToTheExponentialDelay() {
+        for (int i = 0; i < 1000; i++) {
+            long first = policy.getDelay(0, -1);
+            assertTrue(first >= 0 && first < 1000);
+            long third = policy.getDelay(2, -1);
+            assertTrue(third >= 0 && third < 4000);
+            long late = policy.getDelay(20, -1);
+            assertTrue(late >= 0 && late < 30000);
+        }
+    }
+
+    public void testRetryFieldIsAFloor() {
+        boolean jittered = false;
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(5000, policy.getDelay(0, 5000));
+            long later = policy.getDelay(3, 5000);
+            assertTrue(later >= 5000 && later < 30000);
+            jittered |= later > 5000;
+        }
+        // only the growth above the reconnection time is random
+        assertTrue(jittered);
+    }
+
+    public void testRetryFieldAboveTheCeilingIsKept() {
+        assertEquals(60000, policy.getDelay(0, 60000));
+        assertEquals(60000, policy.getDelay(5, 60000));
+        assertEquals(0, policy.getDelay(3, 0));
+    }
+}
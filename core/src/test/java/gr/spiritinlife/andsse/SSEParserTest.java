@@ -0,0 +1,269 @@
+package gr.spiritinlife.andsse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+
+public class SSEParserTest extends TestCase {
+
+    private static final Logger LOG = Logger.getLogger("SSEParserTest");
+
+    /**
+     * Collects what the parser emits as "name|data|id" strings
+     */
+    private static class Recorder implements SSEParser.Listener {
+
+        final List<String> events = new ArrayList<>();
+        final List<Long> retries = new ArrayList<>();
+
+        @Override
+        public void onEvent(String eventName, byte[] data, int dataLength, String lastEventId) {
+            events.add(eventName + "|" + new String(data, 0, dataLength, SSEParser.UTF_8) + "|" + lastEventId);
+        }
+
+        @Override
+        public void onRetry(long reconnectionTime) {
+            retries.add(reconnectionTime);
+        }
+    }
+
+    private Recorder recorder;
+    private SSEParser parser;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        recorder = new Recorder();
+        parser = new SSEParser(recorder);
+    }
+
+    private void feed(String stream) {
+        byte[] bytes = stream.getBytes(SSEParser.UTF_8);
+        parser.feed(bytes, 0, bytes.length);
+    }
+
+    public void testSimpleEvent() {
+        feed("event: mouse\ndata: 1,2\n\n");
+        assertEquals(1, recorder.events.size());
+        assertEquals("mouse|1,2|", recorder.events.get(0));
+    }
+
+    public void testDefaultEventHasNoName() {
+        feed("data: hello\n\n");
+        assertEquals("null|hello|", recorder.events.get(0));
+    }
+
+    public void testMultiLineDataIsJoinedWithLf() {
+        feed("data: first\ndata\ndata:  third\n\n");
+        assertEquals("null|first\n\n third|", recorder.events.get(0));
+    }
+
+    public void testColonsInsideValue() {
+        feed("data: {\"a\":\"b:c\"}\n\n");
+        assertEquals("null|{\"a\":\"b:c\"}|", recorder.events.get(0));
+    }
+
+    public void testLineEndings() {
+        feed("data: lf\n\ndata: crlf\r\n\r\ndata: cr\r\r");
+        assertEquals(3, recorder.events.size());
+        assertEquals("null|lf|", recorder.events.get(0));
+        assertEquals("null|crlf|", recorder.events.get(1));
+        assertEquals("null|cr|", recorder.events.get(2));
+    }
+
+    public void testCrLfSplitAcrossChunks() {
+        feed("data: a\r");
+        feed("\ndata: b\r");
+        feed("\n\r");
+        feed("\n");
+        assertEquals(1, recorder.events.size());
+        assertEquals("null|a\nb|", recorder.events.get(0));
+    }
+
+    public void testBomIsStripped() {
+        byte[] bom = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+        parser.feed(bom, 0, 1);
+        parser.feed(bom, 1, 2);
+        feed("data: x\n\n");
+        assertEquals("null|x|", recorder.events.get(0));
+    }
+
+    public void testBomOnlyAtStartOfStream() {
+        feed("data: x\n\n");
+        byte[] bom = "\uFEFFdata: y\n\n".getBytes(SSEParser.UTF_8);
+        parser.feed(bom, 0, bom.length);
+        // a BOM in the middle of the stream is part of the field name , so the line is ignored
+        assertEquals(1, recorder.events.size());
+    }
+
+    public void testCommentsAreIgnored() {
+        feed(": heartbeat\n:\ndata: x\n: another\n\n");
+        assertEquals(1, recorder.events.size());
+        assertEquals("null|x|", recorder.events.get(0));
+    }
+
+    public void testUnknownFieldsAreIgnored() {
+        feed("foo: bar\nthisisaverylongfield: value\ndata: x\n\n");
+        assertEquals("null|x|", recorder.events.get(0));
+    }
+
+    public void testEventWithoutDataIsNotDispatched() {
+        feed("event: lonely\n\ndata: x\n\n");
+        assertEquals(1, recorder.events.size());
+        // the event type is reset by the blank line
+        assertEquals("null|x|", recorder.events.get(0));
+    }
+
+    public void testEmptyDataIsDispatched() {
+        feed("data\n\ndata:\n\n");
+        assertEquals(2, recorder.events.size());
+        assertEquals("null||", recorder.events.get(0));
+    }
+
+    public void testLastEventIdSurvivesBetweenEvents() {
+        feed("id: 1\ndata: a\n\ndata: b\n\nid\ndata: c\n\n");
+        assertEquals("null|a|1", recorder.events.get(0));
+        assertEquals("null|b|1", recorder.events.get(1));
+        assertEquals("null|c|", recorder.events.get(2));
+    }
+
+    public void testIdWithNullIsIgnored() {
+        feed("id: 1\ndata: a\n\nid: 2\u0000\ndata: b\n\n");
+        assertEquals("null|b|1", recorder.events.get(1));
+        assertEquals("1", parser.getLastEventId());
+    }
+
+    public void testRetry() {
+        feed("retry: 15000\nretry: 1x\nretry:\nretry: 99999999999999999999999\n");
+        assertEquals(2, recorder.retries.size());
+        assertEquals(15000L, (long) recorder.retries.get(0));
+        assertEquals(Long.MAX_VALUE, (long) recorder.retries.get(1));
+    }
+
+    public void testUtf8SplitAcrossChunks() {
+        byte[] bytes = "event: \u03BA\u03B1\u03BB\u03B7\u03BC\u03AD\u03C1\u03B1\ndata: \u03BA\u03CC\u03C3\u03BC\u03B5 \u20AC\n\n".getBytes(SSEParser.UTF_8);
+        for (int i = 0; i < bytes.length; i++)
+            parser.feed(bytes, i, 1);
+        assertEquals("\u03BA\u03B1\u03BB\u03B7\u03BC\u03AD\u03C1\u03B1|\u03BA\u03CC\u03C3\u03BC\u03B5 \u20AC|", recorder.events.get(0));
+    }
+
+    public void testResetDiscardsPartialEvent() {
+        feed("id: 7\ndata: partial\n");
+        parser.reset();
+        feed("data: whole\n\n");
+        assertEquals(1, recorder.events.size());
+        // the id came with the discarded event
+        assertEquals("null|whole|", recorder.events.get(0));
+    }
+
+    public void testIdOfPartialEventIsNotResumedFrom() {
+        feed("id: 1\ndata: a\n\nid: 2\ndata: b");
+        assertEquals("1", parser.getLastEventId());
+        parser.reset();
+        // the connection dropped before event 2 was dispatched , the stream resumes after 1
+        assertEquals("1", parser.getLastEventId());
+        assertEquals(1, recorder.events.size());
+    }
+
+    public void testLargeEvent() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200000; i++)
+            builder.append((char) ('a' + i % 26));
+        feed("data: " + builder + "\n\n");
+        assertEquals("null|" + builder + "|", recorder.events.get(0));
+    }
+
+
+    /**
+     * Compares the parser with the readLine/split loop it replaced.
+     * The numbers are logged , we only assert that both see the same events
+     */
+    public void testThroughputAgainstReadLineLoop() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.append("event: tick\n")
+                    .append("id: ").append(i).append('\n')
+                    .append("data: {\"price\":").append(i * 31 % 1000).append(",\"volume\":").append(i).append("}\n\n");
+        }
+        byte[] stream = builder.toString().getBytes(SSEParser.UTF_8);
+
+        int readLineEvents = 0;
+        int parserEvents = 0;
+        long readLineNanos = Long.MAX_VALUE;
+        long parserNanos = Long.MAX_VALUE;
+
+        // the first rounds warm up both loops , we keep the best round of each
+        for (int i = 0; i < 30; i++) {
+            long start = System.nanoTime();
+            readLineEvents = runReadLineLoop(stream);
+            readLineNanos = Math.min(readLineNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            parserEvents = runParser(stream);
+            parserNanos = Math.min(parserNanos, System.nanoTime() - start);
+        }
+
+        LOG.info("readLine/split : " + readLineEvents + " events in " + readLineNanos / 1000 + "us");
+        LOG.info("SSEParser      : " + parserEvents + " events in " + parserNanos / 1000 + "us");
+
+        assertEquals(20000, parserEvents);
+        assertEquals(readLineEvents, parserEvents);
+    }
+
+    private static int runParser(byte[] stream) {
+        final int[] count = {0};
+        SSEParser parser = new SSEParser(new SSEParser.Listener() {
+            @Override
+            public void onEvent(String eventName, byte[] data, int dataLength, String lastEventId) {
+                count[0]++;
+            }
+
+            @Override
+            public void onRetry(long reconnectionTime) {
+            }
+        });
+
+        // feed it the way the connection does
+        for (int offset = 0; offset < stream.length; offset += 8192)
+            parser.feed(stream, offset, Math.min(8192, stream.length - offset));
+        return count[0];
+    }
+
+    /**
+     * The loop that AndSSE used before the parser
+     */
+    private static int runReadLineLoop(byte[] stream) throws Exception {
+        int count = 0;
+        BufferedReader in = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(stream)));
+        AndEvent event = new AndEvent();
+        String inputLine;
+        while ((inputLine = in.readLine()) != null) {
+            if (inputLine.isEmpty()) {
+                if (!event.getData().isEmpty())
+                    count++;
+                event = new AndEvent();
+            } else if (inputLine.startsWith(":")) {
+            } else if (inputLine.contains(":")) {
+                String fieldAndValue[] = inputLine.split(":");
+                switch (fieldAndValue[0]) {
+                    case "event":
+                        event.setEventName(fieldAndValue[1]);
+                        break;
+                    case "id":
+                        event.setId(fieldAndValue[1]);
+                        break;
+                    case "data":
+                        // it used to trim the data
+                        event.setEventData(fieldAndValue[1].trim());
+                        break;
+                }
+            }
+        }
+        in.close();
+        return count;
+    }
+}
@@ -0,0 +1,439 @@
+package gr.spiritinlife.andsse;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A server sent events server on localhost that stands in for a real one in latency and throughput tests.
+ *
+ * Unlike the {@link LocalSSEServer LocalSSEServer} it writes the stream itself , following a {@link Script Script} :
+ * how many events , how fast , how big , with which names , and what goes wrong on the way , retry fields , dropped
+ * connections , writes that trickle in and lines a client must ignore. It serves any number of clients at once ,
+ * each on a thread of its own , and a client that reconnects with a Last-Event-ID resumes after that event.
+ *
+ * The data of every event starts with its sequence number and the {@link System#nanoTime() nanoTime} it was written at ,
+ * so a {@link LoadDriver LoadDriver} in the same process measures the latency of every event.
+ * A script may also answer in {@link FrameParser binary frames} the clients that accept them.
+ */
+final class StandInServer implements Closeable {
+
+    /**
+     * What the server sends , and what goes wrong. The setters return the script so they can be chained
+     */
+    static final class Script {
+        long events = 1000;
+        int eventsPerSecond = 0;
+        int dataSize = 32;
+        String[] names = { null };
+        boolean ids = true;
+        int commentEvery = 0;
+        long retryMs = -1;
+        int retryEvery = 0;
+        int disconnectAfter = 0;
+        int slowWriteBytes = 0;
+        long slowWriteDelayMs = 0;
+        int malformedEvery = 0;
+        boolean frames = false;
+        int status = 200;
+
+        /**
+         * @param events how many events the stream has , the server goes quiet after the last one
+         */
+        Script events(long events) {
+            this.events = events;
+            return this;
+        }
+
+        /**
+         * @param eventsPerSecond how fast the events are written , 0 as fast as the client reads them
+         */
+        Script rate(int eventsPerSecond) {
+            this.eventsPerSecond = eventsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param dataSize how many bytes of data every event has , at least what the sequence number and the time need
+         */
+        Script size(int dataSize) {
+            this.dataSize = dataSize;
+            return this;
+        }
+
+        /**
+         * @param names the names the events take in turn , null for events without one
+         */
+        Script names(String... names) {
+            this.names = names;
+            return this;
+        }
+
+        /**
+         * @param ids whether the events have an id , their sequence number
+         */
+        Script ids(boolean ids) {
+            this.ids = ids;
+            return this;
+        }
+
+        /**
+         * @param every a comment line , like a heartbeat , before every that many events
+         */
+        Script comments(int every) {
+            this.commentEvery = every;
+            return this;
+        }
+
+        /**
+         * @param retryMs the retry field , sent when a connection starts
+         * @param every and again every that many events , 0 for only at the start
+         */
+        Script retry(long retryMs, int every) {
+            this.retryMs = retryMs;
+            this.retryEvery = every;
+            return this;
+        }
+
+        /**
+         * @param events the server drops every connection after writing that many events on it
+         */
+        Script disconnectAfter(int events) {
+            this.disconnectAfter = events;
+            return this;
+        }
+
+        /**
+         * @param bytes every event is written in pieces of that many bytes
+         * @param delayMs with a flush and a pause after every piece
+         */
+        Script slowWrites(int bytes, long delayMs) {
+            this.slowWriteBytes = bytes;
+            this.slowWriteDelayMs = delayMs;
+            return this;
+        }
+
+        /**
+         * @param every lines a client must ignore inside every that many events , unknown fields , fields without
+         *              a colon and a retry that is not a number
+         */
+        Script malformed(int every) {
+            this.malformedEvery = every;
+            return this;
+        }
+
+        /**
+         * @param frames whether clients that accept {@link FrameParser#MEDIA_TYPE binary frames} get them ,
+         *               with a heartbeat frame for a comment and nothing for the malformed lines
+         */
+        Script frames(boolean frames) {
+            this.frames = frames;
+            return this;
+        }
+
+        /**
+         * @param status the status of every response , anything but 200 is sent without a body
+         */
+        Script status(int status) {
+            this.status = status;
+            return this;
+        }
+    }
+
+    /**
+     * Lines the spec tells a client to ignore , none of them changes the event they are in
+     */
+    private static final String MALFORMED = "nonsense\nunknown: field\nretry: soon\n:\n";
+
+    private final ServerSocket serverSocket;
+    private final Script script;
+    private final Thread acceptThread;
+
+    private final List<Socket> clients = Collections.synchronizedList(new ArrayList<Socket>());
+    private final List<String> lastEventIds = Collections.synchronizedList(new ArrayList<String>());
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicLong eventsSent = new AtomicLong();
+    private volatile boolean closed = false;
+
+
+    StandInServer(Script script) throws IOException {
+        this.script = script;
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getByName("127.0.0.1"));
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptClients();
+            }
+        }, "StandInServer_accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+
+    URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", serverSocket.getLocalPort(), path);
+    }
+
+    /**
+     * @return int how many connections were accepted
+     */
+    int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return List the Last-Event-ID of every request in the order they came , null for requests without one
+     */
+    List<String> getLastEventIds() {
+        synchronized (lastEventIds) {
+            return new ArrayList<>(lastEventIds);
+        }
+    }
+
+    /**
+     * @return long how many events were written , on all connections
+     */
+    long getEventsSent() {
+        return eventsSent.get();
+    }
+
+    /**
+     * Drops every connection , the clients see the end of their streams
+     */
+    void disconnectAll() {
+        synchronized (clients) {
+            for (Socket client : clients)
+                closeQuietly(client);
+            clients.clear();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        disconnectAll();
+    }
+
+
+    private void acceptClients() {
+        while (!closed) {
+            final Socket client;
+            try {
+                client = serverSocket.accept();
+                client.setTcpNoDelay(true);
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+            connections.incrementAndGet();
+            clients.add(client);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        serve(client);
+                    } catch (IOException e) {
+                        // the client or the test closed the connection
+                    } finally {
+                        clients.remove(client);
+                        closeQuietly(client);
+                    }
+                }
+            }, "StandInServer_" + connections.get());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket client) throws IOException {
+        Map<String, String> headers = LocalSSEServer.readRequest(client.getInputStream());
+        String lastEventId = headers.get("last-event-id");
+        lastEventIds.add(lastEventId);
+
+        long sequence = 0;
+        if (lastEventId != null) {
+            try {
+                sequence = Long.parseLong(lastEventId) + 1;
+            } catch (NumberFormatException e) {
+                // not one of ours , start over
+            }
+        }
+
+        String accept = headers.get("accept");
+        boolean frames = script.frames && accept != null && accept.contains(FrameParser.MEDIA_TYPE);
+
+        OutputStream out = new BufferedOutputStream(client.getOutputStream(), 16 * 1024);
+        if (script.status != 200) {
+            out.write(("HTTP/1.1 " + script.status + " Refused\r\n"
+                    + "Content-Length: 0\r\n"
+                    + "Connection: close\r\n\r\n").getBytes(SSEParser.UTF_8));
+            out.flush();
+            return;
+        }
+        out.write(("HTTP/1.1 200 OK\r\n"
+                + "Content-Type: " + (frames ? FrameParser.MEDIA_TYPE : "text/event-stream") + "\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "Connection: close\r\n\r\n").getBytes(SSEParser.UTF_8));
+        if (script.retryMs >= 0)
+            out.write(frames ? retryFrame(script.retryMs) : ("retry: " + script.retryMs + "\n\n").getBytes(SSEParser.UTF_8));
+        out.flush();
+
+        long periodNanos = script.eventsPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / script.eventsPerSecond : 0;
+        long start = System.nanoTime();
+        StringBuilder event = new StringBuilder(script.dataSize + 64);
+        int written = 0;
+
+        for (; sequence < script.events && !closed; sequence++) {
+            if (periodNanos > 0) {
+                long wait = start + written * periodNanos - System.nanoTime();
+                if (wait > 0)
+                    LockSupport.parkNanos(wait);
+            }
+
+            byte[] bytes = frames ? frame(sequence) : text(event, sequence);
+            if (script.slowWriteBytes > 0) {
+                for (int offset = 0; offset < bytes.length; offset += script.slowWriteBytes) {
+                    out.write(bytes, offset, Math.min(script.slowWriteBytes, bytes.length - offset));
+                    out.flush();
+                    sleep(script.slowWriteDelayMs);
+                }
+            } else {
+                out.write(bytes);
+                // a paced stream is flushed per event , a flat out one when the buffer fills
+                if (periodNanos > 0)
+                    out.flush();
+            }
+            eventsSent.incrementAndGet();
+            written++;
+
+            if (script.disconnectAfter > 0 && written % script.disconnectAfter == 0) {
+                out.flush();
+                return;
+            }
+        }
+        out.flush();
+
+        // the stream is over , keep the connection like a server that has nothing to say
+        while (!closed && client.getInputStream().read() != -1) {
+            // the client sends nothing
+        }
+    }
+
+    /**
+     * @return byte[] the event of the sequence number as text , with what the script adds around it
+     */
+    private byte[] text(StringBuilder event, long sequence) {
+        event.setLength(0);
+        if (script.commentEvery > 0 && sequence % script.commentEvery == 0)
+            event.append(": heartbeat\n");
+        if (script.retryEvery > 0 && sequence > 0 && sequence % script.retryEvery == 0)
+            event.append("retry: ").append(script.retryMs).append('\n');
+        String name = script.names[(int) (sequence % script.names.length)];
+        if (name != null)
+            event.append("event: ").append(name).append('\n');
+        if (script.malformedEvery > 0 && sequence % script.malformedEvery == 0)
+            event.append(MALFORMED);
+        if (script.ids)
+            event.append("id: ").append(sequence).append('\n');
+        event.append("data: ");
+        appendData(event, sequence);
+        event.append("\n\n");
+        return event.toString().getBytes(SSEParser.UTF_8);
+    }
+
+    /**
+     * @return byte[] the event of the sequence number in binary frames , with what the script adds around it
+     */
+    private byte[] frame(long sequence) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(script.dataSize + 32);
+        if (script.commentEvery > 0 && sequence % script.commentEvery == 0)
+            frame.write(FrameParser.HEARTBEAT);
+        if (script.retryEvery > 0 && sequence > 0 && sequence % script.retryEvery == 0) {
+            byte[] retry = retryFrame(script.retryMs);
+            frame.write(retry, 0, retry.length);
+        }
+        String name = script.names[(int) (sequence % script.names.length)];
+        StringBuilder data = new StringBuilder(script.dataSize);
+        appendData(data, sequence);
+
+        frame.write(FrameParser.EVENT);
+        writeField(frame, name == null ? new byte[0] : name.getBytes(SSEParser.UTF_8), 0);
+        if (script.ids)
+            writeField(frame, Long.toString(sequence).getBytes(SSEParser.UTF_8), 1);
+        else
+            writeVarint(frame, 0);
+        writeField(frame, data.toString().getBytes(SSEParser.UTF_8), 0);
+        return frame.toByteArray();
+    }
+
+    private static byte[] retryFrame(long retryMs) {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(FrameParser.RETRY);
+        writeVarint(frame, retryMs);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Writes the length of the bytes , plus the extra , and the bytes
+     */
+    static void writeField(ByteArrayOutputStream frame, byte[] bytes, int extra) {
+        writeVarint(frame, bytes.length + extra);
+        frame.write(bytes, 0, bytes.length);
+    }
+
+    static void writeVarint(ByteArrayOutputStream frame, long value) {
+        while ((value & ~0x7FL) != 0) {
+            frame.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        frame.write((int) value);
+    }
+
+    /**
+     * The sequence number , the time it is written at and padding up to the size of the script
+     */
+    private void appendData(StringBuilder event, long sequence) {
+        int start = event.length();
+        event.append(sequence).append(' ').append(System.nanoTime());
+        int padding = script.dataSize - (event.length() - start);
+        if (padding > 0) {
+            event.append(' ');
+            for (int i = 1; i < padding; i++)
+                event.append((char) ('a' + i % 26));
+        }
+    }
+
+    private static void sleep(long ms) throws IOException {
+        if (ms <= 0)
+            return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new SocketException("Interrupted");
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // closed already
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package gr.spiritinlife.andsse;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import junit.framework.TestCase;
+
+/**
+ * Runs event sources against the {@link StandInServer stand-in server} , through the {@link SelectorTransport SelectorTransport}
+ * and a {@link SerialEventLoop SerialEventLoop} , the whole way a real stream takes apart from the Android main thread
+ */
+public class StandInServerTest extends TestCase {
+
+    private static final Logger LOG = Logger.getLogger("StandInServerTest");
+    private static final long TIMEOUT = 10000;
+
+    private ExecutorService loopThread;
+    private StandInServer server;
+    private SSEEventSource source;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        loopThread = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (source != null) {
+            loopThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    source.destroy();
+                }
+            });
+        }
+        if (server != null)
+            server.close();
+        loopThread.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Starts an event source on the server with the driver listening to every event
+     */
+    private LoadDriver run(StandInServer.Script script, int expected) throws Exception {
+        server = new StandInServer(script);
+        source = new SSEEventSource(server.getUrl("/events"), new SerialEventLoop(loopThread), SelectorTransport.getShared());
+        // flat out the shared transport may overflow the queue , the stream then resumes right away
+        source.setReconnectPolicy(new ReconnectPolicy(10, 10, 1, 10));
+        LoadDriver driver = new LoadDriver(expected);
+        source.addEventListener("*", driver);
+        loopThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.start();
+            }
+        });
+        return driver;
+    }
+
+    public void testSustainedThroughput() throws Exception {
+        LoadDriver driver = run(new StandInServer.Script().events(50000).size(64).names("quote", "trade", null), 50000);
+
+        assertTrue(driver.await(TIMEOUT));
+        LoadDriver.Report report = driver.report();
+        LOG.info("flat out : " + report);
+        assertEquals(50000, report.events);
+        assertEquals(0, report.outOfOrder);
+        assertTrue(report.eventsPerSecond > 0);
+    }
+
+    public void testLatencyAtAPacedRate() throws Exception {
+        LoadDriver driver = run(new StandInServer.Script().events(1000).rate(2000).size(128).comments(10), 1000);
+
+        assertTrue(driver.await(TIMEOUT));
+        LoadDriver.Report report = driver.report();
+        LOG.info("2000 events/s : " + report);
+        assertEquals(1000, report.events);
+        assertEquals(0, report.outOfOrder);
+        assertTrue(report.getPercentile(50) <= report.getPercentile(99));
+        // paced at 2000 events/s , the run can not go much faster than that
+        assertTrue(report.eventsPerSecond < 2500);
+    }
+
+    public void testResumesAfterEveryDroppedConnection() throws Exception {
+        LoadDriver driver = run(new StandInServer.Script().events(500).disconnectAfter(100).retry(10, 0), 500);
+
+        assertTrue(driver.await(TIMEOUT));
+        LoadDriver.Report report = driver.report();
+        assertEquals(500, report.events);
+        assertEquals(0, report.outOfOrder);
+
+        // the first request has no id , every reconnection resumes after the last event delivered
+        List<String> lastEventIds = server.getLastEventIds();
+        assertTrue(lastEventIds.size() >= 5);
+        assertNull(lastEventIds.get(0));
+        assertEquals("99", lastEventIds.get(1));
+        assertEquals("199", lastEventIds.get(2));
+        assertEquals("299", lastEventIds.get(3));
+        assertEquals("399", lastEventIds.get(4));
+    }
+
+    public void testMalformedLinesAndSlowWritesAreHarmless() throws Exception {
+        LoadDriver driver = run(new StandInServer.Script().events(40).names("a", "b").malformed(2).retry(5000, 7)
+                .slowWrites(16, 1), 40);
+
+        assertTrue(driver.await(TIMEOUT));
+        LoadDriver.Report report = driver.report();
+        assertEquals(40, report.events);
+        assertEquals(0, report.outOfOrder);
+        assertEquals(1, server.getConnections());
+    }
+
+    public void testCodeThatFailsOnTheTransportThreadReconnects() throws Exception {
+        server = new StandInServer(new StandInServer.Script().events(20));
+        source = new SSEEventSource(server.getUrl("/events"), new SerialEventLoop(loopThread), SelectorTransport.getShared());
+        source.setReconnectPolicy(new ReconnectPolicy(10, 10, 1, 10));
+        final AtomicBoolean failed = new AtomicBoolean();
+        // the key is taken on the transport thread
+        source.setConflation(AndEvent.ON_MESSAGE, new ConflationKey() {
+            @Override
+            public Object keyOf(AndEvent event) {
+                if ("9".equals(event.getId()) && failed.compareAndSet(false, true))
+                    throw new IllegalStateException("key bug");
+                return null;
+            }
+        });
+        LoadDriver driver = new LoadDriver(20);
+        source.addEventListener("*", driver);
+        loopThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.start();
+            }
+        });
+
+        // the connection is closed and resumed before the event that failed
+        assertTrue(driver.await(TIMEOUT));
+        assertEquals(0, driver.report().outOfOrder);
+        assertEquals(2, server.getConnections());
+        assertEquals("8", server.getLastEventIds().get(1));
+    }
+
+    public void testReconnectsWhenTheServerDropsEveryone() throws Exception {
+        LoadDriver driver = run(new StandInServer.Script().events(Long.MAX_VALUE).rate(1000).retry(10, 0), 200);
+
+        while (server.getEventsSent() < 100)
+            Thread.sleep(5);
+        server.disconnectAll();
+
+        assertTrue(driver.await(TIMEOUT));
+        assertEquals(0, driver.report().outOfOrder);
+        assertTrue(server.getConnections() >= 2);
+    }
+
+    public void testNoContentClosesForGood() throws Exception {
+        assertRefusedForGood(204);
+    }
+
+    public void testErrorStatusClosesForGood() throws Exception {
+        assertRefusedForGood(503);
+    }
+
+    /**
+     * The server answers every request with the status , the event source must close and not come back
+     */
+    private void assertRefusedForGood(int status) throws Exception {
+        run(new StandInServer.Script().status(status), 0);
+
+        Callable<Boolean> isClosed = new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return source.isClosed();
+            }
+        };
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (server.getConnections() == 0 || !loopThread.submit(isClosed).get())
+            assertTrue(System.currentTimeMillis() < deadline);
+
+        // the reconnect policy waits 10ms , it would have come back by now
+        Thread.sleep(200);
+        assertTrue(loopThread.submit(isClosed).get());
+        assertEquals(1, server.getConnections());
+    }
+}
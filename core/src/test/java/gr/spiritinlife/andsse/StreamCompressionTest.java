@@ -0,0 +1,376 @@
+package gr.spiritinlife.andsse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import junit.framework.TestCase;
+
+public class StreamCompressionTest extends TestCase {
+
+    private static final Logger LOG = Logger.getLogger("StreamCompressionTest");
+    private static final long TIMEOUT = 5000;
+
+    /**
+     * What the event loop of the stream received , and when
+     */
+    private static class Received {
+        final int what;
+        final String data;
+        final long at;
+
+        Received(int what, String data, long at) {
+            this.what = what;
+            this.data = data;
+            this.at = at;
+        }
+    }
+
+    /**
+     * Collects what the inflater emits
+     */
+    private static class Collector implements StreamInflater.Sink {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public void onData(byte[] buffer, int offset, int length) {
+            bytes.write(buffer, offset, length);
+        }
+
+        String text() {
+            return new String(bytes.toByteArray(), SSEParser.UTF_8);
+        }
+    }
+
+    private final LinkedBlockingQueue<Received> received = new LinkedBlockingQueue<>();
+    private ExecutorService uiThread;
+    private SerialEventLoop loop;
+    private LocalSSEServer server;
+    private EventStream stream;
+    private Transport transport;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        uiThread = Executors.newSingleThreadExecutor();
+        loop = new SerialEventLoop(uiThread);
+        loop.setTarget(new EventLoop.Target() {
+            @Override
+            public boolean handle(int what) {
+                if (what == EventSource.EVENT_BATCH) {
+                    stream.drain(new IEventCallback() {
+                        @Override
+                        public void onEvent(AndEvent event) {
+                            received.add(new Received(EventSource.EVENT, event.getData(), System.nanoTime()));
+                            event.recycle();
+                        }
+                    });
+                } else {
+                    received.add(new Received(what, null, System.nanoTime()));
+                }
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (transport != null)
+            transport.release(stream);
+        if (server != null)
+            server.close();
+        uiThread.shutdown();
+        super.tearDown();
+    }
+
+
+    //---------------------------------------//---------------------------------------//
+    //                                  Inflater                                       //
+
+    public void testSyncFlushIsNotHeldBack() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(wire, true);
+        Collector collector = new Collector();
+        StreamInflater inflater = new StreamInflater(StreamInflater.GZIP, collector);
+
+        gzip.write("data: first\n\n".getBytes(SSEParser.UTF_8));
+        gzip.flush();
+        byte[] first = wire.toByteArray();
+        inflater.feed(first, 0, first.length);
+        assertEquals("data: first\n\n", collector.text());
+
+        wire.reset();
+        gzip.write("data: second\n\n".getBytes(SSEParser.UTF_8));
+        gzip.finish();
+        byte[] rest = wire.toByteArray();
+        inflater.feed(rest, 0, rest.length);
+        assertEquals("data: first\n\ndata: second\n\n", collector.text());
+        inflater.end();
+    }
+
+    public void testGzipHeaderWithOptionalFieldsByteByByte() throws IOException {
+        byte[] text = "event: tick\ndata: \u03BA\u03CC\u03C3\u03BC\u03B5\n\n".getBytes(SSEParser.UTF_8);
+        byte[] member = gzipMember(text, true);
+
+        Collector collector = new Collector();
+        StreamInflater inflater = new StreamInflater(StreamInflater.GZIP, collector);
+        for (int i = 0; i < member.length; i++)
+            inflater.feed(member, i, 1);
+        assertTrue(Arrays.equals(text, collector.bytes.toByteArray()));
+        inflater.end();
+    }
+
+    public void testConcatenatedGzipMembers() throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        wire.write(gzipMember("data: a\n\n".getBytes(SSEParser.UTF_8), false));
+        wire.write(gzipMember("data: b\n\n".getBytes(SSEParser.UTF_8), true));
+        byte[] bytes = wire.toByteArray();
+
+        Collector collector = new Collector();
+        StreamInflater inflater = new StreamInflater(StreamInflater.GZIP, collector);
+        inflater.feed(bytes, 0, bytes.length);
+        assertEquals("data: a\n\ndata: b\n\n", collector.text());
+        inflater.end();
+    }
+
+    public void testCorruptGzipTrailerFails() {
+        byte[] member = gzipMember("data: a\n\n".getBytes(SSEParser.UTF_8), false);
+        member[member.length - 5] ^= 0x55;
+
+        StreamInflater inflater = new StreamInflater(StreamInflater.GZIP, new Collector());
+        try {
+            inflater.feed(member, 0, member.length);
+            fail("a corrupt crc must fail");
+        } catch (IOException expected) {
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public void testZlibAndRawDeflate() throws IOException {
+        byte[] text = "id: 1\ndata: deflated\n\n".getBytes(SSEParser.UTF_8);
+        for (boolean raw : new boolean[]{false, true}) {
+            byte[] deflated = deflate(text, raw);
+            Collector collector = new Collector();
+            StreamInflater inflater = new StreamInflater(StreamInflater.DEFLATE, collector);
+            for (int i = 0; i < deflated.length; i++)
+                inflater.feed(deflated, i, 1);
+            assertTrue(Arrays.equals(text, collector.bytes.toByteArray()));
+            inflater.end();
+        }
+    }
+
+    public void testRawDeflateThatStartsLikeZlib() throws IOException {
+        // a stored block whose first byte is 0x78 , the usual zlib CMF , but whose length is not a valid FLG
+        byte[] text = "data: stored\n\n".getBytes(SSEParser.UTF_8);
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        wire.write(0x78);
+        wire.write(text.length);
+        wire.write(0);
+        wire.write(~text.length);
+        wire.write(0xFF);
+        wire.write(text);
+        wire.write(new byte[]{0x03, 0x00});
+        byte[] deflated = wire.toByteArray();
+        assertTrue(((0x78 << 8) | text.length) % 31 != 0);
+
+        for (int chunk : new int[]{1, deflated.length}) {
+            Collector collector = new Collector();
+            StreamInflater inflater = new StreamInflater(StreamInflater.DEFLATE, collector);
+            for (int i = 0; i < deflated.length; i += chunk)
+                inflater.feed(deflated, i, Math.min(chunk, deflated.length - i));
+            assertEquals("data: stored\n\n", collector.text());
+            inflater.end();
+        }
+    }
+
+    //---------------------------------------//---------------------------------------//
+    //                                Local server                                     //
+
+    public void testGzipIsNegotiated() throws Exception {
+        server = new LocalSSEServer(StreamInflater.GZIP);
+        Map<String, String> headers = connect(true);
+        assertTrue(headers.get("accept-encoding").contains("gzip"));
+        assertEquals(StreamInflater.GZIP, server.getResponseEncoding());
+
+        sendAll(50);
+    }
+
+    public void testDeflateIsNegotiated() throws Exception {
+        server = new LocalSSEServer(StreamInflater.DEFLATE);
+        Map<String, String> headers = connect(true);
+        assertTrue(headers.get("accept-encoding").contains("deflate"));
+        assertEquals(StreamInflater.DEFLATE, server.getResponseEncoding());
+
+        sendAll(50);
+    }
+
+    public void testGzipOverSelectorTransport() throws Exception {
+        server = new LocalSSEServer(StreamInflater.GZIP);
+        connect(true, SelectorTransport.getShared());
+        assertEquals(StreamInflater.GZIP, server.getResponseEncoding());
+
+        sendAll(50);
+    }
+
+    public void testCompressionIsOptIn() throws Exception {
+        server = new LocalSSEServer(StreamInflater.DEFLATE);
+        connect(false);
+        assertNull(server.getResponseEncoding());
+
+        sendAll(10);
+    }
+
+    public void testReconnectAfterCompressedStream() throws Exception {
+        server = new LocalSSEServer(StreamInflater.GZIP);
+        connect(true);
+        sendAll(5);
+
+        // half an event and a half written gzip block are lost with the connection
+        server.send("data: lost");
+        server.closeConnection();
+        assertEquals(EventSource.ERROR, next().what);
+
+        transport.connect(stream);
+        server.accept(TIMEOUT);
+        assertEquals(EventSource.OPEN, next().what);
+        sendAll(5);
+    }
+
+    /**
+     * Sends the same events plain and with gzip , and compares the bytes on the wire
+     * and the time from the server's write to the main thread handler
+     */
+    public void testBytesOnWireAndLatency() throws Exception {
+        final int events = 300;
+
+        server = new LocalSSEServer(null);
+        connect(true);
+        long plainLatency = sendAll(events);
+        long plainBytes = server.getBytesOnWire();
+        transport.release(stream);
+        server.close();
+        assertEquals(EventSource.ERROR, next().what);
+
+        server = new LocalSSEServer(StreamInflater.GZIP);
+        connect(true);
+        long gzipLatency = sendAll(events);
+        long gzipBytes = server.getBytesOnWire();
+
+        LOG.info("plain " + plainBytes + " bytes , median latency " + plainLatency / 1000 + "us");
+        LOG.info("gzip  " + gzipBytes + " bytes , median latency " + gzipLatency / 1000 + "us");
+        LOG.info("saved " + (100 - gzipBytes * 100 / plainBytes) + "% of the bytes , added "
+                + (gzipLatency - plainLatency) / 1000 + "us of latency");
+
+        assertTrue(gzipBytes < plainBytes / 2);
+        assertTrue(gzipLatency < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    //---------------------------------------//---------------------------------------//
+
+
+    private Map<String, String> connect(boolean compression) throws Exception {
+        return connect(compression, null);
+    }
+
+    /**
+     * @param transport the transport to connect with , null for the shared {@link SelectorTransport SelectorTransport}
+     */
+    private Map<String, String> connect(boolean compression, Transport transport) throws Exception {
+        received.clear();
+        stream = new EventStream(server.getUrl("/events"), loop, new ListenerRegistry());
+        stream.setCompression(compression);
+        if (transport == null)
+            transport = SelectorTransport.getShared();
+        this.transport = transport;
+        transport.connect(stream);
+
+        Map<String, String> headers = server.accept(TIMEOUT);
+        assertEquals(EventSource.OPEN, next().what);
+        return headers;
+    }
+
+    /**
+     * Sends the events one at a time , each one must reach the main thread before the next is written
+     * @return long the median latency in ns
+     */
+    private long sendAll(int events) throws Exception {
+        long[] latencies = new long[events];
+        for (int i = 0; i < events; i++) {
+            String data = "{\"type\":\"price\",\"symbol\":\"ANDSSE\",\"sequence\":" + i + ",\"bid\":" + (100 + i % 7)
+                    + ".25,\"ask\":" + (101 + i % 5) + ".75,\"venue\":\"local\"}";
+            long sent = System.nanoTime();
+            server.send("event: price\nid: " + i + "\ndata: " + data + "\n\n");
+
+            Received event = next();
+            assertEquals(EventSource.EVENT, event.what);
+            assertEquals(data, event.data);
+            latencies[i] = event.at - sent;
+        }
+        Arrays.sort(latencies);
+        return latencies[events / 2];
+    }
+
+    private Received next() throws InterruptedException {
+        Received next = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("nothing reached the main thread handler", next);
+        return next;
+    }
+
+    /**
+     * Builds a gzip member by hand , optionally with every optional header field
+     */
+    private static byte[] gzipMember(byte[] text, boolean optionalFields) {
+        ByteArrayOutputStream member = new ByteArrayOutputStream();
+        member.write(0x1F);
+        member.write(0x8B);
+        member.write(8);
+        member.write(optionalFields ? 2 | 4 | 8 | 16 : 0);
+        for (int i = 0; i < 6; i++)
+            member.write(0);
+        if (optionalFields) {
+            member.write(3);
+            member.write(0);
+            member.write(new byte[]{'a', 'b', 'c'}, 0, 3);
+            member.write(new byte[]{'e', 'v', 0}, 0, 3);
+            member.write(new byte[]{'c', 0}, 0, 2);
+            member.write(0x12);
+            member.write(0x34);
+        }
+
+        byte[] deflated = deflate(text, true);
+        member.write(deflated, 0, deflated.length);
+
+        CRC32 crc = new CRC32();
+        crc.update(text, 0, text.length);
+        writeInt(member, crc.getValue());
+        writeInt(member, text.length);
+        return member.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] text, boolean raw) {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        DeflaterOutputStream out = new DeflaterOutputStream(deflated, new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+        try {
+            out.write(text);
+            out.close();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return deflated.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        for (int i = 0; i < 4; i++)
+            out.write((int) (value >>> (8 * i)) & 0xFF);
+    }
+}
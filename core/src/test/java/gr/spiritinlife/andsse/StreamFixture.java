@@ -0,0 +1,120 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@link EventStream EventStream} with an open connection and no transport , for the tests that feed it the bytes
+ * of the response and drain the events themselves , like the transport thread and the main thread do
+ */
+final class StreamFixture {
+
+    /**
+     * What of a delivered event the test compares
+     */
+    interface Format {
+        String of(AndEvent event);
+    }
+
+    static final Format NAME = new Format() {
+        @Override
+        public String of(AndEvent event) {
+            return event.getEventName();
+        }
+    };
+
+    static final Format NAME_DATA = new Format() {
+        @Override
+        public String of(AndEvent event) {
+            return event.getEventName() + "|" + event.getData();
+        }
+    };
+
+    static final Format ID_DATA = new Format() {
+        @Override
+        public String of(AndEvent event) {
+            return event.getId() + "|" + event.getData();
+        }
+    };
+
+    static final Format NAME_DATA_ID = new Format() {
+        @Override
+        public String of(AndEvent event) {
+            return event.getEventName() + "|" + event.getData() + "|" + event.getId();
+        }
+    };
+
+    /**
+     * Collects the delivered events in a format and recycles them , like the main thread does
+     */
+    private static final class Recorder implements IEventCallback {
+        final List<String> events = new ArrayList<>();
+        final Format format;
+
+        Recorder(Format format) {
+            this.format = format;
+        }
+
+        @Override
+        public void onEvent(AndEvent event) {
+            events.add(format.of(event));
+            event.recycle();
+        }
+    }
+
+
+    final EventStream stream;
+
+
+    /**
+     * The test drains the stream itself , a loop without a target ignores the messages
+     */
+    StreamFixture() throws IOException {
+        this(new SerialEventLoop(SSEExecutors.DIRECT), new ListenerRegistry());
+    }
+
+    /**
+     * @param loop EventLoop the messages of the stream go to
+     * @param executorListeners ListenerRegistry of the listeners that run on executors
+     */
+    StreamFixture(EventLoop loop, ListenerRegistry executorListeners) throws IOException {
+        stream = new EventStream(new URL("http://127.0.0.1/events"), loop, executorListeners);
+        stream.onConnected(null);
+    }
+
+
+    void feed(String text) throws IOException {
+        feed(text.getBytes(SSEParser.UTF_8));
+    }
+
+    void feed(byte[] bytes) throws IOException {
+        stream.onData(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return List the events of one pass of the main thread , as "name|data"
+     */
+    List<String> drain() {
+        return drain(NAME_DATA);
+    }
+
+    /**
+     * @return List the events of one pass of the main thread , in the format
+     */
+    List<String> drain(Format format) {
+        Recorder recorder = new Recorder(format);
+        stream.drain(recorder);
+        return recorder.events;
+    }
+
+    /**
+     * @return List every waiting event , however many passes it takes , in the format
+     */
+    List<String> drainAll(Format format) {
+        Recorder recorder = new Recorder(format);
+        while (stream.drain(recorder) > 0);
+        return recorder.events;
+    }
+}
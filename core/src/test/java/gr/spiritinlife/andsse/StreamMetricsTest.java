@@ -0,0 +1,90 @@
+package gr.spiritinlife.andsse;
+
+import java.net.URL;
+import junit.framework.TestCase;
+
+public class StreamMetricsTest extends TestCase {
+
+    public void testHistogramPercentilesAreBucketBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+
+        for (int i = 0; i < 99; i++)
+            histogram.record(1000);
+        histogram.record(1000000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals((99 * 1000 + 1000000) / 100, histogram.getMean());
+        // 1000 is in the bucket that ends at 1023
+        assertEquals(1023, histogram.getPercentile(50));
+        assertEquals(1023, histogram.getPercentile(99));
+        // the last bucket ends above the max , the max is the better answer
+        assertEquals(1000000, histogram.getPercentile(100));
+    }
+
+    public void testHistogramSnapshotDoesNotChange() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        LatencyHistogram snapshot = histogram.snapshot();
+        histogram.record(7);
+        histogram.record(-3);
+
+        assertEquals(1, snapshot.getCount());
+        assertEquals(3, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(1));
+    }
+
+    public void testStripedCounterFromManyThreads() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        Thread[] threads = new Thread[6];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++)
+                        counter.increment();
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(600000, counter.sum());
+    }
+
+    public void testStreamRecordsWhatItReceives() throws Exception {
+        EventStream stream = new EventStream(new URL("http://127.0.0.1/events"), new SerialEventLoop(SSEExecutors.DIRECT), new ListenerRegistry());
+        stream.setQueue(2, OverflowPolicy.DROP_NEWEST);
+        stream.setConflation("tick", ConflationKey.EVENT_NAME);
+        stream.onConnected(null);
+
+        // an event split across two reads , then more than the queue holds
+        byte[] first = "data: a\n\nda".getBytes(SSEParser.UTF_8);
+        byte[] second = "ta: b\n\ndata: c\n\nevent: tick\ndata: 1\n\nevent: tick\ndata: 2\n\n".getBytes(SSEParser.UTF_8);
+        stream.onData(first, 0, first.length);
+        stream.onData(second, 0, second.length);
+
+        StreamMetrics.Snapshot snapshot = stream.getMetrics().snapshot();
+        assertEquals(first.length + second.length, snapshot.getBytesReceived());
+        assertEquals(5, snapshot.getEventsReceived());
+        assertTrue(snapshot.getEventsPerSecond() > 0);
+        assertEquals(5, snapshot.getParseTime().getCount());
+        assertEquals(3, snapshot.getQueueDepth());
+        assertEquals(1, snapshot.getDroppedEvents());
+        assertEquals(1, snapshot.getConflatedEvents());
+        assertEquals(0, snapshot.getDeliveryLatency().getCount());
+
+        stream.drain(new IEventCallback() {
+            @Override
+            public void onEvent(AndEvent event) {
+                assertTrue(event.parsedAt != 0);
+                event.recycle();
+            }
+        });
+        snapshot = stream.getMetrics().snapshot();
+        assertEquals(0, snapshot.getQueueDepth());
+        // nothing was received since the previous snapshot
+        assertEquals(0.0, snapshot.getEventsPerSecond());
+    }
+}
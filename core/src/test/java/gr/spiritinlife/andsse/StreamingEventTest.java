@@ -0,0 +1,257 @@
+package gr.spiritinlife.andsse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+public class StreamingEventTest extends TestCase {
+
+    private StreamFixture fixture;
+    private EventStream stream;
+
+    /**
+     * Records what a streaming listener was told , the data as a String
+     */
+    private static class ChunkRecorder implements StreamingEventCallback {
+        final List<String> calls = new ArrayList<>();
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int chunks = 0;
+
+        @Override
+        public void onEventStart(String eventName) {
+            calls.add("start " + eventName);
+        }
+
+        @Override
+        public void onEventData(byte[] bytes, int offset, int length) {
+            data.write(bytes, offset, length);
+            chunks++;
+        }
+
+        @Override
+        public void onEventEnd(String id) {
+            calls.add("end " + id + " " + new String(data.toByteArray(), SSEParser.UTF_8));
+            data.reset();
+        }
+
+        @Override
+        public void onEventAborted() {
+            calls.add("aborted");
+            data.reset();
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        fixture = new StreamFixture();
+        stream = fixture.stream;
+    }
+
+    public void testDataArrivesInChunksAndOtherNamesAreDispatched() throws Exception {
+        ChunkRecorder snapshot = new ChunkRecorder();
+        stream.setStreamingListener("snapshot", snapshot);
+
+        fixture.feed("event: snapshot\ndata: first");
+        fixture.feed(" line\ndata: second line\nid: 9\n\nevent: quote\ndata: 1\n\n");
+
+        assertEquals("[start snapshot, end 9 first line\nsecond line]", snapshot.calls.toString());
+        // straight from every chunk it was fed , plus the LF that joins the lines
+        assertEquals(4, snapshot.chunks);
+        assertEquals("[quote|1]", fixture.drain().toString());
+    }
+
+    public void testEventFieldAfterTheDataIsNotStreamed() throws Exception {
+        ChunkRecorder snapshot = new ChunkRecorder();
+        stream.setStreamingListener("snapshot", snapshot);
+
+        fixture.feed("data: late\nevent: snapshot\n\n");
+
+        assertTrue(snapshot.calls.isEmpty());
+        assertEquals("[snapshot|late]", fixture.drain().toString());
+    }
+
+    public void testLostConnectionAbortsTheEvent() throws Exception {
+        ChunkRecorder messages = new ChunkRecorder();
+        stream.setStreamingListener(AndEvent.ON_MESSAGE, messages);
+
+        fixture.feed("data: half of it");
+        stream.onClosed();
+        stream.onConnected(null);
+        fixture.feed("data: all of it\n\n");
+
+        assertEquals("[start " + AndEvent.ON_MESSAGE + ", aborted, start " + AndEvent.ON_MESSAGE + ", end  all of it]",
+                messages.calls.toString());
+    }
+
+    public void testInputStreamHoldsNoMoreThanItsBuffer() throws Exception {
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        final SynchronousQueue<byte[]> received = new SynchronousQueue<>();
+        try {
+            stream.setStreamingListener("snapshot", new EventInputStream.Listener(reader, 1024, true, new EventInputStream.Callback() {
+                @Override
+                public void onEvent(EventInputStream data) throws IOException {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[300];
+                    int read;
+                    while ((read = data.read(buffer, 0, buffer.length)) != -1) {
+                        assertTrue(read <= 1024);
+                        out.write(buffer, 0, read);
+                    }
+                    assertEquals("7", data.getId());
+                    try {
+                        received.put(out.toByteArray());
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            }));
+
+            // a megabyte through a 1KB buffer , the feed waits for the reader
+            byte[] payload = new byte[1 << 20];
+            Arrays.fill(payload, (byte) 'x');
+            fixture.feed("event: snapshot\nid: 7\ndata: ");
+            for (int i = 0; i < payload.length; i += 8192)
+                fixture.feed(Arrays.copyOfRange(payload, i, i + 8192));
+            fixture.feed("\n\n");
+
+            assertTrue(Arrays.equals(payload, received.poll(10, TimeUnit.SECONDS)));
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    public void testClosedInputStreamSkipsTheRest() throws Exception {
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        final SynchronousQueue<Integer> firstByte = new SynchronousQueue<>();
+        try {
+            stream.setStreamingListener("snapshot", new EventInputStream.Listener(reader, 16, true, new EventInputStream.Callback() {
+                @Override
+                public void onEvent(EventInputStream data) throws IOException {
+                    int b = data.read();
+                    data.close();
+                    try {
+                        firstByte.put(b);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+            }));
+
+            byte[] payload = new byte[64 * 1024];
+            Arrays.fill(payload, (byte) 'y');
+            fixture.feed("event: snapshot\ndata: ");
+            fixture.feed(payload);
+            fixture.feed("\n\nevent: quote\ndata: 1\n\n");
+
+            assertEquals(Integer.valueOf('y'), firstByte.poll(10, TimeUnit.SECONDS));
+            assertEquals("[quote|1]", fixture.drain().toString());
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the event once it is released , and keeps what failed
+     */
+    private static EventInputStream.Callback lateReader(final CountDownLatch released, final BlockingQueue<String> failures) {
+        return new EventInputStream.Callback() {
+            @Override
+            public void onEvent(EventInputStream data) throws IOException {
+                try {
+                    released.await(10, TimeUnit.SECONDS);
+                    while (data.read() != -1)
+                        ;
+                } catch (IOException e) {
+                    failures.add(e.getMessage());
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * A reader that does not read holds the transport thread , until the connection is closed
+     */
+    public void testClosingTheConnectionFreesTheTransportThread() throws Exception {
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        ExecutorService transport = Executors.newSingleThreadExecutor();
+        CountDownLatch released = new CountDownLatch(1);
+        BlockingQueue<String> failures = new LinkedBlockingQueue<>();
+        try {
+            stream.setStreamingListener("snapshot", new EventInputStream.Listener(reader, 16, true, lateReader(released, failures)));
+
+            Future<?> feeding = transport.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    byte[] payload = new byte[1024];
+                    Arrays.fill(payload, (byte) 'z');
+                    fixture.feed("event: snapshot\ndata: ");
+                    fixture.feed(payload);
+                    return null;
+                }
+            });
+            Thread.sleep(50);
+            assertFalse(feeding.isDone());
+
+            stream.abortStreaming();
+            feeding.get(10, TimeUnit.SECONDS);
+            released.countDown();
+            assertNotNull(failures.poll(10, TimeUnit.SECONDS));
+        } finally {
+            reader.shutdownNow();
+            transport.shutdownNow();
+        }
+    }
+
+    public void testSharedTransportDropsWhatTheReaderCanNotTake() throws Exception {
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        CountDownLatch released = new CountDownLatch(1);
+        BlockingQueue<String> failures = new LinkedBlockingQueue<>();
+        try {
+            stream.setStreamingListener("snapshot", new EventInputStream.Listener(reader, 16, false, lateReader(released, failures)));
+
+            // the feed never waits , what does not fit in the buffer is dropped
+            byte[] payload = new byte[1024];
+            Arrays.fill(payload, (byte) 'z');
+            fixture.feed("event: snapshot\ndata: ");
+            fixture.feed(payload);
+            fixture.feed("\n\nevent: quote\ndata: 1\n\n");
+            released.countDown();
+
+            assertNotNull(failures.poll(10, TimeUnit.SECONDS));
+            assertEquals("[quote|1]", fixture.drain().toString());
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    public void testDirectExecutorIsRefused() {
+        try {
+            new EventInputStream.Listener(SSEExecutors.DIRECT, 1024, true, null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testBackgroundExecutorIsRefused() {
+        try {
+            new EventInputStream.Listener(SSEExecutors.BACKGROUND, 1024, true, null);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package gr.spiritinlife.andsse;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+public class SubscriptionTest extends TestCase {
+
+    private static final long TIMEOUT = 5000;
+
+    private ExecutorService loopThread;
+    private StandInServer server;
+    private SSEEventSource source;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        loopThread = Executors.newSingleThreadExecutor();
+        // an event every 5ms , for as long as the test wants
+        server = new StandInServer(new StandInServer.Script().events(Long.MAX_VALUE).rate(200));
+        source = new SSEEventSource(server.getUrl("/events"), new SerialEventLoop(loopThread), SelectorTransport.getShared());
+        source.setGracePeriod(200);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        loopThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.destroy();
+            }
+        });
+        server.close();
+        loopThread.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Waits for the event loop to handle what was sent to it before , then reads whether the source is closed
+     */
+    private boolean isClosed() throws Exception {
+        Future<Boolean> closed = loopThread.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return source.isClosed();
+            }
+        });
+        return closed.get(TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void waitUntilClosed() throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!isClosed() && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+    }
+
+    public void testConsumersShareOneConnection() throws Exception {
+        LoadDriver first = new LoadDriver(10);
+        LoadDriver second = new LoadDriver(10);
+        Subscription a = source.attach().addEventListener("*", first);
+        Subscription b = source.attach().addEventListener("*", second);
+
+        assertTrue(first.await(TIMEOUT));
+        assertTrue(second.await(TIMEOUT));
+        assertEquals(2, source.getAttachments());
+        assertEquals(1, server.getConnections());
+
+        a.detach();
+        b.detach();
+        assertEquals(0, source.getAttachments());
+    }
+
+    public void testConnectionSurvivesAConsumerThatComesBackWithinTheGracePeriod() throws Exception {
+        LoadDriver before = new LoadDriver(5);
+        Subscription screen = source.attach().addEventListener("*", before);
+        assertTrue(before.await(TIMEOUT));
+
+        // a rotation , the old screen leaves and the new one comes right after
+        screen.detach();
+        Thread.sleep(50);
+        LoadDriver after = new LoadDriver(5);
+        Subscription rotated = source.attach().addEventListener("*", after);
+        assertTrue(after.await(TIMEOUT));
+
+        // longer than the grace period , the grace of the first screen must not close the connection of the second
+        Thread.sleep(400);
+        assertFalse(isClosed());
+        assertEquals(1, server.getConnections());
+        rotated.detach();
+    }
+
+    public void testConnectionClosesOnceTheGracePeriodEnds() throws Exception {
+        LoadDriver driver = new LoadDriver(5);
+        Subscription screen = source.attach().addEventListener("*", driver);
+        assertTrue(driver.await(TIMEOUT));
+
+        long detachedAt = System.currentTimeMillis();
+        screen.detach();
+        assertFalse(isClosed());
+        waitUntilClosed();
+        assertTrue(isClosed());
+        assertTrue(System.currentTimeMillis() - detachedAt >= 200);
+
+        // the next consumer opens it again , resuming after the last event
+        LoadDriver next = new LoadDriver(5);
+        source.attach().addEventListener("*", next);
+        assertTrue(next.await(TIMEOUT));
+        assertEquals(2, server.getConnections());
+        assertNotNull(server.getLastEventIds().get(1));
+    }
+
+    public void testConsumerThatAttachesWhileTheConnectionClosesReopensIt() throws Exception {
+        LoadDriver before = new LoadDriver(5);
+        Subscription screen = source.attach().addEventListener("*", before);
+        assertTrue(before.await(TIMEOUT));
+        screen.detach();
+
+        // the grace period ends and a consumer attaches before the transport reported the connection closed
+        final LoadDriver after = new LoadDriver(5);
+        loopThread.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                source.closeConnection();
+                source.attach().addEventListener("*", after);
+                return null;
+            }
+        }).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertTrue(after.await(TIMEOUT));
+        assertFalse(isClosed());
+        assertEquals(2, server.getConnections());
+    }
+
+    public void testDetachRemovesOnlyTheListenersOfTheConsumer() throws Exception {
+        LoadDriver stays = new LoadDriver(5);
+        final int[] leaving = new int[1];
+        IEventCallback leaver = new IEventCallback() {
+            @Override
+            public void onEvent(AndEvent event) {
+                leaving[0]++;
+            }
+        };
+        source.attach().addEventListener("*", stays);
+        Subscription screen = source.attach().addEventListener("*", leaver);
+        assertTrue(stays.await(TIMEOUT));
+
+        screen.detach();
+        assertTrue(screen.isDetached());
+        // removing a listener does not reach back to the event loop , wait for what it was already handling
+        isClosed();
+        int seen = leaving[0];
+        Thread.sleep(100);
+        assertEquals(seen, leaving[0]);
+        assertFalse(source.removeEventListener("*", leaver));
+
+        try {
+            screen.addEventListener("*", leaver);
+            fail("a detached subscription takes no listeners");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
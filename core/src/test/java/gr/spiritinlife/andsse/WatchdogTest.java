@@ -0,0 +1,97 @@
+package gr.spiritinlife.andsse;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junit.framework.TestCase;
+
+public class WatchdogTest extends TestCase {
+
+    private static final long TIMEOUT = 5000;
+
+    private ExecutorService loopThread;
+    private StandInServer server;
+    private SSEEventSource source;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        loopThread = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (source != null) {
+            loopThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    source.destroy();
+                }
+            });
+        }
+        if (server != null)
+            server.close();
+        loopThread.shutdown();
+        super.tearDown();
+    }
+
+    private LoadDriver start(StandInServer.Script script, int expected, long heartbeatMs) throws Exception {
+        server = new StandInServer(script);
+        source = new SSEEventSource(server.getUrl("/events"), new SerialEventLoop(loopThread), SelectorTransport.getShared());
+        source.setReconnectPolicy(new ReconnectPolicy(10, 10, 1, 60000));
+        source.setWatchdog(heartbeatMs, 3);
+        LoadDriver driver = new LoadDriver(expected);
+        source.addEventListener("*", driver);
+        loopThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.start();
+            }
+        });
+        return driver;
+    }
+
+    /**
+     * A server that goes quiet but keeps the connection , like the far end of a half open connection
+     */
+    public void testSilentConnectionIsAbortedAndResumed() throws Exception {
+        LoadDriver driver = start(new StandInServer.Script().events(5), 5, 50);
+        assertTrue(driver.await(TIMEOUT));
+
+        long started = System.currentTimeMillis();
+        while (server.getLastEventIds().size() < 2 && System.currentTimeMillis() - started < TIMEOUT)
+            Thread.sleep(5);
+        long recovery = System.currentTimeMillis() - started;
+
+        List<String> lastEventIds = server.getLastEventIds();
+        assertTrue(lastEventIds.size() >= 2);
+        assertEquals("4", lastEventIds.get(1));
+        // three missed heartbeats , the check that notices them and the reconnection wait
+        assertTrue("recovered in " + recovery + "ms", recovery < 1000);
+    }
+
+    /**
+     * Heartbeats keep a connection alive even when no event arrives
+     */
+    public void testTrafficKeepsTheConnection() throws Exception {
+        // an event every 20ms , well within three intervals of 50ms
+        LoadDriver driver = start(new StandInServer.Script().events(Long.MAX_VALUE).rate(50), 20, 50);
+        assertTrue(driver.await(TIMEOUT));
+        Thread.sleep(300);
+        assertEquals(1, server.getConnections());
+        assertTrue(source.isOpen());
+    }
+
+    public void testCommentsCountAsTraffic() throws Exception {
+        EventStream stream = new EventStream(new URL("http://127.0.0.1/events"), new SerialEventLoop(SSEExecutors.DIRECT), new ListenerRegistry());
+        stream.onConnected(null);
+        long connectedAt = stream.getLastReceived();
+
+        Thread.sleep(2);
+        byte[] heartbeat = ": heartbeat\n".getBytes(SSEParser.UTF_8);
+        stream.onData(heartbeat, 0, heartbeat.length);
+        assertTrue(stream.getLastReceived() > connectedAt);
+        assertEquals(0, stream.getQueueDepth());
+    }
+}
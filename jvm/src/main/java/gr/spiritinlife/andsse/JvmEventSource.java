@@ -0,0 +1,101 @@
+package gr.spiritinlife.andsse;
+
+import java.io.Closeable;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The {@link SSEEventSource event source} of a plain JVM.
+ *
+ * Its connection is read on a virtual thread of the {@link VirtualThreadTransport VirtualThreadTransport} , unless another
+ * transport is given , and its {@link SerialEventLoop event loop} borrows a virtual thread only while it has messages.
+ * An idle event source holds no thread at all , so a process can keep thousands of them.
+ *
+ * The listeners that were added without an executor run on the event loop , one at a time , like on the main thread of Android.
+ * {@link #start() start} and {@link #close() close} can be called from any thread , they run on the loop too.
+ *
+ * eg.
+ * <pre>
+ * try (JvmEventSource source = new JvmEventSource(new URL("http://relay.local/events"))) {
+ *     source.addEventListener("quote", callback);
+ *     source.start();
+ *     ...
+ * }
+ * </pre>
+ */
+public class JvmEventSource extends SSEEventSource implements Closeable {
+
+    /**
+     * Runs the event loops of every event source , a virtual thread per pass of a loop
+     */
+    private static final ExecutorService LOOPS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final SerialEventLoop loop;
+
+    /**
+     * Creates an event source that is read by the {@link VirtualThreadTransport#getShared() shared VirtualThreadTransport}
+     * @param url URL of the stream , http only
+     */
+    public JvmEventSource(URL url) {
+        this(url, new SerialEventLoop(LOOPS), VirtualThreadTransport.getShared());
+    }
+
+    /**
+     * Creates an event source whose connection is driven by a {@link SelectorTransport SelectorTransport} ,
+     * so that its socket shares the selector thread with other streams instead of having a virtual thread
+     * @param url URL of the stream , http only
+     * @param transport {@link SelectorTransport#getShared() SelectorTransport.getShared()}
+     */
+    public JvmEventSource(URL url, SelectorTransport transport) {
+        this(url, new SerialEventLoop(LOOPS), transport);
+    }
+
+    /**
+     * Creates an event source of a stream that several equivalent servers serve. Every connection goes to the healthy one
+     * that answered fastest so far , and a lost connection fails over to another one , resuming after the last event
+     * @param urls the endpoints , http only , the first one is tried first
+     */
+    public JvmEventSource(List<URL> urls) {
+        this(urls, new SerialEventLoop(LOOPS), VirtualThreadTransport.getShared());
+    }
+
+    private JvmEventSource(URL url, SerialEventLoop loop, Transport transport) {
+        super(url, loop, transport);
+        this.loop = loop;
+    }
+
+    private JvmEventSource(List<URL> urls, SerialEventLoop loop, Transport transport) {
+        super(urls, loop, transport);
+        this.loop = loop;
+    }
+
+
+    /**
+     * Opens the connection , on the event loop
+     */
+    @Override
+    public void start() {
+        loop.execute(super::start);
+    }
+
+    /**
+     * Closes the connection , on the event loop. Unlike {@link #close() close} it can be {@link #start() started} again ,
+     * right away too , the connection then opens again once the transport closed the old one
+     */
+    public void stop() {
+        loop.execute(() -> {
+            if (!isClosed())
+                closeConnection();
+        });
+    }
+
+    /**
+     * Closes the connection , stops the metrics and forgets every listener , on the event loop
+     */
+    @Override
+    public void close() {
+        loop.execute(this::destroy);
+    }
+}
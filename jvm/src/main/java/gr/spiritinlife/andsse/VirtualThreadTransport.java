@@ -0,0 +1,202 @@
+package gr.spiritinlife.andsse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link Transport Transport} that reads every stream on a virtual thread of its own , with a blocking socket.
+ *
+ * The code of a stream is as simple as the one of a thread per stream , but a virtual thread that waits for the server
+ * holds no platform thread , so one process can keep tens of thousands of streams open.
+ * Apart from its thread , a stream costs its socket and a {@link #READ_BUFFER_SIZE small} read buffer.
+ *
+ * It speaks plain HTTP/1.1 ( http urls only , redirects are not followed ), like the {@link SelectorTransport SelectorTransport}.
+ */
+public final class VirtualThreadTransport implements Transport {
+
+    private static final Logger LOG = Logger.getLogger("AndSSE");
+    private static final int CONNECTION_TIMEOUT = 3000;
+
+    /**
+     * Every stream has its own buffer , a small one keeps many idle streams cheap
+     */
+    private static final int READ_BUFFER_SIZE = 4096;
+
+    private static final VirtualThreadTransport SHARED = new VirtualThreadTransport();
+
+    /**
+     * @return VirtualThreadTransport the transport shared by the whole process , it has no state but its connections
+     */
+    public static VirtualThreadTransport getShared() {
+        return SHARED;
+    }
+
+
+    /**
+     * One connection of a stream , read by its own virtual thread
+     */
+    private final class Connection implements HttpResponseDecoder.Listener, Runnable {
+
+        final EventStream stream;
+        final HttpResponseDecoder decoder = new HttpResponseDecoder(this);
+        final Socket socket = new Socket();
+
+        /**
+         * The connection this one replaced , its thread must be done with the stream before this one starts
+         */
+        final Connection previous;
+
+        /**
+         * Counted down when the thread is done with the stream
+         */
+        final CountDownLatch ended = new CountDownLatch(1);
+
+        volatile boolean closed = false;
+
+        /**
+         * Set when a new connection of the stream replaced this one , the stream is not told that this one closed
+         */
+        volatile boolean replaced = false;
+
+        Connection(EventStream stream, Connection previous) {
+            this.stream = stream;
+            this.previous = previous;
+        }
+
+        @Override
+        public void onHeaders(Map<String, String> headers) throws IOException {
+            // the headers are in , from now on the server may stay quiet for as long as it wants
+            socket.setSoTimeout(0);
+            stream.onConnected(headers.get("content-type"), headers.get("content-encoding"));
+        }
+
+        @Override
+        public void onRefused(int status) {
+            stream.onRefused(status);
+        }
+
+        @Override
+        public void onBody(byte[] buffer, int offset, int length) throws IOException {
+            stream.onData(buffer, offset, length);
+        }
+
+        @Override
+        public void run() {
+            URL url = stream.getUrl();
+            try {
+                // the parser is not thread safe , and the closed connection still has to let go of it
+                if (previous != null)
+                    previous.ended.await();
+                socket.connect(new InetSocketAddress(url.getHost(), HttpRequest.port(url)), CONNECTION_TIMEOUT);
+                socket.setSoTimeout(CONNECTION_TIMEOUT);
+                socket.getOutputStream().write(HttpRequest.build(stream));
+
+                InputStream in = socket.getInputStream();
+                byte[] buffer = new byte[READ_BUFFER_SIZE];
+                int read;
+                while (!closed && (read = in.read(buffer)) != -1)
+                    decoder.feed(buffer, 0, read);
+            } catch (IOException e) {
+                // closing the socket is how a connection is stopped , that is not a failure
+                if (!closed)
+                    LOG.log(Level.SEVERE, "Connection to " + url + " failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+                connections.remove(stream, this);
+                // this sets the eventsource to CLOSED , unless it already has a new connection
+                if (!replaced)
+                    stream.onClosed();
+                ended.countDown();
+            }
+        }
+
+        /**
+         * Stops the connection from any thread , the blocked read fails and the thread ends
+         */
+        void close() {
+            closed = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+
+    /**
+     * The connection of every stream that is connecting or connected
+     */
+    private final ConcurrentHashMap<EventStream, Connection> connections = new ConcurrentHashMap<>();
+
+
+    private VirtualThreadTransport() {
+    }
+
+
+    //---------------------------------------//---------------------------------------//
+    //                                    Transport                                    //
+
+    @Override
+    public void connect(EventStream stream) {
+        URL url = stream.getUrl();
+        if (!"http".equals(url.getProtocol())) {
+            LOG.severe("VirtualThreadTransport only supports http : " + url);
+            stream.onClosed();
+            return;
+        }
+
+        // the event loop is the only one that connects a stream , it is marked before it can be seen replaced
+        Connection previous = connections.get(stream);
+        if (previous != null)
+            previous.replaced = true;
+        Connection connection = new Connection(stream, previous);
+        connections.put(stream, connection);
+        if (previous != null) {
+            stream.abortStreaming();
+            previous.close();
+        }
+
+        Thread.ofVirtual().name("AndSSE_" + url).start(connection);
+    }
+
+    @Override
+    public void disconnect(EventStream stream) {
+        Connection connection = connections.remove(stream);
+        if (connection != null) {
+            stream.abortStreaming();
+            connection.close();
+        }
+    }
+
+    @Override
+    public void release(EventStream stream) {
+        // the threads end with their connections , there is nothing else to release
+        disconnect(stream);
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    //---------------------------------------//---------------------------------------//
+
+
+    /**
+     * @return int how many streams are connecting or connected
+     */
+    public int getConnectionCount() {
+        return connections.size();
+    }
+}
@@ -0,0 +1,104 @@
+package gr.spiritinlife.andsse;
+
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+public class JvmEventSourceTest extends TestCase {
+
+    private static final long TIMEOUT = 5000;
+
+    private final LinkedBlockingQueue<String> received = new LinkedBlockingQueue<>();
+    private LocalSSEServer server;
+    private JvmEventSource source;
+
+    /**
+     * Records the events as "id|data" , with the thread they were delivered on
+     */
+    private final IEventCallback recorder = new IEventCallback() {
+        @Override
+        public void onEvent(AndEvent event) {
+            received.add(event.getId() + "|" + event.getData() + "|" + Thread.currentThread().isVirtual());
+        }
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new LocalSSEServer(null);
+        source = new JvmEventSource(server.getUrl("/events"));
+        source.setReconnectPolicy(new ReconnectPolicy(10, 10, 1, 60000));
+        source.addEventListener(AndEvent.ON_MESSAGE, recorder);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        source.close();
+        server.close();
+        super.tearDown();
+    }
+
+    private String next() throws InterruptedException {
+        String event = received.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("no event in " + TIMEOUT + "ms", event);
+        return event;
+    }
+
+    public void testDeliversEventsOnTheEventLoop() throws Exception {
+        source.start();
+        server.accept(TIMEOUT);
+
+        server.send("id: 1\ndata: first\n\nid: 2\ndata: second\n\n");
+        assertEquals("1|first|true", next());
+        assertEquals("2|second|true", next());
+        assertTrue(source.isOpen());
+        assertEquals("2", source.getLastEventId());
+    }
+
+    public void testReconnectsAfterTheLastEvent() throws Exception {
+        source.start();
+        server.accept(TIMEOUT);
+        server.send("id: 7\ndata: before\n\n");
+        assertEquals("7|before|true", next());
+
+        server.closeConnection();
+        Map<String, String> headers = server.accept(TIMEOUT);
+        assertEquals("7", headers.get("last-event-id"));
+
+        server.send("id: 8\ndata: after\n\n");
+        assertEquals("8|after|true", next());
+    }
+
+    public void testStartRightAfterStopReconnects() throws Exception {
+        source.start();
+        server.accept(TIMEOUT);
+        server.send("id: 1\ndata: before\n\n");
+        assertEquals("1|before|true", next());
+
+        // the start comes while the connection is still being closed , it must not be lost
+        source.stop();
+        source.start();
+        Map<String, String> headers = server.accept(TIMEOUT);
+        assertEquals("1", headers.get("last-event-id"));
+
+        server.send("id: 2\ndata: after\n\n");
+        assertEquals("2|after|true", next());
+    }
+
+    public void testCloseStopsTheConnection() throws Exception {
+        source.start();
+        server.accept(TIMEOUT);
+        server.send("data: open\n\n");
+        next();
+
+        source.close();
+        // the sources of the other tests close on their own loops too
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while ((!source.isClosed() || VirtualThreadTransport.getShared().getConnectionCount() > 0)
+                && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(source.isClosed());
+        assertEquals(0, VirtualThreadTransport.getShared().getConnectionCount());
+    }
+}
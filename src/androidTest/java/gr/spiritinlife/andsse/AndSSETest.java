@@ -0,0 +1,69 @@
+package gr.spiritinlife.andsse;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import junit.framework.TestCase;
+
+public class AndSSETest extends TestCase {
+
+    private static final long TIMEOUT = 5000;
+
+    private ExecutorService loopThread;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        loopThread = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        loopThread.shutdown();
+        super.tearDown();
+    }
+
+    private SSEEventSource source(AndSSE andSSE) throws Exception {
+        // nothing listens on the port , the connection is refused
+        return new SSEEventSource(Collections.singletonList(new URL("http://127.0.0.1:1/events")), new SerialEventLoop(loopThread), andSSE);
+    }
+
+    public void testDestroyEndsTheThread() throws Exception {
+        AndSSE andSSE = new AndSSE();
+        andSSE.start();
+        final SSEEventSource source = source(andSSE);
+        loopThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.start();
+            }
+        });
+        Thread.sleep(100);
+        loopThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                source.destroy();
+            }
+        });
+
+        andSSE.join(TIMEOUT);
+        assertFalse(andSSE.isAlive());
+    }
+
+    public void testDestroyBeforeTheThreadIsReadyEndsIt() throws Exception {
+        AndSSE andSSE = new AndSSE();
+        final SSEEventSource source = source(andSSE);
+        // released before its looper is prepared
+        loopThread.submit(new Runnable() {
+            @Override
+            public void run() {
+                source.destroy();
+            }
+        }).get();
+        andSSE.start();
+
+        andSSE.join(TIMEOUT);
+        assertFalse(andSSE.isAlive());
+    }
+}
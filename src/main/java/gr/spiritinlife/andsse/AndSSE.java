@@ -1,21 +1,24 @@
 package gr.spiritinlife.andsse;
 
 
-import android.os.Bundle;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Message;
 import android.util.Log;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Map;
 
 
-public class AndSSE extends HandlerThread{
+/**
+ * The default {@link Transport Transport}. It is a thread that reads the {@link EventStream stream} of a single
+ * {@link AndSSEEventSource AndSSEEventSource} with a blocking {@link HttpURLConnection HttpURLConnection}
+ */
+public class AndSSE extends HandlerThread implements Transport {
 
     private static final String TAG = "AndSSE";
     private static final int CONNECTION_TIMEOUT = 3000;
+    private static final int READ_BUFFER_SIZE = 8192;
 
 
     /**
@@ -24,25 +27,37 @@ public class AndSSE extends HandlerThread{
     private volatile boolean isRunning = false;
 
     /**
-     * The last event's id
+     * The stream we are reading , the one we were last asked to {@link #connect(EventStream) connect}
      */
-    private String lastEventId = "";
+    private volatile EventStream stream;
 
     /**
-     *  This is the real connection of the SSE which brings data to us!
+     * The buffer we read the stream into. It is reused for every read
      */
-    private HttpURLConnection con;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
 
     /**
-     * A reference to the url object
+     *  This is the real connection of the SSE which brings data to us!
+     *  Other threads disconnect it to abort a read that would block for ever
      */
-    private URL url;
+    private volatile HttpURLConnection con;
 
     /**
      * The handler used by the {@link AndSSEEventSource AndSSEEventSource } to pass to this thread events
      */
     public Handler mHandler;
 
+    /**
+     * This is used when {@link #connect(EventStream) connect} has been called but the {@link #mHandler handler's} looper
+     * is not yet ready to receive messages. In that case we set that flag to true and start when {@link #onLooperPrepared() onLooperPrepared} fires
+     */
+    private boolean doOpenWhenPossible = false;
+
+    /**
+     * Set when the thread was {@link #release(EventStream) released} before its looper was ready , it quits as soon as it is
+     */
+    private boolean quitWhenPossible = false;
+
 
     /**
      * Those are the two events that we understand.
@@ -54,23 +69,21 @@ public class AndSSE extends HandlerThread{
 
 
     /**
-     * @param url the URL of this connection.
+     * The thread reads the stream of a single event source , which hands it over on {@link #connect(EventStream) connect}
      * @see java.net.URL
      * @see java.net.URLConnection
      */
-    protected AndSSE(URL url) {
-        super("AndSSE_" + url.toString());
-        this.url = url;
+    AndSSE() {
+        super("AndSSE");
     }
 
     /**
      * This is where we create the handler.
-     * When the handler is created we inform the  {@link AndSSEEventSource AndSSEEventSource } that we are ready to start two way communication
-     * between this thread and the main thread
+     * When the handler is created we start the SSE loop if we were asked to before the looper was ready
      */
     @Override
     protected void onLooperPrepared() {
-        mHandler = new Handler() {
+        Handler handler = new Handler() {
             @Override
             public void handleMessage(Message msg) {
                 // process incoming messages here
@@ -90,123 +103,124 @@ public class AndSSE extends HandlerThread{
                 }
             }
         };
-        AndSSEEventSource.uiHandler.obtainMessage(EventSource.LOOOPER_READY).sendToTarget();
+
+        synchronized (this) {
+            mHandler = handler;
+            if (quitWhenPossible)
+                quit();
+            else if (doOpenWhenPossible)
+                mHandler.sendEmptyMessage(START);
+        }
         super.onLooperPrepared();
     }
 
 
+    //---------------------------------------//---------------------------------------//
+    //                                    Transport                                    //
+
+    @Override
+    public void connect(EventStream stream) {
+        this.stream = stream;
+        setName("AndSSE_" + stream.getUrl().toString());
+        send(START);
+    }
+
+    @Override
+    public void disconnect(EventStream stream) {
+        // the loop checks this between reads , but we also set it here as the thread is busy in the loop
+        isRunning = false;
+        send(STOP);
+        // the thread may be waiting for the reader of a streamed event
+        stream.abortStreaming();
+        // the thread may be blocked in a read that never returns , like on a half open connection ,
+        // and it would not get to the message. Closing the connection makes the read fail.
+        // Closing an https connection may block on the network , and we are called on the main thread
+        final HttpURLConnection connection = con;
+        if (connection != null) {
+            SSEExecutors.BACKGROUND.execute(new Runnable() {
+                @Override
+                public void run() {
+                    connection.disconnect();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void release(EventStream stream) {
+        isRunning = false;
+        send(KILL);
+    }
+
+    @Override
+    public boolean isShared() {
+        return false;
+    }
+
+    private synchronized void send(int what) {
+        if (mHandler != null)
+            mHandler.sendEmptyMessage(what);
+        else if (what == START)
+            doOpenWhenPossible = true;
+        else {
+            doOpenWhenPossible = false;
+            quitWhenPossible = what == KILL;
+        }
+    }
+
+    //---------------------------------------//---------------------------------------//
+
+
     /**
      * This is called when a {@link #START} message is given and we start the SSE loop
      */
     private void startNetworking() {
         try {
-            con = (HttpURLConnection) url.openConnection();
+            con = (HttpURLConnection) stream.getUrl().openConnection();
             isRunning = true;
         } catch (Exception e) {
-            onError();
+            stream.onClosed();
             e.printStackTrace();
+            return;
         }
         try {
 
             setConnectionProperties();
 
+            // anything but 200 OK , eg. a 204 No Content , tells us to stop reconnecting
+            int status = con.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                stream.onRefused(status);
+                return;
+            }
 
-            // we announce the connection
-            onOpen();
-
-            // create a default event
-            AndEvent event = new AndEvent();
-            String inputLine;
-
-            while(isRunning) {
-                // SSE requires UTF-8
-                BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-
-                while ((inputLine = in.readLine()) != null && isRunning) {
-
-                    // if line is empty dispatch event
-                    if ( inputLine.isEmpty() ) {
-                        dispatchEvent(event);
-
-                        // reset event
-                        event = new AndEvent();
-                    }
-                    // if line starts with colon ( : ) then ignore the line
-                    else if ( inputLine.startsWith(":") ) {
-                    }
-                    // if line contains a colon ( : ) then
-                    // Collect the characters on the line before the first U+003A COLON character (:), and let field be that string.
-                    // Collect the characters on the line after the first U+003A COLON character (:), and let value be that string.
-                    // If value starts with a U+0020 SPACE character, remove it from value
-                    else if ( inputLine.contains(":") ) {
-
-                        String fieldAndValue[] = inputLine.split(":");
-
-                        if ( fieldAndValue.length != 2 )
-                            throw new Exception("Could not process a field at input line :  " + inputLine);
-
-                        switch (fieldAndValue[0]) {
-                            case "event":
-                                event.setEventName(fieldAndValue[1]);
-                                break;
-                            case "id":
-                                event.setId(fieldAndValue[1]);
-                            case "data":
-                                event.setEventData(fieldAndValue[1]);
-                                break;
-                            case "retry":
-                                int reconnectionTime = Integer.valueOf(fieldAndValue[1]);
-                                if ( reconnectionTime >= 0 && reconnectionTime <= 9 ) {
-                                    onRestablish(reconnectionTime);
-                                }
-                            default:
-                                continue;
-                        }
-
-                    }
-                }
+            // SSE requires UTF-8 , the parser works on the raw bytes and decodes them itself
+            InputStream in = con.getInputStream();
 
+            // we announce the connection , the stream inflates the body if the server compressed it and parses it as text or frames
+            stream.onConnected(con.getContentType(), con.getContentEncoding());
 
-                in.close();
+            int read;
+            while (isRunning && (read = in.read(readBuffer)) != -1) {
+                stream.onData(readBuffer, 0, read);
             }
 
+            in.close();
+
         } catch (Exception e) {
             e.printStackTrace();
         }
         finally {
             con.disconnect();
             // this sets the eventsource to CLOSED
-            onError();
+            stream.onClosed();
         }
     }
 
 
-    /**
-     * Used to announce the connection to the {@link AndSSEEventSource AndSSEEventSource}
-     */
-    private void onOpen() {
-        AndSSEEventSource.uiHandler.sendEmptyMessage(EventSource.OPEN);
-    }
-
-    /**
-     * Used to inform {@link AndSSEEventSource AndSSEEventSource} that an ERROR occured.
-     * Error in SSE protocol does not always something bad. It essentially means that the connection is CLOSED
-     */
-    private void onError() {
-        AndSSEEventSource.uiHandler.sendEmptyMessage(EventSource.ERROR);
-    }
-
-    /**
-     * Used to inform {@link AndSSEEventSource AndSSEEventSource} that we need to reconnect.
-     */
-    private void onRestablish(int reconnectionTime) {
-        Message.obtain(AndSSEEventSource.uiHandler,EventSource.ERROR,reconnectionTime,0).sendToTarget();
-    }
-
-
     /**
      * Sets the properties of the connection
-     * It also handles last event id if one exists
+     * It also sets the headers of the stream , like the last event id if one exists
      */
     private void setConnectionProperties() {
         // set false for caching
@@ -214,7 +228,7 @@ public class AndSSE extends HandlerThread{
 
         con.setConnectTimeout(CONNECTION_TIMEOUT);
 
-        // read infinite
+        // read infinite , the watchdog of the event source notices a connection that went silent
         con.setReadTimeout(0);
 
         // we get responses
@@ -226,33 +240,13 @@ public class AndSSE extends HandlerThread{
         // connection should follow redirects
         con.setInstanceFollowRedirects(true);
 
-        // set  Last-Event-ID header if needed
-        if ( !lastEventId.isEmpty() && con != null) {
-            Log.e("Last event id", lastEventId);
-            con.setRequestProperty("last-event-id", lastEventId);
+        for (Map.Entry<String, String> header : stream.getRequestHeaders().entrySet()) {
+            con.setRequestProperty(header.getKey(), header.getValue());
         }
 
     }
 
 
-    /**
-     * Called fromt the SSE loop when a new event is retrieved
-     * It essentially sends a message to the main thread handler of {@link AndSSEEventSource AndSSEEventSource}
-     * @param _event {@link AndEvent AndEvent}
-     */
-    private void dispatchEvent(AndEvent _event) {
-        if (_event != null && !_event.data.isEmpty()) {
-            lastEventId = _event.id;
-            Message message = Message.obtain();
-            message.what = EventSource.EVENT;
-            Bundle msgBundle = new Bundle();
-            msgBundle.putParcelable("event", _event);
-            message.setData(msgBundle);
-            AndSSEEventSource.uiHandler.sendMessage(message);
-        }
-    }
-
-
     private void disconnect() {
         isRunning = false;
     }
@@ -267,4 +261,4 @@ public class AndSSE extends HandlerThread{
 
 
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package gr.spiritinlife.andsse;
+
+import android.os.Handler;
+import android.os.Looper;
+import java.util.concurrent.Executor;
+
+/**
+ * The {@link Executor Executors} that can be given to
+ * {@link AndSSEEventSource#addEventListener(String, Executor, IEventCallback) addEventListener} to choose where a listener runs.
+ * Any other executor can be used too. Whatever the executor , a listener receives its events one at a time and in order.
+ * They are the {@link SSEExecutors SSEExecutors} of the core , and the main thread.
+ */
+public final class AndSSEExecutors {
+
+    /**
+     * Runs the listener on the {@link AndSSE AndSSE} thread , right after the event is parsed.
+     * The listener must be quick , as the stream is not read while it runs
+     */
+    public static final Executor DIRECT = SSEExecutors.DIRECT;
+
+    /**
+     * Runs the listener on a pool of background threads shared by all event sources
+     */
+    public static final Executor BACKGROUND = SSEExecutors.BACKGROUND;
+
+    /**
+     * Runs the readers of {@link EventInputStream streamed events} , every one on a thread of its own
+     */
+    public static final Executor STREAMING = SSEExecutors.STREAMING;
+
+    /**
+     * Runs the listener on the main thread , which is what {@link AndSSEEventSource#addEventListener(String, IEventCallback)} does
+     */
+    public static final Executor MAIN_THREAD = new Executor() {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    private AndSSEExecutors() {
+    }
+}
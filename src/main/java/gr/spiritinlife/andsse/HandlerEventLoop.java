@@ -0,0 +1,43 @@
+package gr.spiritinlife.andsse;
+
+import android.os.Handler;
+import android.os.Message;
+
+/**
+ * The {@link EventLoop EventLoop} of Android , the looper of the thread that creates it , which is the main thread.
+ * Its messages are plain Handler messages
+ */
+final class HandlerEventLoop implements EventLoop, Handler.Callback {
+
+    private final Handler handler;
+    private volatile Target target;
+
+    HandlerEventLoop() {
+        handler = new Handler(this);
+    }
+
+
+    @Override
+    public void setTarget(Target target) {
+        this.target = target;
+    }
+
+    @Override
+    public void send(int what, long delayMs) {
+        if (delayMs <= 0)
+            handler.sendEmptyMessage(what);
+        else
+            handler.sendEmptyMessageDelayed(what, delayMs);
+    }
+
+    @Override
+    public void remove(int what) {
+        handler.removeMessages(what);
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        Target target = this.target;
+        return target != null && target.handle(msg.what);
+    }
+}
@@ -1,5 +0,0 @@
-package gr.spiritinlife.andsse;
-
-public interface IEventCallback {
-    public void onEvent(AndEvent event);
-}
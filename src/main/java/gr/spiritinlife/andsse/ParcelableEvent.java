@@ -0,0 +1,60 @@
+package gr.spiritinlife.andsse;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * An {@link AndEvent AndEvent} that can be put in a Bundle or an Intent.
+ *
+ * The events of the core know nothing about Android , a listener that hands one to another component
+ * wraps it , eg. <code>intent.putExtra("event", new ParcelableEvent(event))</code>.
+ * The wrapped event is a {@link AndEvent#copy() copy} , so it outlives the callback
+ */
+public class ParcelableEvent implements Parcelable {
+
+    private final AndEvent event;
+
+    /**
+     * @param event {@link AndEvent AndEvent} , it is copied and can be recycled right after
+     */
+    public ParcelableEvent(AndEvent event) {
+        this.event = event.copy();
+    }
+
+    protected ParcelableEvent(Parcel in) {
+        event = new AndEvent();
+        event.setEventName(in.readString());
+        event.setEventData(in.readString());
+        event.setId(in.readString());
+    }
+
+    /**
+     * @return {@link AndEvent AndEvent} the event , not owned by the library
+     */
+    public AndEvent getEvent() {
+        return event;
+    }
+
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(event.getEventName());
+        dest.writeString(event.getData());
+        dest.writeString(event.getId());
+    }
+
+
+    public static final Creator<ParcelableEvent> CREATOR = new Creator<ParcelableEvent>() {
+        public ParcelableEvent createFromParcel(Parcel in) {
+            return new ParcelableEvent(in);
+        }
+        public ParcelableEvent[] newArray(int size) {
+            return new ParcelableEvent[size];
+        }
+    };
+}